@@ -0,0 +1,101 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.data.validation.tests.SimilarNamedWays.NormalizeRule;
+import org.openstreetmap.josm.data.validation.tests.SimilarNamedWays.RegExprRule;
+import org.openstreetmap.josm.data.validation.tests.SimilarNamedWays.SynonymRule;
+import org.openstreetmap.josm.plugins.conflation.matcher.AccentlessNormalizeRule;
+import org.openstreetmap.josm.plugins.conflation.matcher.AttributeMatcher;
+import org.openstreetmap.josm.plugins.conflation.matcher.ExactValueMatcher;
+import org.openstreetmap.josm.plugins.conflation.matcher.LetterOrDigitNormalizeRules;
+import org.openstreetmap.josm.plugins.conflation.matcher.LowerCaseNormalizeRule;
+import org.openstreetmap.josm.plugins.conflation.matcher.NoneNormalizeRule;
+import org.openstreetmap.josm.plugins.conflation.matcher.OsmNormalizeRule;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * AttributeMatcher comparing the names of POIs with each normalization rule.
+ * Each operation matches one POI against its candidates, as left by a window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AttributeMatcherBenchmark {
+
+    static final int TARGETS = 256;
+    static final int CANDIDATES = 8;
+
+    @Param({"None", "Accentless", "LowerCase", "LetterOrDigit", "OsmRule", "RegExpr", "Synonym"})
+    public String rule;
+
+    private final Feature[] targets = new Feature[TARGETS];
+    private final FeatureDataset[] candidates = new FeatureDataset[TARGETS];
+    private AttributeMatcher matcher;
+    private int next;
+
+    @Setup
+    public void setup() {
+        matcher = new AttributeMatcher("name", ExactValueMatcher.INSTANCE, createRule(rule));
+        SyntheticGeometries generator = new SyntheticGeometries(42);
+        FeatureSchema schema = new FeatureSchema();
+        schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+        schema.addAttribute("name", AttributeType.STRING);
+        for (int i = 0; i < TARGETS; i++) {
+            String name = generator.name();
+            targets[i] = createPoi(schema, generator, i * 100, name);
+            candidates[i] = new FeatureDataset(schema);
+            for (int j = 0; j < CANDIDATES; j++) {
+                String candidateName = j == 0 ? generator.variant(name) : generator.name();
+                candidates[i].add(createPoi(schema, generator, i * 100 + j, candidateName));
+            }
+        }
+    }
+
+    static Feature createPoi(FeatureSchema schema, SyntheticGeometries generator, double x, String name) {
+        Feature f = new BasicFeature(schema);
+        f.setGeometry(generator.poi(x, 0));
+        f.setAttribute("name", name);
+        return f;
+    }
+
+    static NormalizeRule createRule(String name) {
+        switch (name) {
+        case "Accentless": return AccentlessNormalizeRule.INSTANCE;
+        case "LowerCase": return LowerCaseNormalizeRule.INSTANCE;
+        case "LetterOrDigit": return LetterOrDigitNormalizeRules.INSTANCE;
+        case "OsmRule": return new OsmNormalizeRule("name");
+        case "RegExpr": return new RegExprRule("\\b(Rue|Street|Straße)\\b", "");
+        case "Synonym": return new SynonymRule("Avenue", "Av", "Ave", "Avenida");
+        default: return new NoneNormalizeRule();
+        }
+    }
+
+    @Benchmark
+    public Matches match() {
+        int i = next;
+        next = (i + 1) % TARGETS;
+        return matcher.match(targets[i], candidates[i]);
+    }
+}
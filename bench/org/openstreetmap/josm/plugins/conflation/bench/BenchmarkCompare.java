@@ -0,0 +1,216 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares JMH results (CSV result format) with a baseline and fails if the
+ * time or the allocation per operation regressed beyond a tolerance.
+ * <p>
+ * The primary score of each benchmark is compared according to its mode
+ * (higher is better for throughput, lower for the other modes), and the
+ * allocation per operation reported by the GC profiler is compared if
+ * present. A table of the differences is printed.
+ * <pre>
+ * Usage: BenchmarkCompare baseline.csv current.csv [timeTolerance] [allocationTolerance]
+ * </pre>
+ * The tolerances are fractions, e.g. 0.1 to accept 10% more time. A benchmark
+ * of the baseline missing from the current results counts as a failure, as a
+ * regression does. The exit status is 1 if a failure is found, 2 if the baseline
+ * does not exist: it is recorded on the reference machine and committed with the
+ * sources.
+ */
+public final class BenchmarkCompare {
+
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private BenchmarkCompare() {
+    }
+
+    /**
+     * A score of a benchmark, with the given parameters.
+     */
+    static final class Score {
+        final String mode;
+        final double value;
+        final double error;
+        final String unit;
+
+        Score(String mode, double value, double error, String unit) {
+            this.mode = mode;
+            this.value = value;
+            // JMH gives no error for a single measurement
+            this.error = Double.isNaN(error) ? 0 : error;
+            this.unit = unit;
+        }
+
+        boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BenchmarkCompare baseline.csv current.csv [timeTolerance] [allocationTolerance]");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        File currentFile = new File(args[1]);
+        double timeTolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        double allocationTolerance = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+        if (!baselineFile.exists()) {
+            System.err.println("No baseline " + baselineFile + ", record it with 'ant benchmark-baseline'"
+                    + " on the reference machine and commit it");
+            System.exit(2);
+        }
+        Map<String, Score> baseline = read(baselineFile);
+        Map<String, Score> current = read(currentFile);
+        int failures = compare(baseline, current, timeTolerance, allocationTolerance);
+        if (failures > 0) {
+            System.out.println(failures + " regression(s) beyond the tolerance"
+                    + String.format(Locale.ROOT, " (time %.0f%%, allocation %.0f%%)",
+                            100 * timeTolerance, 100 * allocationTolerance)
+                    + " or benchmark(s) missing");
+            System.exit(1);
+        }
+        System.out.println("No regression");
+    }
+
+    /**
+     * Prints the table of differences.
+     * @return the number of regressions and of benchmarks of the baseline missing from the current results
+     */
+    static int compare(Map<String, Score> baseline, Map<String, Score> current,
+            double timeTolerance, double allocationTolerance) {
+        int nameWidth = 20;
+        for (String key : current.keySet()) {
+            nameWidth = Math.max(nameWidth, key.length());
+        }
+        String format = "%-" + nameWidth + "s %14s %14s %-10s %8s  %s%n";
+        System.out.printf(Locale.ROOT, format, "Benchmark", "Baseline", "Current", "Unit", "Change", "Status");
+        int failures = 0;
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf(Locale.ROOT, format, entry.getKey(), "-", formatValue(now.value), now.unit, "", "new");
+                continue;
+            }
+            double change = before.value == 0 ? 0 : (now.value - before.value) / before.value;
+            // a worse result is a negative change for throughput, positive otherwise
+            double worsening = now.isHigherBetter() ? -change : change;
+            double tolerance = entry.getKey().endsWith(ALLOCATION_METRIC) ? allocationTolerance : timeTolerance;
+            String status;
+            if (worsening > tolerance && Math.abs(now.value - before.value) > now.error + before.error) {
+                status = "REGRESSION";
+                failures++;
+            } else if (worsening < -tolerance) {
+                status = "improved";
+            } else {
+                status = "ok";
+            }
+            System.out.printf(Locale.ROOT, format, entry.getKey(), formatValue(before.value), formatValue(now.value),
+                    now.unit, String.format(Locale.ROOT, "%+.1f%%", 100 * change), status);
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                Score before = baseline.get(key);
+                System.out.printf(Locale.ROOT, format, key, formatValue(before.value), "-", before.unit, "", "MISSING");
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static String formatValue(double value) {
+        return String.format(Locale.ROOT, Math.abs(value) >= 100 ? "%.0f" : "%.3f", value);
+    }
+
+    /**
+     * Reads the primary scores and the allocations of a JMH CSV result file.
+     * @param file the file written with {@code -rf csv}
+     * @return the scores, by benchmark name followed by its parameters
+     */
+    static Map<String, Score> read(File file) throws IOException {
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Map<String, Score> scores = new LinkedHashMap<>();
+        if (lines.isEmpty()) {
+            return scores;
+        }
+        List<String> header = parseCsvLine(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = parseCsvLine(line);
+            // older JMH versions prefix the profiler metrics with a middle dot
+            String name = fields.get(benchmark).replace("\u00b7", "");
+            int colon = name.indexOf(':');
+            if (colon >= 0 && !name.substring(colon + 1).equals(ALLOCATION_METRIC)) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(shorten(colon >= 0 ? name.substring(0, colon) : name));
+            for (int i = unit + 1; i < header.size() && i < fields.size(); i++) {
+                if (!fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).replace("Param: ", "")).append('=').append(fields.get(i));
+                }
+            }
+            if (colon >= 0) {
+                key.append(' ').append(ALLOCATION_METRIC);
+            }
+            scores.put(key.toString(), new Score(fields.get(mode), parseDouble(fields.get(score)),
+                    error >= 0 ? parseDouble(fields.get(error)) : 0, fields.get(unit)));
+        }
+        return scores;
+    }
+
+    private static String shorten(String benchmark) {
+        int method = benchmark.lastIndexOf('.');
+        int cls = method > 0 ? benchmark.lastIndexOf('.', method - 1) : -1;
+        return benchmark.substring(cls + 1);
+    }
+
+    private static double parseDouble(String s) {
+        if (s.isEmpty() || "NaN".equals(s)) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(s);
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields;
+    }
+}
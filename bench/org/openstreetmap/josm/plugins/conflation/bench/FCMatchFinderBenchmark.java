@@ -0,0 +1,83 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.CentroidDistanceMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.ChainMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TargetUnioningFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.WindowMatcher;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+
+/**
+ * The FCMatchFinders on a fixed synthetic dataset of buildings, on one thread.
+ * Each operation matches the whole dataset, the candidates being indexed once.
+ * See {@link ScalingBenchmark} for larger sizes and several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FCMatchFinderBenchmark {
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({"basic", "disambiguating", "onetoone", "targetunioning"})
+    public String finder;
+
+    private FeatureCollection targets;
+    private FeatureCollection candidates;
+    private FCMatchFinder matchFinder;
+
+    @Setup
+    public void setup() {
+        SyntheticDataset dataset = SyntheticDataset.generate(SyntheticGeometries.Kind.BUILDING, size, 42);
+        targets = dataset.getReference();
+        candidates = new IndexedFeatureCollection(dataset.getSubject());
+        double distance = dataset.getMatchDistance();
+        FCMatchFinder basic = new BasicFCMatchFinder(new ChainMatcher(new FeatureMatcher[] {
+                new WindowMatcher(distance), new CentroidDistanceMatcher(distance)}));
+        switch (finder) {
+        case "disambiguating":
+            matchFinder = new DisambiguatingFCMatchFinder(basic);
+            break;
+        case "onetoone":
+            matchFinder = new OneToOneFCMatchFinder(basic);
+            break;
+        case "targetunioning":
+            matchFinder = new TargetUnioningFCMatchFinder(2, new DisambiguatingFCMatchFinder(basic));
+            break;
+        default:
+            matchFinder = basic;
+        }
+    }
+
+    @Benchmark
+    public Map<Feature, Matches> match() {
+        return matchFinder.match(targets, candidates, new SilentTaskMonitor());
+    }
+}
@@ -0,0 +1,101 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.vividsolutions.jcs.algorithm.VertexHausdorffDistance;
+import com.vividsolutions.jcs.conflate.polygonmatch.AngleHistogramMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.CentroidAligner;
+import com.vividsolutions.jcs.conflate.polygonmatch.CompactnessMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.SymDiffMatcher;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Geometry comparisons, on pairs made of a geometry and a shifted, noisy copy
+ * of it, as found in two sources to conflate.
+ * Each operation is the comparison of one pair.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryMatcherBenchmark {
+
+    static final int PAIRS = 256;
+
+    @Param({"BUILDING", "ROAD"})
+    public SyntheticGeometries.Kind kind;
+
+    private final Geometry[] targets = new Geometry[PAIRS];
+    private final Geometry[] candidates = new Geometry[PAIRS];
+
+    private final SymDiffMatcher symDiff = new SymDiffMatcher();
+    private final CompactnessMatcher compactness = new CompactnessMatcher();
+    private final AngleHistogramMatcher angleHistogram = new AngleHistogramMatcher(18);
+    private final CentroidAligner centroidAlignedSymDiff = new CentroidAligner(new SymDiffMatcher());
+
+    @Setup
+    public void setup() {
+        SyntheticGeometries generator = new SyntheticGeometries(42);
+        for (int i = 0; i < PAIRS; i++) {
+            targets[i] = generator.create(kind, i * 100, 0);
+            candidates[i] = generator.perturb(targets[i], 3, 0.5);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void symDiff(Blackhole bh) {
+        for (int i = 0; i < PAIRS; i++) {
+            bh.consume(symDiff.match(targets[i], candidates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void vertexHausdorffDistance(Blackhole bh) {
+        for (int i = 0; i < PAIRS; i++) {
+            bh.consume(new VertexHausdorffDistance(targets[i], candidates[i]).distance());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void angleHistogram(Blackhole bh) {
+        for (int i = 0; i < PAIRS; i++) {
+            bh.consume(angleHistogram.match(targets[i], candidates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void compactness(Blackhole bh) {
+        for (int i = 0; i < PAIRS; i++) {
+            bh.consume(compactness.match(targets[i], candidates[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void centroidAlignedSymDiff(Blackhole bh) {
+        for (int i = 0; i < PAIRS; i++) {
+            bh.consume(centroidAlignedSymDiff.match(targets[i], candidates[i]));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.plugins.conflation.matcher.LevenshteinDistanceValueMatcher;
+
+/**
+ * LevenshteinDistanceValueMatcher on pairs of names, half of them variants
+ * of each other and half unrelated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevenshteinBenchmark {
+
+    static final int PAIRS = 1024;
+
+    /** The maximum distance, 0 for a score relative to the length of the names. */
+    @Param({"0", "3"})
+    public int threshold;
+
+    private final String[] targets = new String[PAIRS];
+    private final String[] candidates = new String[PAIRS];
+    private LevenshteinDistanceValueMatcher matcher;
+    private int next;
+
+    @Setup
+    public void setup() {
+        matcher = new LevenshteinDistanceValueMatcher(threshold);
+        SyntheticGeometries generator = new SyntheticGeometries(42);
+        for (int i = 0; i < PAIRS; i++) {
+            targets[i] = generator.name();
+            candidates[i] = i % 2 == 0 ? generator.variant(targets[i]) : generator.name();
+        }
+    }
+
+    @Benchmark
+    public double match() {
+        int i = next;
+        next = (i + 1) % PAIRS;
+        return matcher.match(targets[i], candidates[i]);
+    }
+}
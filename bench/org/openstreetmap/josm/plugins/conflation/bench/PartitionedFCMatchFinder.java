@@ -0,0 +1,96 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+import com.vividsolutions.jump.geom.HilbertOrder;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Runs a {@link BasicFCMatchFinder} on several threads: the targets are split
+ * in spatially compact parts (following the Hilbert curve), and each part is
+ * matched against the candidates near it, within the window of the matcher.
+ * The matches found are the same as those of a single BasicFCMatchFinder, the
+ * candidates of a target may only be listed in another order.
+ */
+public class PartitionedFCMatchFinder implements FCMatchFinder {
+
+    /** Parts per thread, so that threads finishing early pick up remaining work. */
+    private static final int PARTS_PER_THREAD = 4;
+
+    private final FeatureMatcher matcher;
+    private final double window;
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * @param matcher the matcher, starting with a window no larger than the given one
+     * @param window the distance beyond which the matcher never matches a candidate
+     * @param executor runs the parts
+     * @param threads the number of threads of the executor
+     */
+    public PartitionedFCMatchFinder(FeatureMatcher matcher, double window, ExecutorService executor, int threads) {
+        this.matcher = matcher;
+        this.window = window;
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    @Override
+    public Map<Feature, Matches> match(FeatureCollection targetFC, final FeatureCollection candidateFC,
+            TaskMonitor monitor) {
+        if (threads <= 1) {
+            return new BasicFCMatchFinder(matcher).match(targetFC, candidateFC, monitor);
+        }
+        // an index is built by its first query, which must not happen concurrently
+        candidateFC.query(new Envelope());
+        List<Feature> targets = HilbertOrder.sort(targetFC.getFeatures());
+        int parts = Math.min(targets.size(), threads * PARTS_PER_THREAD);
+        List<Future<Map<Feature, Matches>>> futures = new ArrayList<>();
+        for (int p = 0; p < parts; p++) {
+            final List<Feature> part = targets.subList(
+                    (int) ((long) targets.size() * p / parts), (int) ((long) targets.size() * (p + 1) / parts));
+            futures.add(executor.submit(() -> matchPart(part, candidateFC, targetFC)));
+        }
+        Map<Feature, Matches> result = new TreeMap<>();
+        try {
+            for (Future<Map<Feature, Matches>> future : futures) {
+                result.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return result;
+    }
+
+    private Map<Feature, Matches> matchPart(List<Feature> part, FeatureCollection candidateFC,
+            FeatureCollection targetFC) {
+        Envelope env = new Envelope();
+        for (Feature f : part) {
+            env.expandToInclude(f.getGeometry().getEnvelopeInternal());
+        }
+        env.expandBy(window);
+        FeatureDataset targets = new FeatureDataset(part, targetFC.getFeatureSchema());
+        FeatureDataset candidates = new FeatureDataset(candidateFC.query(env), candidateFC.getFeatureSchema());
+        return new BasicFCMatchFinder(matcher).match(
+                targets, new IndexedFeatureCollection(candidates), new SilentTaskMonitor());
+    }
+}
@@ -0,0 +1,264 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.CentroidDistanceMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.ChainMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.HausdorffDistanceMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TargetUnioningFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.WindowMatcher;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+
+/**
+ * End-to-end benchmark of the FCMatchFinders on synthetic datasets of
+ * increasing sizes, run with increasing numbers of threads.
+ * <p>
+ * For each kind of data, size, finder and thread count, it reports the time
+ * of the matching (indexing included), the throughput in reference features
+ * per second, the peak heap used, and the fraction of the matches found which
+ * are the expected ones. The rows form the scaling curves, they can also be
+ * written as CSV.
+ * <p>
+ * The basic finder is run on several threads by splitting the targets (see
+ * {@link PartitionedFCMatchFinder}); the other finders post-process its
+ * results on one thread.
+ * <pre>
+ * Usage: ScalingBenchmark [--kinds building,road,poi] [--sizes 1000,10000,100000]
+ *        [--threads 1,2,4] [--finders basic,disambiguating,onetoone,targetunioning]
+ *        [--repeat 3] [--seed 42] [--csv file]
+ * </pre>
+ */
+public final class ScalingBenchmark {
+
+    private static final String HEADER = String.format(Locale.ROOT, "%-9s %8s %-15s %7s %10s %12s %10s %9s %9s",
+            "kind", "size", "finder", "threads", "time (ms)", "features/s", "heap (MB)", "matches", "expected");
+
+    private List<SyntheticGeometries.Kind> kinds = Arrays.asList(SyntheticGeometries.Kind.values());
+    private List<Integer> sizes = Arrays.asList(1000, 10000, 100000);
+    private List<Integer> threadCounts = Arrays.asList(1, 2, 4);
+    private List<String> finders = Arrays.asList("basic", "disambiguating", "onetoone", "targetunioning");
+    private int repeat = 3;
+    private long seed = 42;
+    private String csvFile;
+
+    private ScalingBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        ScalingBenchmark benchmark = new ScalingBenchmark();
+        benchmark.parseArguments(args);
+        benchmark.run();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--kinds":
+                kinds = new ArrayList<>();
+                for (String s : value.split(",")) {
+                    kinds.add(SyntheticGeometries.Kind.valueOf(s.trim().toUpperCase(Locale.ROOT)));
+                }
+                break;
+            case "--sizes":
+                sizes = parseIntegers(value);
+                break;
+            case "--threads":
+                threadCounts = parseIntegers(value);
+                break;
+            case "--finders":
+                finders = Arrays.asList(value.toLowerCase(Locale.ROOT).split(","));
+                break;
+            case "--repeat":
+                repeat = Integer.parseInt(value);
+                break;
+            case "--seed":
+                seed = Long.parseLong(value);
+                break;
+            case "--csv":
+                csvFile = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    private static List<Integer> parseIntegers(String value) {
+        List<Integer> result = new ArrayList<>();
+        for (String s : value.split(",")) {
+            result.add(Integer.valueOf(s.trim()));
+        }
+        return result;
+    }
+
+    private void run() throws IOException {
+        PrintWriter csv = csvFile == null ? null : new PrintWriter(new FileWriter(csvFile));
+        try {
+            if (csv != null) {
+                csv.println("kind,size,finder,threads,time_ms,features_per_s,peak_heap_mb,matches,expected");
+            }
+            System.out.println(HEADER);
+            for (SyntheticGeometries.Kind kind : kinds) {
+                for (int size : sizes) {
+                    SyntheticDataset dataset = SyntheticDataset.generate(kind, size, seed);
+                    for (String finder : finders) {
+                        for (int threads : threadCounts) {
+                            Result result = measure(dataset, finder, threads);
+                            System.out.println(result.format());
+                            if (csv != null) {
+                                csv.println(result.toCsv());
+                                csv.flush();
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+        }
+    }
+
+    /**
+     * Runs the finder several times and keeps the fastest run, the first runs
+     * also warming up the JIT.
+     */
+    private Result measure(SyntheticDataset dataset, String finderName, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Result best = null;
+            for (int i = 0; i < repeat; i++) {
+                FCMatchFinder finder = createFinder(finderName, dataset, executor, threads);
+                System.gc();
+                resetPeakHeap();
+                long start = System.nanoTime();
+                // the index is part of the work of a run
+                FeatureCollection candidates = new IndexedFeatureCollection(dataset.getSubject());
+                Map<Feature, Matches> map = finder.match(dataset.getReference(), candidates, new SilentTaskMonitor());
+                long nanos = System.nanoTime() - start;
+                Result result = new Result(dataset, finderName, threads, nanos, peakHeap(), map);
+                if (best == null || result.nanos < best.nanos) {
+                    best = result;
+                }
+            }
+            return best;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static FCMatchFinder createFinder(String name, SyntheticDataset dataset, ExecutorService executor,
+            int threads) {
+        double distance = dataset.getMatchDistance();
+        FeatureMatcher matcher = new ChainMatcher(new FeatureMatcher[] {
+                new WindowMatcher(distance),
+                dataset.getKind() == SyntheticGeometries.Kind.ROAD ?
+                        new HausdorffDistanceMatcher(distance) : new CentroidDistanceMatcher(distance)
+        });
+        FCMatchFinder basic = new PartitionedFCMatchFinder(matcher, distance, executor, threads);
+        switch (name) {
+        case "basic":
+            return basic;
+        case "disambiguating":
+            return new DisambiguatingFCMatchFinder(basic);
+        case "onetoone":
+            return new OneToOneFCMatchFinder(basic);
+        case "targetunioning":
+            return new TargetUnioningFCMatchFinder(2, new DisambiguatingFCMatchFinder(basic));
+        default:
+            throw new IllegalArgumentException("Unknown finder: " + name);
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static final class Result {
+        final SyntheticDataset dataset;
+        final String finder;
+        final int threads;
+        final long nanos;
+        final long peakHeap;
+        final int matches;
+        final int expected;
+
+        Result(SyntheticDataset dataset, String finder, int threads, long nanos, long peakHeap,
+                Map<Feature, Matches> map) {
+            this.dataset = dataset;
+            this.finder = finder;
+            this.threads = threads;
+            this.nanos = nanos;
+            this.peakHeap = peakHeap;
+            int matchCount = 0;
+            int expectedCount = 0;
+            for (Map.Entry<Feature, Matches> entry : map.entrySet()) {
+                Matches m = entry.getValue();
+                if (m.size() > 0) {
+                    matchCount++;
+                    if (SyntheticDataset.isExpected(entry.getKey(), m.getTopMatch())) {
+                        expectedCount++;
+                    }
+                }
+            }
+            this.matches = matchCount;
+            this.expected = expectedCount;
+        }
+
+        double featuresPerSecond() {
+            return dataset.getReference().size() / (nanos / 1e9);
+        }
+
+        double expectedRatio() {
+            return matches == 0 ? 0 : (double) expected / matches;
+        }
+
+        String format() {
+            return String.format(Locale.ROOT, "%-9s %8d %-15s %7d %10.1f %12.0f %10.1f %9d %8.1f%%",
+                    dataset.getKind().name().toLowerCase(Locale.ROOT), dataset.getReference().size(), finder,
+                    threads, nanos / 1e6, featuresPerSecond(), peakHeap / 1e6, matches, 100 * expectedRatio());
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%d,%s,%d,%.3f,%.1f,%.1f,%d,%.4f",
+                    dataset.getKind().name().toLowerCase(Locale.ROOT), dataset.getReference().size(), finder,
+                    threads, nanos / 1e6, featuresPerSecond(), peakHeap / 1e6, matches, expectedRatio());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * A TaskMonitor reporting nothing and never cancelled.
+ */
+public class SilentTaskMonitor implements TaskMonitor {
+
+    @Override
+    public void report(String description) {
+    }
+
+    @Override
+    public void report(int itemsDone, int totalItems, String itemDescription) {
+    }
+
+    @Override
+    public void report(Exception exception) {
+    }
+
+    @Override
+    public void allowCancellationRequests() {
+    }
+
+    @Override
+    public boolean isCancelRequested() {
+        return false;
+    }
+}
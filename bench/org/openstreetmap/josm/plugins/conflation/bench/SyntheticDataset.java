@@ -0,0 +1,229 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * A pair of reference and subject feature collections to conflate, as two
+ * sources would describe the same area: most reference features have a
+ * perturbed counterpart in the subject, some are missing and the subject has
+ * some features of its own.
+ * <p>
+ * Each subject feature records the reference feature it was made from in its
+ * {@link #SOURCE} attribute (-1 if none), so the quality of the matches can be
+ * checked. Given the same parameters, the same data are generated.
+ */
+public final class SyntheticDataset {
+
+    /** Attribute: the number of the feature in its collection. */
+    public static final String ID = "id";
+    /** Attribute: the name of the feature. */
+    public static final String NAME = "name";
+    /** Attribute: for subject features, the id of the reference feature it was made from, or -1. */
+    public static final String SOURCE = "source";
+
+    /** Fraction of the reference features having no counterpart in the subject. */
+    private static final double MISSING = 0.05;
+    /** Number of subject features having no counterpart in the reference, relative to its size. */
+    private static final double EXTRA = 0.05;
+
+    private static final double BUILDING_SPACING = 40;
+    private static final double ROAD_SPACING = 100;
+    private static final double POI_SPACING = 40;
+
+    private final SyntheticGeometries.Kind kind;
+    private final FeatureSchema schema;
+    private final FeatureDataset reference;
+    private final FeatureDataset subject;
+    private final SyntheticGeometries generator;
+    private final Random random;
+
+    private SyntheticDataset(SyntheticGeometries.Kind kind, long seed) {
+        this.kind = kind;
+        this.schema = new FeatureSchema();
+        schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+        schema.addAttribute(ID, AttributeType.INTEGER);
+        schema.addAttribute(NAME, AttributeType.STRING);
+        schema.addAttribute(SOURCE, AttributeType.INTEGER);
+        this.reference = new FeatureDataset(schema);
+        this.subject = new FeatureDataset(schema);
+        this.generator = new SyntheticGeometries(seed);
+        this.random = generator.getRandom();
+    }
+
+    /**
+     * Generate a dataset.
+     * <ul>
+     * <li>buildings: a grid of buildings, the subject ones shifted by up to 2 m and noisy,</li>
+     * <li>roads: a network of road segments between the nodes of a grid, the subject network
+     *     offset by a few meters as a whole, then noisy,</li>
+     * <li>POIs: randomly placed points, the subject ones jittered by several meters and
+     *     with misspelled names.</li>
+     * </ul>
+     * @param kind the kind of features
+     * @param size the number of reference features, e.g. from 1000 to 1000000
+     * @param seed the seed of the random generator
+     * @return the dataset
+     */
+    public static SyntheticDataset generate(SyntheticGeometries.Kind kind, int size, long seed) {
+        SyntheticDataset dataset = new SyntheticDataset(kind, seed);
+        switch (kind) {
+        case BUILDING:
+            dataset.generateBuildings(size);
+            break;
+        case ROAD:
+            dataset.generateRoads(size);
+            break;
+        default:
+            dataset.generatePois(size);
+        }
+        return dataset;
+    }
+
+    /**
+     * @return the kind of features
+     */
+    public SyntheticGeometries.Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the schema of both collections
+     */
+    public FeatureSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the reference features
+     */
+    public FeatureCollection getReference() {
+        return reference;
+    }
+
+    /**
+     * @return the subject features
+     */
+    public FeatureCollection getSubject() {
+        return subject;
+    }
+
+    /**
+     * @return the distance below which a subject feature is considered near its reference
+     * feature, to use as the window of the matchers
+     */
+    public double getMatchDistance() {
+        switch (kind) {
+        case BUILDING:
+            return 10;
+        case ROAD:
+            return 15;
+        default:
+            return 20;
+        }
+    }
+
+    /**
+     * Tell whether a match found is the expected one.
+     * @param referenceFeature a reference feature
+     * @param subjectFeature the subject feature matched with it
+     * @return true if the subject feature was made from the reference feature
+     */
+    public static boolean isExpected(Feature referenceFeature, Feature subjectFeature) {
+        return ((Integer) subjectFeature.getAttribute(SOURCE)).intValue()
+                == ((Integer) referenceFeature.getAttribute(ID)).intValue();
+    }
+
+    private void generateBuildings(int size) {
+        int side = (int) Math.ceil(Math.sqrt(size));
+        for (int i = 0; i < size; i++) {
+            double x = (i % side) * BUILDING_SPACING + random.nextGaussian() * 2;
+            double y = (i / side) * BUILDING_SPACING + random.nextGaussian() * 2;
+            addPair(generator.building(x, y), 2, 0.5);
+        }
+        addExtra(size, side * BUILDING_SPACING);
+    }
+
+    private void generateRoads(int size) {
+        // a grid of n x n nodes has 2 n (n - 1) segments
+        int side = (int) Math.ceil((1 + Math.sqrt(1 + 2.0 * size)) / 2);
+        GeometryFactory factory = generator.getFactory();
+        AffineTransformation offset = AffineTransformation.translationInstance(
+                random.nextGaussian() * 3, random.nextGaussian() * 3);
+        int count = 0;
+        for (int j = 0; j < side && count < size; j++) {
+            for (int i = 0; i < side && count < size; i++) {
+                for (int direction = 0; direction < 2 && count < size; direction++) {
+                    if ((direction == 0 && i == side - 1) || (direction == 1 && j == side - 1)) {
+                        continue;
+                    }
+                    double dx = direction == 0 ? ROAD_SPACING : 0;
+                    double dy = direction == 1 ? ROAD_SPACING : 0;
+                    Coordinate[] coords = new Coordinate[6];
+                    for (int k = 0; k < coords.length; k++) {
+                        double t = (double) k / (coords.length - 1);
+                        // interior nodes wander sideways, the ends stay on the grid nodes
+                        double wander = (k == 0 || k == coords.length - 1) ? 0 : random.nextGaussian() * 3;
+                        coords[k] = new Coordinate(
+                                i * ROAD_SPACING + t * dx + (direction == 1 ? wander : 0),
+                                j * ROAD_SPACING + t * dy + (direction == 0 ? wander : 0));
+                    }
+                    Geometry road = factory.createLineString(coords);
+                    addPair(road, offset.transform(road), 1, 1);
+                    count++;
+                }
+            }
+        }
+        addExtra(count, side * ROAD_SPACING);
+    }
+
+    private void generatePois(int size) {
+        double extent = Math.sqrt((double) size) * POI_SPACING;
+        for (int i = 0; i < size; i++) {
+            addPair(generator.poi(random.nextDouble() * extent, random.nextDouble() * extent), 0, 5);
+        }
+        addExtra(size, extent);
+    }
+
+    private void addPair(Geometry geometry, double shift, double noise) {
+        addPair(geometry, geometry, shift, noise);
+    }
+
+    private void addPair(Geometry referenceGeometry, Geometry subjectGeometry, double shift, double noise) {
+        String name = generator.name();
+        Feature r = createFeature(referenceGeometry, reference.size(), name, -1);
+        reference.add(r);
+        if (random.nextDouble() >= MISSING) {
+            subject.add(createFeature(generator.perturb(subjectGeometry, shift, noise), subject.size(),
+                    generator.variant(name), reference.size() - 1));
+        }
+    }
+
+    private void addExtra(int referenceSize, double extent) {
+        int extra = (int) (referenceSize * EXTRA);
+        for (int i = 0; i < extra; i++) {
+            Geometry g = generator.create(kind, random.nextDouble() * extent, random.nextDouble() * extent);
+            subject.add(createFeature(g, subject.size(), generator.name(), -1));
+        }
+    }
+
+    private Feature createFeature(Geometry geometry, int id, String name, int source) {
+        Feature f = new BasicFeature(schema);
+        f.setGeometry(geometry);
+        f.setAttribute(ID, Integer.valueOf(id));
+        f.setAttribute(NAME, name);
+        f.setAttribute(SOURCE, Integer.valueOf(source));
+        return f;
+    }
+}
@@ -0,0 +1,214 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.util.AffineTransformation;
+
+/**
+ * Generates realistic looking geometries and names, in meters, for benchmarks.
+ * Given the same seed, the same geometries are generated.
+ */
+public class SyntheticGeometries {
+
+    /**
+     * The kinds of OSM objects generated.
+     */
+    public enum Kind {
+        /** Rectangular or L-shaped building outlines, 6 to 30 m wide. */
+        BUILDING,
+        /** Smoothly winding roads of 5 to 30 nodes, 10 to 60 m apart. */
+        ROAD,
+        /** Single points. */
+        POI
+    }
+
+    private static final String[] STREET_TYPES = {
+        "Rue", "Avenue", "Chemin", "Boulevard", "Street", "Road", "Lane", "Straße", "Calle", "Via"
+    };
+
+    private static final String[] NAME_WORDS = {
+        "de l'Église", "Jean Jaurès", "du Général de Gaulle", "Pasteur", "Victor Hugo", "des Écoles",
+        "Main", "High", "Station", "Mill", "Königin", "Lindenstraße", "San José", "Mayor", "Garibaldi",
+        "Saint-Étienne", "du Château", "Notre-Dame", "Côte d'Azur", "Ørsted"
+    };
+
+    private final Random random;
+    private final GeometryFactory factory;
+
+    /**
+     * @param seed the seed of the random generator
+     * @param factory the factory of the created geometries
+     */
+    public SyntheticGeometries(long seed, GeometryFactory factory) {
+        this.random = new Random(seed);
+        this.factory = factory;
+    }
+
+    /**
+     * @param seed the seed of the random generator
+     */
+    public SyntheticGeometries(long seed) {
+        this(seed, new GeometryFactory());
+    }
+
+    /**
+     * @return the factory of the created geometries
+     */
+    public GeometryFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return the random generator used, to derive other random values from the same seed
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * Create a geometry of the given kind.
+     * @param kind the kind of geometry
+     * @param x the x coordinate of its first point or center
+     * @param y the y coordinate of its first point or center
+     * @return a new geometry
+     */
+    public Geometry create(Kind kind, double x, double y) {
+        switch (kind) {
+        case BUILDING:
+            return building(x, y);
+        case ROAD:
+            return road(x, y);
+        default:
+            return poi(x, y);
+        }
+    }
+
+    /**
+     * @param x the x coordinate of the center
+     * @param y the y coordinate of the center
+     * @return a rectangular or L-shaped building outline, randomly oriented
+     */
+    public Geometry building(double x, double y) {
+        double w = 6 + random.nextDouble() * 24;
+        double h = 6 + random.nextDouble() * 24;
+        Coordinate[] ring;
+        if (random.nextDouble() < 0.3) {
+            double cw = w * (0.3 + random.nextDouble() * 0.4);
+            double ch = h * (0.3 + random.nextDouble() * 0.4);
+            ring = new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(w, 0), new Coordinate(w, h - ch),
+                new Coordinate(w - cw, h - ch), new Coordinate(w - cw, h), new Coordinate(0, h),
+                new Coordinate(0, 0)};
+        } else {
+            ring = new Coordinate[] {
+                new Coordinate(0, 0), new Coordinate(w, 0), new Coordinate(w, h),
+                new Coordinate(0, h), new Coordinate(0, 0)};
+        }
+        Geometry g = factory.createPolygon(factory.createLinearRing(ring), null);
+        AffineTransformation t = new AffineTransformation()
+                .translate(-w / 2, -h / 2)
+                .rotate(random.nextDouble() * Math.PI)
+                .translate(x, y);
+        return t.transform(g);
+    }
+
+    /**
+     * @param x the x coordinate of the first node
+     * @param y the y coordinate of the first node
+     * @return a smoothly winding road
+     */
+    public Geometry road(double x, double y) {
+        int n = 5 + random.nextInt(26);
+        Coordinate[] coords = new Coordinate[n];
+        double heading = random.nextDouble() * 2 * Math.PI;
+        coords[0] = new Coordinate(x, y);
+        for (int i = 1; i < n; i++) {
+            heading += random.nextGaussian() * 0.2;
+            double step = 10 + random.nextDouble() * 50;
+            coords[i] = new Coordinate(
+                    coords[i - 1].x + step * Math.cos(heading),
+                    coords[i - 1].y + step * Math.sin(heading));
+        }
+        return factory.createLineString(coords);
+    }
+
+    /**
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return a point
+     */
+    public Geometry poi(double x, double y) {
+        return factory.createPoint(new Coordinate(x, y));
+    }
+
+    /**
+     * Create a copy of the geometry as another source would have drawn it.
+     * @param geometry the original geometry
+     * @param shift the maximum translation of the whole geometry
+     * @param noise the standard deviation of the displacement of each vertex
+     * @return a shifted and noisy copy, the rings stay closed
+     */
+    public Geometry perturb(Geometry geometry, double shift, double noise) {
+        final double dx = (random.nextDouble() * 2 - 1) * shift;
+        final double dy = (random.nextDouble() * 2 - 1) * shift;
+        final Map<Coordinate, Coordinate> moved = new HashMap<>();
+        Geometry copy = (Geometry) geometry.clone();
+        copy.apply(new CoordinateFilter() {
+            @Override
+            public void filter(Coordinate c) {
+                // equal coordinates, like the ends of a ring, are moved the same way
+                Coordinate m = moved.get(c);
+                if (m == null) {
+                    m = new Coordinate(
+                            c.x + dx + random.nextGaussian() * noise,
+                            c.y + dy + random.nextGaussian() * noise);
+                    moved.put(new Coordinate(c), m);
+                }
+                c.x = m.x;
+                c.y = m.y;
+            }
+        });
+        copy.geometryChanged();
+        return copy;
+    }
+
+    /**
+     * @return a street or place name, often with accents
+     */
+    public String name() {
+        return STREET_TYPES[random.nextInt(STREET_TYPES.length)] + " "
+                + NAME_WORDS[random.nextInt(NAME_WORDS.length)];
+    }
+
+    /**
+     * Create a variant of the name as another source would have written it:
+     * other case, missing accents or a few typing errors.
+     * @param name the original name
+     * @return the variant
+     */
+    public String variant(String name) {
+        StringBuilder sb = new StringBuilder(random.nextBoolean() ? name : name.toUpperCase());
+        int edits = random.nextInt(3);
+        for (int i = 0; i < edits && sb.length() > 1; i++) {
+            int pos = random.nextInt(sb.length());
+            switch (random.nextInt(3)) {
+            case 0:
+                sb.deleteCharAt(pos);
+                break;
+            case 1:
+                sb.insert(pos, (char) ('a' + random.nextInt(26)));
+                break;
+            default:
+                sb.setCharAt(pos, (char) ('a' + random.nextInt(26)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,157 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.bench;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.CentroidDistanceMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.ChainMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationEngine;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationJob;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationResult;
+import com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.SymDiffMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.TargetUnioningFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TopMatchDisambiguatingFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.WindowMatcher;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+
+/**
+ * Checks that a run reaching its time limit keeps the matches found so far,
+ * for each finder post-processing the matches of {@link BasicFCMatchFinder}.
+ * <p>
+ * Each finder is first run without limit, then with a time limit of the
+ * duration of that run. In the limited run, the matcher pauses for the whole
+ * limit once half of the targets are matched, so that the limit is reached in
+ * the basic matching, the stage it applies to. The limited run must report the
+ * time limit reached and still give matches, and the finders giving each
+ * candidate to one target must still do so. Exits with status 1 otherwise.
+ * <pre>
+ * Usage: TimeLimitCheck [size]
+ * </pre>
+ */
+public final class TimeLimitCheck {
+
+    private static final List<String> FINDERS = Arrays.asList(
+            "basic", "disambiguating", "topmatch", "onetoone", "targetunioning");
+
+    private TimeLimitCheck() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        SyntheticDataset dataset = SyntheticDataset.generate(SyntheticGeometries.Kind.BUILDING, size, 42);
+        boolean failed = false;
+        for (String name : FINDERS) {
+            long start = System.nanoTime();
+            ConflationResult full = run(dataset, name, 0);
+            long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+            ConflationResult limited = run(dataset, name, millis);
+            int fullCount = matchedCount(full.getMatches());
+            int limitedCount = matchedCount(limited.getMatches());
+            String error = null;
+            if (!limited.isDeadlineReached()) {
+                error = "time limit not reached";
+            } else if (limitedCount == 0) {
+                error = "no matches kept";
+            } else if (!"basic".equals(name) && !hasUniqueCandidates(limited.getMatches())) {
+                error = "a candidate is the top match of several targets";
+            }
+            System.out.println(String.format(Locale.ROOT, "%-15s limit %6d ms  matched %7d of %7d  %s",
+                    name, millis, limitedCount, fullCount, error == null ? "ok" : "FAILED: " + error));
+            failed |= error != null;
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static ConflationResult run(SyntheticDataset dataset, String name, long timeLimit) {
+        int pauseAt = timeLimit > 0 ? dataset.getReference().size() / 2 : -1;
+        ConflationJob job = new ConflationJob(dataset.getReference(), dataset.getSubject(),
+                () -> createFinder(name, dataset.getMatchDistance(), pauseAt, timeLimit));
+        job.setTimeLimit(timeLimit);
+        return ConflationEngine.run(job, new SilentTaskMonitor());
+    }
+
+    private static FCMatchFinder createFinder(String name, double distance, int pauseAt, long pauseMillis) {
+        FeatureMatcher matcher = new PausingMatcher(new ChainMatcher(new FeatureMatcher[] {
+                new WindowMatcher(distance),
+                new CentroidDistanceMatcher(distance),
+                new SymDiffMatcher()
+        }), pauseAt, pauseMillis);
+        FCMatchFinder basic = new BasicFCMatchFinder(matcher);
+        switch (name) {
+        case "basic":
+            return basic;
+        case "disambiguating":
+            return new DisambiguatingFCMatchFinder(basic);
+        case "topmatch":
+            return new TopMatchDisambiguatingFCMatchFinder(basic);
+        case "onetoone":
+            return new OneToOneFCMatchFinder(basic);
+        case "targetunioning":
+            return new TargetUnioningFCMatchFinder(2, new DisambiguatingFCMatchFinder(basic));
+        default:
+            throw new IllegalArgumentException("Unknown finder: " + name);
+        }
+    }
+
+    private static int matchedCount(Map<Feature, Matches> map) {
+        int count = 0;
+        for (Matches m : map.values()) {
+            if (m.size() > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Pauses once, before matching a given target of the run.
+     */
+    private static final class PausingMatcher implements FeatureMatcher {
+        private final FeatureMatcher matcher;
+        private final int pauseAt;
+        private final long pauseMillis;
+        private int count;
+
+        PausingMatcher(FeatureMatcher matcher, int pauseAt, long pauseMillis) {
+            this.matcher = matcher;
+            this.pauseAt = pauseAt;
+            this.pauseMillis = pauseMillis;
+        }
+
+        @Override
+        public Matches match(Feature target, FeatureCollection candidates) {
+            if (count++ == pauseAt) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return matcher.match(target, candidates);
+        }
+    }
+
+    private static boolean hasUniqueCandidates(Map<Feature, Matches> map) {
+        Set<Feature> topMatches = new HashSet<>();
+        for (Matches m : map.values()) {
+            if (m.size() > 0 && !topMatches.add(m.getTopMatch())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
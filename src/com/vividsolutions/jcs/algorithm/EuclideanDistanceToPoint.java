@@ -42,39 +42,85 @@ import com.vividsolutions.jts.geom.*;
  */
 public class EuclideanDistanceToPoint {
 
-  // used for point-line distance calculation
-  private static LineSegment tempSegment = new LineSegment();
-
   public EuclideanDistanceToPoint() {
   }
 
   public static void computeDistance(Geometry geom, Coordinate pt, PointPairDistance ptDist)
+  {
+    computeDistance(geom, pt.x, pt.y, ptDist);
+  }
+
+  /**
+   * Same as {@link #computeDistance(Geometry, Coordinate, PointPairDistance)},
+   * reading the ordinates of the coordinate sequences of the geometry directly.
+   * Method not part of the original JCS code.
+   */
+  public static void computeDistance(Geometry geom, double x, double y, PointPairDistance ptDist)
   {
     if (geom instanceof LineString) {
-      computeDistance((LineString) geom, pt, ptDist);
+      computeDistance(((LineString) geom).getCoordinateSequence(), x, y, ptDist);
     }
     else if (geom instanceof Polygon) {
-      computeDistance((Polygon) geom, pt, ptDist);
+      Polygon poly = (Polygon) geom;
+      computeDistance(poly.getExteriorRing().getCoordinateSequence(), x, y, ptDist);
+      for (int i = 0; i < poly.getNumInteriorRing(); i++) {
+        computeDistance(poly.getInteriorRingN(i).getCoordinateSequence(), x, y, ptDist);
+      }
     }
     else if (geom instanceof GeometryCollection) {
       GeometryCollection gc = (GeometryCollection) geom;
       for (int i = 0; i < gc.getNumGeometries(); i++) {
         Geometry g = gc.getGeometryN(i);
-        computeDistance(g, pt, ptDist);
+        computeDistance(g, x, y, ptDist);
       }
     }
     else { // assume geom is Point
-      ptDist.setMinimum(geom.getCoordinate(), pt);
+      CoordinateSequence seq = ((Point) geom).getCoordinateSequence();
+      ptDist.setMinimum(seq.getX(0), seq.getY(0), x, y);
     }
   }
+
   public static void computeDistance(LineString line, Coordinate pt, PointPairDistance ptDist)
   {
-    Coordinate[] coords = line.getCoordinates();
-    for (int i = 0; i < coords.length - 1; i++) {
-      tempSegment.setCoordinates(coords[i], coords[i + 1]);
-      // this is somewhat inefficient - could do better
-      Coordinate closestPt = tempSegment.closestPoint(pt);
-      ptDist.setMinimum(closestPt, pt);
+    computeDistance(line.getCoordinateSequence(), pt.x, pt.y, ptDist);
+  }
+
+  /**
+   * Computes the distance from a point to the segments of a sequence,
+   * with the same closest points as {@link LineSegment#closestPoint(Coordinate)}.
+   */
+  private static void computeDistance(CoordinateSequence seq, double x, double y, PointPairDistance ptDist)
+  {
+    for (int i = 0; i < seq.size() - 1; i++) {
+      double x0 = seq.getX(i);
+      double y0 = seq.getY(i);
+      double x1 = seq.getX(i + 1);
+      double y1 = seq.getY(i + 1);
+      double factor;
+      if (x == x0 && y == y0) {
+        factor = 0.0;
+      }
+      else if (x == x1 && y == y1) {
+        factor = 1.0;
+      }
+      else {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        factor = ((x - x0) * dx + (y - y0) * dy) / (dx * dx + dy * dy);
+      }
+      if (factor > 0 && factor < 1) {
+        ptDist.setMinimum(x0 + factor * (x1 - x0), y0 + factor * (y1 - y0), x, y);
+      }
+      else {
+        double dx0 = x0 - x;
+        double dy0 = y0 - y;
+        double dx1 = x1 - x;
+        double dy1 = y1 - y;
+        if (Math.sqrt(dx0 * dx0 + dy0 * dy0) < Math.sqrt(dx1 * dx1 + dy1 * dy1))
+          ptDist.setMinimum(x0, y0, x, y);
+        else
+          ptDist.setMinimum(x1, y1, x, y);
+      }
     }
   }
 
@@ -86,9 +132,6 @@ public class EuclideanDistanceToPoint {
 
   public static void computeDistance(Polygon poly, Coordinate pt, PointPairDistance ptDist)
   {
-    computeDistance(poly.getExteriorRing(), pt, ptDist);
-    for (int i = 0; i < poly.getNumInteriorRing(); i++) {
-      computeDistance(poly.getInteriorRingN(i), pt, ptDist);
-    }
+    computeDistance((Geometry) poly, pt.x, pt.y, ptDist);
   }
 }
@@ -112,4 +112,25 @@ public class PointPairDistance {
     if (dist < distance)
       initialize(p0, p1, dist);
   }
+
+  /**
+   * Same as {@link #setMinimum(Coordinate, Coordinate)}, from ordinates.
+   * Method not part of the original JCS code.
+   */
+  public void setMinimum(double x0, double y0, double x1, double y1)
+  {
+    double dx = x0 - x1;
+    double dy = y0 - y1;
+    double dist = Math.sqrt(dx * dx + dy * dy);
+    if (isNull || dist < distance) {
+      pt[0].x = x0;
+      pt[0].y = y0;
+      pt[0].z = Double.NaN;
+      pt[1].x = x1;
+      pt[1].y = y1;
+      pt[1].z = Double.NaN;
+      distance = dist;
+      isNull = false;
+    }
+  }
 }
@@ -0,0 +1,236 @@
+package com.vividsolutions.jcs.algorithm;
+
+import com.vividsolutions.jts.algorithm.CGAlgorithms;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Computes the centroid of a Geometry by reading the ordinates of its
+ * {@link CoordinateSequence}s directly, giving the same result as
+ * {@link Geometry#getCentroid()} without materializing the coordinates
+ * of packed sequences.
+ * <p>
+ * As in JTS, the centroid of a geometry of dimension 2 is the area-weighted
+ * centroid of its polygons, of dimension 1 the length-weighted centroid of
+ * its lines (polygon rings included), and of dimension 0 the average of its points.
+ * <p>
+ * Class not part of the original JCS code.
+ */
+public class SequenceCentroid {
+
+  private double sumX = 0.0;
+  private double sumY = 0.0;
+  private double weight = 0.0;
+
+  // area accumulation
+  private boolean hasBasePoint = false;
+  private double baseX;
+  private double baseY;
+  private double cg3X = 0.0;
+  private double cg3Y = 0.0;
+  private double areasum2 = 0.0;
+
+  // orientation computation
+  private final Coordinate prevPt = new Coordinate();
+  private final Coordinate hiPt = new Coordinate();
+  private final Coordinate nextPt = new Coordinate();
+
+  private double x = Double.NaN;
+  private double y = Double.NaN;
+
+  /**
+   * Computes the centroid of the given geometry.
+   * @param geom the geometry, which must not be empty
+   */
+  public SequenceCentroid(Geometry geom)
+  {
+    int dim = geom.getDimension();
+    if (dim == 0) {
+      addPoints(geom);
+      x = sumX / weight;
+      y = sumY / weight;
+    }
+    else if (dim == 1) {
+      addLines(geom);
+      x = sumX / weight;
+      y = sumY / weight;
+    }
+    else {
+      addAreas(geom);
+      if (Math.abs(areasum2) > 0.0) {
+        x = cg3X / 3 / areasum2;
+        y = cg3Y / 3 / areasum2;
+      }
+      else {
+        x = sumX / weight;
+        y = sumY / weight;
+      }
+    }
+  }
+
+  public double getX() { return x; }
+
+  public double getY() { return y; }
+
+  /**
+   * Computes the distance between the centroids of two geometries.
+   * @return the distance, or 0 if either geometry is empty, or
+   * Double.MAX_VALUE if a centroid is undefined (e.g. zero-length line), as JTS does
+   */
+  public static double distance(Geometry g0, Geometry g1)
+  {
+    if (g0.isEmpty() || g1.isEmpty()) return 0.0;
+    SequenceCentroid c0 = new SequenceCentroid(g0);
+    SequenceCentroid c1 = new SequenceCentroid(g1);
+    double dx = c0.x - c1.x;
+    double dy = c0.y - c1.y;
+    double dist = Math.sqrt(dx * dx + dy * dy);
+    return Double.isNaN(dist) ? Double.MAX_VALUE : dist;
+  }
+
+  private void addPoints(Geometry geom)
+  {
+    if (geom instanceof Point) {
+      CoordinateSequence seq = ((Point) geom).getCoordinateSequence();
+      if (seq.size() == 0) return;
+      sumX += seq.getX(0);
+      sumY += seq.getY(0);
+      weight += 1;
+    }
+    else if (geom instanceof GeometryCollection) {
+      for (int i = 0; i < geom.getNumGeometries(); i++) {
+        addPoints(geom.getGeometryN(i));
+      }
+    }
+  }
+
+  private void addLines(Geometry geom)
+  {
+    if (geom instanceof LineString) {
+      addSegments(((LineString) geom).getCoordinateSequence());
+    }
+    else if (geom instanceof Polygon) {
+      Polygon poly = (Polygon) geom;
+      addSegments(poly.getExteriorRing().getCoordinateSequence());
+      for (int i = 0; i < poly.getNumInteriorRing(); i++) {
+        addSegments(poly.getInteriorRingN(i).getCoordinateSequence());
+      }
+    }
+    else if (geom instanceof GeometryCollection) {
+      for (int i = 0; i < geom.getNumGeometries(); i++) {
+        addLines(geom.getGeometryN(i));
+      }
+    }
+  }
+
+  private void addAreas(Geometry geom)
+  {
+    if (geom instanceof Polygon) {
+      Polygon poly = (Polygon) geom;
+      CoordinateSequence shell = poly.getExteriorRing().getCoordinateSequence();
+      if (! hasBasePoint) {
+        baseX = shell.getX(0);
+        baseY = shell.getY(0);
+        hasBasePoint = true;
+      }
+      addRing(shell, ! isCCW(shell));
+      for (int i = 0; i < poly.getNumInteriorRing(); i++) {
+        CoordinateSequence hole = poly.getInteriorRingN(i).getCoordinateSequence();
+        addRing(hole, isCCW(hole));
+      }
+    }
+    else if (geom instanceof GeometryCollection) {
+      for (int i = 0; i < geom.getNumGeometries(); i++) {
+        addAreas(geom.getGeometryN(i));
+      }
+    }
+  }
+
+  private void addRing(CoordinateSequence seq, boolean isPositiveArea)
+  {
+    double sign = isPositiveArea ? 1.0 : -1.0;
+    for (int i = 0; i < seq.size() - 1; i++) {
+      double x1 = seq.getX(i);
+      double y1 = seq.getY(i);
+      double x2 = seq.getX(i + 1);
+      double y2 = seq.getY(i + 1);
+      double area2 = (x1 - baseX) * (y2 - baseY) - (x2 - baseX) * (y1 - baseY);
+      cg3X += sign * area2 * (baseX + x1 + x2);
+      cg3Y += sign * area2 * (baseY + y1 + y2);
+      areasum2 += sign * area2;
+    }
+    addSegments(seq);
+  }
+
+  private void addSegments(CoordinateSequence seq)
+  {
+    for (int i = 0; i < seq.size() - 1; i++) {
+      double x0 = seq.getX(i);
+      double y0 = seq.getY(i);
+      double x1 = seq.getX(i + 1);
+      double y1 = seq.getY(i + 1);
+      double dx = x0 - x1;
+      double dy = y0 - y1;
+      double segmentLen = Math.sqrt(dx * dx + dy * dy);
+      weight += segmentLen;
+      sumX += segmentLen * ((x0 + x1) / 2);
+      sumY += segmentLen * ((y0 + y1) / 2);
+    }
+  }
+
+  /**
+   * Same as {@link CGAlgorithms#isCCW(Coordinate[])}, on a sequence.
+   */
+  private boolean isCCW(CoordinateSequence ring)
+  {
+    int nPts = ring.size() - 1;
+    if (nPts < 3)
+      throw new IllegalArgumentException("Ring has fewer than 3 points, so orientation cannot be determined");
+
+    int hiIndex = 0;
+    double hiY = ring.getY(0);
+    for (int i = 1; i <= nPts; i++) {
+      if (ring.getY(i) > hiY) {
+        hiY = ring.getY(i);
+        hiIndex = i;
+      }
+    }
+    double hiX = ring.getX(hiIndex);
+
+    int iPrev = hiIndex;
+    do {
+      iPrev = iPrev - 1;
+      if (iPrev < 0) iPrev = nPts;
+    } while (equals2D(ring, iPrev, hiX, hiY) && iPrev != hiIndex);
+
+    int iNext = hiIndex;
+    do {
+      iNext = (iNext + 1) % nPts;
+    } while (equals2D(ring, iNext, hiX, hiY) && iNext != hiIndex);
+
+    if (equals2D(ring, iPrev, hiX, hiY) || equals2D(ring, iNext, hiX, hiY)
+        || equals2D(ring, iPrev, ring.getX(iNext), ring.getY(iNext)))
+      return false;
+
+    prevPt.x = ring.getX(iPrev);
+    prevPt.y = ring.getY(iPrev);
+    hiPt.x = hiX;
+    hiPt.y = hiY;
+    nextPt.x = ring.getX(iNext);
+    nextPt.y = ring.getY(iNext);
+    int disc = CGAlgorithms.computeOrientation(prevPt, hiPt, nextPt);
+    if (disc == 0)
+      return prevPt.x > nextPt.x;
+    return disc > 0;
+  }
+
+  private static boolean equals2D(CoordinateSequence seq, int i, double x, double y)
+  {
+    return seq.getX(i) == x && seq.getY(i) == y;
+  }
+}
@@ -36,6 +36,8 @@ package com.vividsolutions.jcs.algorithm;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateFilter;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFilter;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
 /**
@@ -100,12 +102,17 @@ public class VertexHausdorffDistance {
   private void computeMaxPointDistance(Geometry pointGeom, Geometry geom, PointPairDistance ptDist)
   {
     MaxPointDistanceFilter distFilter = new MaxPointDistanceFilter(geom);
-    pointGeom.apply(distFilter);
+    pointGeom.apply((CoordinateSequenceFilter) distFilter);
     ptDist.setMaximum(distFilter.getMaxPointDistance());
   }
 
+  /**
+   * Visits the vertices as coordinate sequence ordinates, so that packed
+   * sequences are not expanded to Coordinates (the {@link CoordinateFilter}
+   * interface is kept for callers applying it to coordinates).
+   */
   public static class MaxPointDistanceFilter
-      implements CoordinateFilter
+      implements CoordinateFilter, CoordinateSequenceFilter
   {
     private PointPairDistance maxPtDist = new PointPairDistance();
     private PointPairDistance minPtDist = new PointPairDistance();
@@ -124,6 +131,20 @@ public class VertexHausdorffDistance {
       maxPtDist.setMaximum(minPtDist);
     }
 
+    @Override
+    public void filter(CoordinateSequence seq, int i)
+    {
+      minPtDist.initialize();
+      EuclideanDistanceToPoint.computeDistance(geom, seq.getX(i), seq.getY(i), minPtDist);
+      maxPtDist.setMaximum(minPtDist);
+    }
+
+    @Override
+    public boolean isDone() { return false; }
+
+    @Override
+    public boolean isGeometryChanged() { return false; }
+
     public PointPairDistance getMaxPointDistance() { return maxPtDist; }
   }
 }
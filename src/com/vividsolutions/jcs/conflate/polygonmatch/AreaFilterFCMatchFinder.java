@@ -32,9 +32,11 @@
 
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import com.vividsolutions.jts.util.Assert;
@@ -65,8 +67,23 @@ public class AreaFilterFCMatchFinder implements FCMatchFinder {
         this.matchFinder = matchFinder;
     }
 
+    /**
+     * @return the wrapped match finder
+     */
+    public FCMatchFinder getMatchFinder() {
+        return matchFinder;
+    }
+
     @Override
     public Map<Feature, Matches> match(
+        final FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        return MatchingMetrics.measure("Area filter", targetFC.size(),
+            () -> doMatch(targetFC, candidateFC, monitor));
+    }
+
+    private Map<Feature, Matches> doMatch(
         FeatureCollection targetFC,
         FeatureCollection candidateFC,
         TaskMonitor monitor) {
@@ -85,7 +102,28 @@ public class AreaFilterFCMatchFinder implements FCMatchFinder {
         return targetToMatchesMap;
     }
 
-    private IndexedFeatureCollection filter(
+    /**
+     * Filtered collections of previous runs, so that the filtering and indexing
+     * is not redone when the same collection is matched again.
+     */
+    private static final DerivedCollectionCache<List<Double>> filteredCache = new DerivedCollectionCache<>();
+
+    private FeatureCollection filter(
+        FeatureCollection fc,
+        String name,
+        TaskMonitor monitor) {
+        List<Double> areaRange = Arrays.asList(minArea, maxArea);
+        FeatureCollection result = filteredCache.get(fc, areaRange);
+        if (result == null) {
+            result = doFilter(fc, name, monitor);
+            if (!monitor.isCancelRequested()) {
+                filteredCache.put(fc, areaRange, result);
+            }
+        }
+        return result;
+    }
+
+    private IndexedFeatureCollection doFilter(
         FeatureCollection fc,
         String name,
         TaskMonitor monitor) {
@@ -31,12 +31,15 @@
  */
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.geom.HilbertOrder;
 import com.vividsolutions.jump.task.TaskMonitor;
 
 /**
@@ -54,24 +57,135 @@ public class BasicFCMatchFinder implements FCMatchFinder {
 
     private FeatureMatcher matcher;
 
+    /**
+     * @return the matcher applied to each target
+     */
+    public FeatureMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Minimum number of targets and of candidates from which the window candidates
+     * are found by a plane sweep rather than by one query per target.
+     */
+    public static final int PLANE_SWEEP_MIN_SIZE = 2000;
+
+    private boolean planeSweepEnabled = true;
+
+    private int maxMatchesPerTarget = 0;
+
+    /**
+     * Sets whether the window candidates of large collections may be found by a plane
+     * sweep (see {@link PlaneSweepWindowJoin}) when the matcher starts with a window.
+     * The candidates are the same, but the window hits of each target are all kept in
+     * memory until the target is matched.
+     * @param planeSweepEnabled false to always query the candidates target by target
+     */
+    public void setPlaneSweepEnabled(boolean planeSweepEnabled) {
+        this.planeSweepEnabled = planeSweepEnabled;
+    }
+
+    /**
+     * Sets the maximum number of matches kept for each target, so that memory
+     * stays proportional to the number of targets. Only the best scores are kept;
+     * the top match is unaffected.
+     * @param maxMatchesPerTarget the maximum number of matches kept, 0 for no limit
+     */
+    public void setMaxMatchesPerTarget(int maxMatchesPerTarget) {
+        this.maxMatchesPerTarget = maxMatchesPerTarget;
+    }
+
     @Override
     public Map<Feature, Matches> match(
+        final FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        return MatchingMetrics.measure("Basic matching", targetFC.size(),
+            () -> doMatch(targetFC, candidateFC, monitor));
+    }
+
+    private Map<Feature, Matches> doMatch(
         FeatureCollection targetFC,
         FeatureCollection candidateFC,
         TaskMonitor monitor) {
         monitor.allowCancellationRequests();
         monitor.report("Finding matches");
+        // with a leading window, its candidates can be generated for all targets at once
+        Map<Feature, Matches> windows = null;
+        List<FeatureMatcher> matchers = Collections.singletonList(matcher);
+        if (planeSweepEnabled && targetFC.size() >= PLANE_SWEEP_MIN_SIZE
+                && candidateFC.size() >= PLANE_SWEEP_MIN_SIZE) {
+            FeatureMatcher undecorated = ProfilingMatcher.undecorate(matcher);
+            List<FeatureMatcher> chain = undecorated instanceof ChainMatcher ?
+                    ((ChainMatcher) undecorated).getMatchers() : Collections.singletonList(undecorated);
+            Double buffer = chain.isEmpty() ? null : getWindowBuffer(chain.get(0));
+            if (buffer != null) {
+                windows = PlaneSweepWindowJoin.join(targetFC, candidateFC, buffer, monitor);
+                matchers = chain.subList(1, chain.size());
+            }
+        }
         Map<Feature, Matches> map = new TreeMap<>();
-        int featuresProcessed = 0;
-        int totalFeatures = targetFC.size();
-        for (Iterator<Feature> i = targetFC.iterator();
-            i.hasNext() && !monitor.isCancelRequested();
-            ) {
-            Feature subjectFeature = i.next();
-            featuresProcessed++;
-            monitor.report(featuresProcessed, totalFeatures, "features");
-            map.put(subjectFeature, matcher.match(subjectFeature, candidateFC));
+        // the matchers check the budget of the run, or at least the cancellation
+        MatchBudget budget = MatchBudget.current();
+        boolean ownBudget = budget == null;
+        if (ownBudget) {
+            budget = new MatchBudget(monitor, 0, 0);
+            budget.install();
+        }
+        try {
+            int featuresProcessed = 0;
+            int totalFeatures = targetFC.size();
+            // consecutive targets close in space query the same parts of the
+            // candidate index (the result map is sorted anyway)
+            for (Iterator<Feature> i = HilbertOrder.sort(targetFC.getFeatures()).iterator();
+                i.hasNext() && !monitor.isCancelRequested();
+                ) {
+                Feature subjectFeature = i.next();
+                featuresProcessed++;
+                monitor.report(featuresProcessed, totalFeatures, "features");
+                Matches matches;
+                budget.startTarget(subjectFeature);
+                try {
+                    budget.check();
+                    Matches window = windows != null ? windows.remove(subjectFeature) : null;
+                    if (window == null) {
+                        // no window joined (e.g. a cancelled join), query the candidates
+                        if (!(ProfilingMatcher.undecorate(matcher) instanceof ChainMatcher)) {
+                            // a chain counts the candidates surviving its window
+                            MatchingMetrics.addCandidatePairs(candidateFC.size());
+                        }
+                        matches = matcher.match(subjectFeature, candidateFC, maxMatchesPerTarget);
+                    } else {
+                        MatchingMetrics.addCandidatePairs(window.size());
+                        matches = ChainMatcher.apply(subjectFeature, window, matchers, maxMatchesPerTarget);
+                    }
+                } catch (MatchInterruptedException e) {
+                    if (e.getReason() == MatchInterruptedException.Reason.TARGET_BUDGET) {
+                        budget.skipCurrentTarget();
+                        continue;
+                    }
+                    // cancelled or out of time: keep what was found so far
+                    break;
+                } finally {
+                    budget.endTarget();
+                }
+                map.put(subjectFeature, matches);
+            }
+        } finally {
+            if (ownBudget) {
+                budget.uninstall(null);
+            }
         }
         return map;
     }
+
+    private static Double getWindowBuffer(FeatureMatcher matcher) {
+        matcher = ProfilingMatcher.undecorate(matcher);
+        if (matcher instanceof WindowMatcher) {
+            return ((WindowMatcher) matcher).getBuffer();
+        } else if (matcher instanceof WindowFilter) {
+            return ((WindowFilter) matcher).getBuffer();
+        }
+        return null;
+    }
 }
@@ -1,5 +1,6 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
+import com.vividsolutions.jcs.algorithm.SequenceCentroid;
 import com.vividsolutions.jts.geom.Geometry;
 
 public class CentroidDistanceMatcher extends AbstractDistanceMatcher {
@@ -16,7 +17,6 @@ public class CentroidDistanceMatcher extends AbstractDistanceMatcher {
     }
 
     protected double distance(Geometry target, Geometry candidate) {
-        return target.getCentroid().distance(
-            candidate.getCentroid());
+        return SequenceCentroid.distance(target, candidate);
     }
 }
@@ -33,6 +33,8 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
@@ -68,11 +70,101 @@ public class ChainMatcher implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Matches survivors = new Matches(
-        candidates.getFeatureSchema(), candidates.getFeatures());
-    for (FeatureMatcher matcher : matchers) {
-      survivors = matcher.match(target, survivors);
+    return match(target, candidates, 0);
+  }
+
+  /**
+   * Applies the FeatureMatchers, in sequence, keeping only the best matches.
+   * The last FeatureMatcher creating matches (see {@link #apply(Feature, Matches, List, int)})
+   * adds them directly to the bounded Matches.
+   * @param target the feature to match
+   * @param candidates the features to search for matches
+   * @param maxSize the maximum number of matches kept, 0 for no limit
+   * @return the best candidates surviving all the FeatureMatchers
+   */
+    @Override
+  public Matches match(Feature target, FeatureCollection candidates, int maxSize) {
+    int first = 0;
+    Matches survivors;
+    if (!matchers.isEmpty() && isWindow(matchers.get(0))) {
+      // a window only queries the candidates, so it can be given them directly
+      // instead of a copy of all of them with a score of 1
+      survivors = matchers.get(0).match(target, candidates);
+      first = 1;
+    } else {
+      survivors = new Matches(
+          candidates.getFeatureSchema(), candidates.getFeatures());
     }
-    return survivors;
+    MatchingMetrics.addCandidatePairs(survivors.size());
+    return apply(target, survivors, matchers.subList(first, matchers.size()), maxSize);
+  }
+
+  /**
+   * Applies the FeatureMatchers, in sequence, to matches owned by the caller.
+   * Filters are applied in place to the matches produced along the chain.
+   * @param target the feature to match
+   * @param survivors matches that may be modified
+   * @param matchers the matchers to apply
+   * @return the candidates surviving all the FeatureMatchers
+   */
+  static Matches apply(Feature target, Matches survivors, List<FeatureMatcher> matchers) {
+    return apply(target, survivors, matchers, 0);
+  }
+
+  /**
+   * Applies the FeatureMatchers, in sequence, to matches owned by the caller,
+   * keeping only the best matches. The last FeatureMatcher creating matches adds
+   * them to a bounded Matches when the filters after it keep their ranking
+   * (see {@link MatchesFilter#keepsRanking()}); otherwise the final matches are
+   * bounded once all the FeatureMatchers are applied.
+   * @param target the feature to match
+   * @param survivors matches that may be modified
+   * @param matchers the matchers to apply
+   * @param maxSize the maximum number of matches kept, 0 for no limit
+   * @return the best candidates surviving all the FeatureMatchers
+   */
+  static Matches apply(Feature target, Matches survivors, List<FeatureMatcher> matchers, int maxSize) {
+    int bounded = maxSize > 0 ? boundedMatcherIndex(matchers) : -1;
+    for (int i = 0; i < matchers.size(); i++) {
+      FeatureMatcher matcher = matchers.get(i);
+      if (matcher instanceof MatchesFilter) {
+        ((MatchesFilter) matcher).filter(target, survivors);
+      } else if (i == bounded) {
+        survivors = matcher.match(target, survivors, maxSize);
+      } else {
+        survivors = matcher.match(target, survivors);
+      }
+    }
+    return bounded < 0 ? survivors.best(maxSize) : survivors;
+  }
+
+  /**
+   * Returns the index of the last matcher creating matches, if the filters
+   * after it keep the ranking of the matches, else -1.
+   */
+  private static int boundedMatcherIndex(List<FeatureMatcher> matchers) {
+    for (int i = matchers.size() - 1; i >= 0; i--) {
+      FeatureMatcher matcher = matchers.get(i);
+      if (!(matcher instanceof MatchesFilter)) {
+        return i;
+      }
+      if (!((MatchesFilter) matcher).keepsRanking()) {
+        return -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the matchers applied in sequence
+   */
+  public List<FeatureMatcher> getMatchers() {
+    return Collections.unmodifiableList(matchers);
+  }
+
+  private static boolean isWindow(FeatureMatcher matcher) {
+    matcher = ProfilingMatcher.undecorate(matcher);
+    return matcher instanceof WindowMatcher || matcher instanceof WindowFilter
+        || matcher instanceof NearestCandidatesMatcher;
   }
 }
@@ -86,6 +86,13 @@ public class CombinatorialFCMatchFinder implements FCMatchFinder {
     this.matchFinder = new OneToOneFCMatchFinder(matchFinder);
   }
 
+  /**
+   * @return the wrapped match finder, made one-to-one
+   */
+  public FCMatchFinder getMatchFinder() {
+    return matchFinder;
+  }
+
   @SuppressWarnings({ "unchecked", "rawtypes" })
 public Map<Feature, Matches> match(IndexedFeatureCollection targetFC, IndexedFeatureCollection candidateFC,
       TaskMonitor monitor) {
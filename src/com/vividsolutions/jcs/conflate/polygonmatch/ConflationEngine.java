@@ -0,0 +1,188 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+import com.vividsolutions.jump.index.SpatialIndexType;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Runs {@link ConflationJob}s, independently of any user interface.
+ * <P>
+ * Jobs are run on the executor given at construction, several jobs may run
+ * concurrently: the budget and the metrics of a run are attached to the thread
+ * running it. Cancelling the future of a job stops its matching at the next
+ * checkpoint.
+ * <pre>
+ * ConflationEngine engine = new ConflationEngine(executor);
+ * ConflationJob job = new ConflationJob(targets, candidates,
+ *     () -&gt; new DisambiguatingFCMatchFinder(new BasicFCMatchFinder(matcher)));
+ * job.setProgressListener((stage, done, total) -&gt; log(stage, done, total));
+ * engine.submit(job).thenAccept(result -&gt; store(result.getMatches()));
+ * </pre>
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class ConflationEngine {
+
+  /** Minimum time between two notifications of the progress listener of a job. */
+  private static final long PROGRESS_INTERVAL_NANOS = 100 * 1000000L;
+
+  private final Executor executor;
+
+  /**
+   * @param executor runs the jobs
+   */
+  public ConflationEngine(Executor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Starts a job on the executor of this engine.
+   * @param job the job
+   * @return the future result of the job, completed exceptionally if the job
+   *     failed or could not be started
+   */
+  public CompletableFuture<ConflationResult> submit(final ConflationJob job) {
+    final CompletableFuture<ConflationResult> future = new CompletableFuture<>();
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          if (future.isDone()) {
+            // cancelled before it started
+            return;
+          }
+          try {
+            future.complete(ConflationEngine.run(job, new JobMonitor(job.getProgressListener(), future)));
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  /**
+   * Runs a job on the current thread.
+   * <P>
+   * The stages are recorded in the metrics of the job if any (see
+   * {@link ConflationJob#setMetrics}), else in the metrics attached to the current
+   * thread if any, so that a caller can measure its own stages with those of the run.
+   * @param job the job
+   * @param monitor receives the progress of the finder, and is checked for
+   *     cancellation requests
+   * @return the result of the job
+   */
+  public static ConflationResult run(ConflationJob job, TaskMonitor monitor) {
+    MatchingMetrics metrics = job.getMetrics() != null ? job.getMetrics() : MatchingMetrics.current();
+    MatchingMetrics previousMetrics = null;
+    boolean installMetrics = metrics == null || metrics != MatchingMetrics.current();
+    if (metrics == null) {
+      metrics = new MatchingMetrics();
+    }
+    if (installMetrics) {
+      previousMetrics = metrics.install(job.getParentStage());
+    }
+    try {
+      FeatureCollection targets = job.getTargets();
+      FeatureCollection candidates = index(job.getCandidates(), job);
+      FCMatchFinder finder = job.createMatchFinder();
+      MatchBudget budget = new MatchBudget(monitor, job.getTargetTimeBudget(), job.getTimeLimit());
+      MatchBudget previousBudget = budget.install();
+      Map<Feature, Matches> map;
+      MatchingMetrics.Stage matchingStage = MatchingMetrics.begin("Matching", targets.size());
+      try {
+        map = finder.match(targets, candidates, monitor);
+      } catch (MatchInterruptedException e) {
+        // interrupted in a finder not handling budgets, nothing to keep
+        map = new HashMap<>();
+      } finally {
+        budget.uninstall(previousBudget);
+      }
+      matchingStage.end(MatchingMetrics.pairCount(map));
+      return new ConflationResult(map, metrics, budget.getSkippedTargets(), budget.isDeadlineReached(),
+          monitor.isCancelRequested());
+    } finally {
+      if (installMetrics) {
+        metrics.uninstall(previousMetrics);
+      }
+    }
+  }
+
+  private static FeatureCollection index(FeatureCollection fc, ConflationJob job) {
+    SpatialIndexType type = job.getSpatialIndexType();
+    if (type == null) {
+      return fc;
+    }
+    if (type == SpatialIndexType.AUTOMATIC) {
+      type = SpatialIndexType.choose(fc);
+    }
+    MatchingMetrics.Stage stage = MatchingMetrics.begin("Indexing (" + type + ")", fc.size());
+    try {
+      return new IndexedFeatureCollection(fc, type.create(fc, job.getSpatialIndexNodeCapacity()));
+    } finally {
+      stage.end(0);
+    }
+  }
+
+  /**
+   * Forwards the progress of a job to its listener, at most every
+   * {@link #PROGRESS_INTERVAL_NANOS}, and requests cancellation when its
+   * future is cancelled.
+   */
+  private static final class JobMonitor implements TaskMonitor {
+    private final ConflationJob.ProgressListener listener;
+    private final CompletableFuture<?> future;
+    private volatile String stage = "";
+    private volatile long lastProgress = System.nanoTime() - PROGRESS_INTERVAL_NANOS;
+
+    JobMonitor(ConflationJob.ProgressListener listener, CompletableFuture<?> future) {
+      this.listener = listener;
+      this.future = future;
+    }
+
+    @Override
+    public void report(String description) {
+      stage = description;
+      if (listener != null) {
+        listener.progress(stage, 0, -1);
+      }
+    }
+
+    @Override
+    public void report(int itemsDone, int totalItems, String itemDescription) {
+      if (listener == null) {
+        return;
+      }
+      long now = System.nanoTime();
+      if (itemsDone == totalItems || now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+        lastProgress = now;
+        listener.progress(stage, itemsDone, totalItems);
+      }
+    }
+
+    @Override
+    public void report(Exception exception) {
+      // the finders go on after reporting, a failure ends the job through its future
+    }
+
+    @Override
+    public void allowCancellationRequests() {
+    }
+
+    @Override
+    public boolean isCancelRequested() {
+      return future.isCancelled();
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.function.Supplier;
+
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.index.SpatialIndexType;
+
+/**
+ * The description of a matching run for a {@link ConflationEngine}: the
+ * targets, the candidates, the match finder and the limits of the run.
+ * <P>
+ * The match finder is created for each run by a factory, so that jobs running
+ * concurrently do not share finders and matchers.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class ConflationJob {
+
+  /**
+   * Notified of the progress of a job, on the thread running it.
+   */
+  public interface ProgressListener {
+    /**
+     * @param stage the description of the current stage, e.g. "Finding matches"
+     * @param itemsDone the number of items processed in this stage
+     * @param totalItems the number of items of this stage, -1 if unknown
+     */
+    void progress(String stage, int itemsDone, int totalItems);
+  }
+
+  private final FeatureCollection targets;
+  private final FeatureCollection candidates;
+  private final Supplier<? extends FCMatchFinder> matchFinderFactory;
+  private SpatialIndexType spatialIndexType = SpatialIndexType.AUTOMATIC;
+  private int spatialIndexNodeCapacity = SpatialIndexType.DEFAULT_NODE_CAPACITY;
+  private long targetTimeBudget = 0;
+  private long timeLimit = 0;
+  private ProgressListener progressListener;
+  private MatchingMetrics metrics;
+  private MatchingMetrics.Stage parentStage;
+
+  /**
+   * @param targets the features to find matches for
+   * @param candidates the features which may match them
+   * @param matchFinderFactory creates the match finder of a run
+   */
+  public ConflationJob(FeatureCollection targets, FeatureCollection candidates,
+      Supplier<? extends FCMatchFinder> matchFinderFactory) {
+    this.targets = targets;
+    this.candidates = candidates;
+    this.matchFinderFactory = matchFinderFactory;
+  }
+
+  /**
+   * @return the features to find matches for
+   */
+  public FeatureCollection getTargets() {
+    return targets;
+  }
+
+  /**
+   * @return the features which may match the targets
+   */
+  public FeatureCollection getCandidates() {
+    return candidates;
+  }
+
+  /**
+   * @return a new match finder for a run
+   */
+  public FCMatchFinder createMatchFinder() {
+    return matchFinderFactory.get();
+  }
+
+  /**
+   * @return the index built on the candidates, null if they are used as given
+   */
+  public SpatialIndexType getSpatialIndexType() {
+    return spatialIndexType;
+  }
+
+  /**
+   * @param spatialIndexType the index to build on the candidates, null if they
+   *     are already indexed
+   */
+  public void setSpatialIndexType(SpatialIndexType spatialIndexType) {
+    this.spatialIndexType = spatialIndexType;
+  }
+
+  /**
+   * @return the maximum number of entries of the index nodes
+   */
+  public int getSpatialIndexNodeCapacity() {
+    return spatialIndexNodeCapacity;
+  }
+
+  /**
+   * @param spatialIndexNodeCapacity the maximum number of entries of the index nodes
+   */
+  public void setSpatialIndexNodeCapacity(int spatialIndexNodeCapacity) {
+    this.spatialIndexNodeCapacity = spatialIndexNodeCapacity;
+  }
+
+  /**
+   * @return the maximum time spent on one target in milliseconds, 0 for no limit
+   */
+  public long getTargetTimeBudget() {
+    return targetTimeBudget;
+  }
+
+  /**
+   * @param targetTimeBudget the maximum time spent on one target in milliseconds, 0 for no limit
+   */
+  public void setTargetTimeBudget(long targetTimeBudget) {
+    this.targetTimeBudget = targetTimeBudget;
+  }
+
+  /**
+   * @return the maximum time of the run in milliseconds, 0 for no limit
+   */
+  public long getTimeLimit() {
+    return timeLimit;
+  }
+
+  /**
+   * @param timeLimit the maximum time of the run in milliseconds, 0 for no limit
+   */
+  public void setTimeLimit(long timeLimit) {
+    this.timeLimit = timeLimit;
+  }
+
+  /**
+   * @return the listener notified of the progress, may be null
+   */
+  public ProgressListener getProgressListener() {
+    return progressListener;
+  }
+
+  /**
+   * @param progressListener the listener notified of the progress, may be null
+   */
+  public void setProgressListener(ProgressListener progressListener) {
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * @return the metrics receiving the stages of the job, null if none was given
+   */
+  public MatchingMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the stage in which the stages of the job are nested, may be null
+   */
+  public MatchingMetrics.Stage getParentStage() {
+    return parentStage;
+  }
+
+  /**
+   * Sets the metrics receiving the stages of the job, e.g. those of the caller when
+   * the job is run on a worker of a {@link ConflationEngine}. By default, a job run
+   * on the current thread uses the metrics attached to it, and other jobs their own.
+   * @param metrics the metrics receiving the stages, null for the default
+   * @param parentStage the stage of these metrics in which the stages of the job are nested, may be null
+   */
+  public void setMetrics(MatchingMetrics metrics, MatchingMetrics.Stage parentStage) {
+    this.metrics = metrics;
+    this.parentStage = parentStage;
+  }
+}
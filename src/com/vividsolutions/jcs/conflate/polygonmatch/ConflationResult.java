@@ -0,0 +1,66 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * The outcome of a {@link ConflationJob}: the matches found for each target,
+ * the stages measured, and whether the matches are complete.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class ConflationResult {
+
+  private final Map<Feature, Matches> matches;
+  private final MatchingMetrics metrics;
+  private final List<Feature> skippedTargets;
+  private final boolean deadlineReached;
+  private final boolean cancelled;
+
+  ConflationResult(Map<Feature, Matches> matches, MatchingMetrics metrics, List<Feature> skippedTargets,
+      boolean deadlineReached, boolean cancelled) {
+    this.matches = matches;
+    this.metrics = metrics;
+    this.skippedTargets = skippedTargets;
+    this.deadlineReached = deadlineReached;
+    this.cancelled = cancelled;
+  }
+
+  /**
+   * @return the matches of each target, as returned by the match finder
+   */
+  public Map<Feature, Matches> getMatches() {
+    return Collections.unmodifiableMap(matches);
+  }
+
+  /**
+   * @return the stages measured during the run
+   */
+  public MatchingMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return the targets which exceeded their time budget and were not matched
+   */
+  public List<Feature> getSkippedTargets() {
+    return skippedTargets;
+  }
+
+  /**
+   * @return whether the time limit was reached, so that only part of the targets were matched
+   */
+  public boolean isDeadlineReached() {
+    return deadlineReached;
+  }
+
+  /**
+   * @return whether the run was cancelled, so that only part of the targets were matched
+   */
+  public boolean isCancelled() {
+    return cancelled;
+  }
+}
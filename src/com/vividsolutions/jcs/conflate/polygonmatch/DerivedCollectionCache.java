@@ -0,0 +1,78 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.vividsolutions.jump.feature.DynamicIndexedFeatureCollection;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+
+/**
+ * Remembers collections derived from a source collection (e.g. filtered or
+ * unioned features), so that matching the same source again does not redo the
+ * work. Only sources known not to change behind our back are cached: the
+ * unmodifiable IndexedFeatureCollection, and DynamicIndexedFeatureCollection
+ * whose modification count tells when derived results are outdated.
+ * Sources are weakly referenced.
+ * <P>
+ * Class not part of the original JCS code.
+ * @param <K> the parameters of the derivation
+ */
+class DerivedCollectionCache<K> {
+
+    private final Map<FeatureCollection, Entry<K>> cache = new WeakHashMap<>();
+
+    /**
+     * @param source the source collection
+     * @return whether collections derived from the source can be cached
+     */
+    static boolean isCacheable(FeatureCollection source) {
+        return source instanceof IndexedFeatureCollection || source instanceof DynamicIndexedFeatureCollection;
+    }
+
+    /**
+     * @param source the source collection
+     * @param key the parameters of the derivation
+     * @return the derived collection, or null if not cached or outdated
+     */
+    synchronized FeatureCollection get(FeatureCollection source, K key) {
+        Entry<K> entry = cache.get(source);
+        if (entry == null || entry.version != version(source)) {
+            return null;
+        }
+        return entry.derived.get(key);
+    }
+
+    /**
+     * @param source the source collection
+     * @param key the parameters of the derivation
+     * @param derived the collection derived from the source
+     */
+    synchronized void put(FeatureCollection source, K key, FeatureCollection derived) {
+        if (!isCacheable(source)) {
+            return;
+        }
+        Entry<K> entry = cache.get(source);
+        long version = version(source);
+        if (entry == null || entry.version != version) {
+            entry = new Entry<>(version);
+            cache.put(source, entry);
+        }
+        entry.derived.put(key, derived);
+    }
+
+    private static long version(FeatureCollection source) {
+        return source instanceof DynamicIndexedFeatureCollection ?
+            ((DynamicIndexedFeatureCollection) source).getModificationCount() : 0;
+    }
+
+    private static final class Entry<K> {
+        private final long version;
+        private final Map<K, FeatureCollection> derived = new HashMap<>();
+
+        Entry(long version) {
+            this.version = version;
+        }
+    }
+}
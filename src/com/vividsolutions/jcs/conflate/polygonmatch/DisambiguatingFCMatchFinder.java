@@ -19,8 +19,23 @@ public class DisambiguatingFCMatchFinder implements FCMatchFinder {
     public DisambiguatingFCMatchFinder(FCMatchFinder matchFinder) {
         this.matchFinder = matchFinder;
     }
+
+    /**
+     * @return the wrapped match finder
+     */
+    public FCMatchFinder getMatchFinder() {
+        return matchFinder;
+    }
     @Override
     public Map<Feature, Matches> match(
+        final FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        return MatchingMetrics.measure("Disambiguation", targetFC.size(),
+            () -> doMatch(targetFC, candidateFC, monitor));
+    }
+
+    private Map<Feature, Matches> doMatch(
         FeatureCollection targetFC,
         FeatureCollection candidateFC,
         TaskMonitor monitor) {
@@ -31,6 +46,9 @@ public class DisambiguatingFCMatchFinder implements FCMatchFinder {
         monitor.report("Discarding inferior matches");
         int j = 0;
         for (DisambiguationMatch match : matchSet) {
+            if (monitor.isCancelRequested()) {
+                break;
+            }
             monitor.report(++j, matchSet.size(), "matches");
             if (targets.contains(match.getTarget()) || candidates.contains(match.getCandidate())) {
                 continue;
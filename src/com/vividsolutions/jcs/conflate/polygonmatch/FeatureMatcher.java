@@ -60,4 +60,18 @@ public interface FeatureMatcher {
    */
   public Matches match(Feature target, FeatureCollection candidates);
 
+  /**
+   * Same as {@link #match(Feature, FeatureCollection)}, keeping only the best
+   * matches (see {@link Matches#Matches(com.vividsolutions.jump.feature.FeatureSchema, int)}).
+   * Matchers adding their matches one by one should override it to add them to
+   * the bounded Matches directly; by default, all the matches are copied.
+   * @param target the feature to match
+   * @param candidates the features to search for matches
+   * @param maxSize the maximum number of matches kept, 0 for no limit
+   * @return the best matching features, and a score for each
+   */
+  default Matches match(Feature target, FeatureCollection candidates, int maxSize) {
+    return match(target, candidates).best(maxSize);
+  }
+
 }
@@ -6,7 +6,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Filters out matches where features are identical.
  */
-public class IdenticalFeatureFilter implements FeatureMatcher {
+public class IdenticalFeatureFilter implements MatchesFilter {
     
   /**
    * Filters out matches where features are identical.
@@ -16,13 +16,23 @@ public class IdenticalFeatureFilter implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Matches survivors = new Matches(candidates.getFeatureSchema());
-    Matches allMatches = (Matches) candidates;
-    for (int i = 0; i < allMatches.size(); i++) {
-      if (!allMatches.getFeature(i).equals(target)) {
-        survivors.add(allMatches.getFeature(i), allMatches.getScore(i));
-      }
-    }
+    Matches survivors = ((Matches) candidates).clone();
+    filter(target, survivors);
     return survivors;
   }
+
+  /**
+   * Filters out, in place, matches where features are identical.
+   * @param target the Feature which is the target
+   * @param matches a Matches object created by another FeatureMatcher
+   */
+  @Override
+  public void filter(final Feature target, Matches matches) {
+    matches.rescore(new Matches.ScoreFunction() {
+      @Override
+      public double score(Feature feature, double score) {
+        return feature.equals(target) ? 0 : score;
+      }
+    });
+  }
 }
\ No newline at end of file
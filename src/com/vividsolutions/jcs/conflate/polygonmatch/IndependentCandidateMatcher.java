@@ -46,8 +46,15 @@ public abstract class IndependentCandidateMatcher implements FeatureMatcher {
 
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Matches matches = new Matches(candidates.getFeatureSchema());
+    return match(target, candidates, 0);
+  }
+
+    @Override
+  public Matches match(Feature target, FeatureCollection candidates, int maxSize) {
+    Matches matches = new Matches(candidates.getFeatureSchema(), maxSize);
     for (Feature candidate : candidates) {
+      // comparisons of large geometries can be slow
+      MatchBudget.checkpoint();
       double score = match(target.getGeometry(), candidate.getGeometry());
       if (score > 0) { matches.add(candidate, score); }
     }
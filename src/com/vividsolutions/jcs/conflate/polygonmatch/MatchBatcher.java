@@ -0,0 +1,176 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * Matches the targets of concurrent requests against the same candidates in
+ * shared runs of a {@link ConflationEngine}.
+ * <P>
+ * The requests with the same key (typically the expression of the match
+ * finder) arriving within a short window are merged in one batch, whose
+ * targets are matched in one run: the finder is created once, neighbouring
+ * targets of different requests share the index nodes they visit, and the
+ * collections derived from the candidates are computed once (see
+ * {@link DerivedCollectionCache}).
+ * Each request then receives the matches of its own targets.
+ * <P>
+ * The targets of a batch are matched together, so with finders choosing
+ * between targets (e.g. {@link DisambiguatingFCMatchFinder}) a candidate goes
+ * to the best target of the whole batch. Requests needing to be matched alone
+ * must use a key of their own: callers should only batch by default the
+ * requests whose finder does not choose between targets (see
+ * {@link #choosesBetweenTargets}), and let the others opt in.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class MatchBatcher {
+
+  private final ConflationEngine engine;
+  private final FeatureCollection candidates;
+  private final long windowMillis;
+  private final ScheduledExecutorService timer;
+  private final Map<String, Batch> pending = new HashMap<>();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong batchCount = new AtomicLong();
+
+  /**
+   * @param engine runs the batches
+   * @param candidates the candidates of all requests, already indexed
+   * @param windowMillis the time during which requests are gathered in a batch
+   * @param timer starts the batches at the end of their window
+   */
+  public MatchBatcher(ConflationEngine engine, FeatureCollection candidates, long windowMillis,
+      ScheduledExecutorService timer) {
+    this.engine = engine;
+    this.candidates = candidates;
+    this.windowMillis = windowMillis;
+    this.timer = timer;
+  }
+
+  /**
+   * Adds the targets of a request to the batch of its key.
+   * @param key requests with the same key are batched together
+   * @param matchFinderFactory creates the finder of the batch, if this request starts it
+   * @param targets the targets of the request
+   * @return the future matches of the targets of the request
+   */
+  public CompletableFuture<Map<Feature, Matches>> submit(String key,
+      Supplier<? extends FCMatchFinder> matchFinderFactory, Collection<Feature> targets) {
+    requestCount.incrementAndGet();
+    Request request = new Request(targets);
+    synchronized (pending) {
+      Batch batch = pending.get(key);
+      if (batch == null) {
+        final Batch newBatch = new Batch(key, matchFinderFactory);
+        pending.put(key, newBatch);
+        timer.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush(newBatch);
+          }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+        batch = newBatch;
+      }
+      batch.requests.add(request);
+    }
+    return request.future;
+  }
+
+  /**
+   * Tells whether the matches of a target given by a match finder depend on
+   * the other targets: targets competing for the same candidates, or adjacent
+   * targets combined in composites. The targets of a batch would then compete
+   * with the targets of the other requests of the batch.
+   * @param finder the match finder
+   * @return true for the disambiguating, one-to-one and target combining finders
+   */
+  public static boolean choosesBetweenTargets(FCMatchFinder finder) {
+    if (finder instanceof AreaFilterFCMatchFinder) {
+      return choosesBetweenTargets(((AreaFilterFCMatchFinder) finder).getMatchFinder());
+    }
+    return finder instanceof TargetUnioningFCMatchFinder
+        || finder instanceof CombinatorialFCMatchFinder
+        || TiledConflation.hasUniqueCandidates(finder);
+  }
+
+  /**
+   * @return the number of requests received
+   */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /**
+   * @return the number of batches run
+   */
+  public long getBatchCount() {
+    return batchCount.get();
+  }
+
+  private void flush(Batch batch) {
+    synchronized (pending) {
+      pending.remove(batch.key);
+    }
+    batchCount.incrementAndGet();
+    final List<Request> requests = batch.requests;
+    List<Feature> targets = new ArrayList<>();
+    for (Request request : requests) {
+      targets.addAll(request.targets);
+    }
+    // the schema of a collection is not used by the finders, the features have their own
+    FeatureSchema schema = targets.isEmpty() ? new FeatureSchema() : targets.get(0).getSchema();
+    ConflationJob job = new ConflationJob(new FeatureDataset(targets, schema), candidates, batch.matchFinderFactory);
+    job.setSpatialIndexType(null);
+    engine.submit(job).whenComplete((result, error) -> {
+      for (Request request : requests) {
+        if (error != null) {
+          request.future.completeExceptionally(error);
+          continue;
+        }
+        Map<Feature, Matches> matches = new HashMap<>();
+        for (Feature target : request.targets) {
+          Matches m = result.getMatches().get(target);
+          if (m != null) {
+            matches.put(target, m);
+          }
+        }
+        request.future.complete(matches);
+      }
+    });
+  }
+
+  private static final class Request {
+    final Collection<Feature> targets;
+    final CompletableFuture<Map<Feature, Matches>> future = new CompletableFuture<>();
+
+    Request(Collection<Feature> targets) {
+      this.targets = targets;
+    }
+  }
+
+  private static final class Batch {
+    final String key;
+    final Supplier<? extends FCMatchFinder> matchFinderFactory;
+    /** Only modified while the batch is pending, under the lock of the pending batches. */
+    final List<Request> requests = new ArrayList<>();
+
+    Batch(String key, Supplier<? extends FCMatchFinder> matchFinderFactory) {
+      this.key = key;
+      this.matchFinderFactory = matchFinderFactory;
+    }
+  }
+}
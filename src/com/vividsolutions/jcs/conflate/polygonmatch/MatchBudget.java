@@ -0,0 +1,154 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Limits the time spent matching: cancellation requests, an optional time
+ * budget per target, and an optional time limit for the whole run.
+ * <P>
+ * FeatureMatchers do not receive the TaskMonitor, so the budget of the run is
+ * attached to the current thread (see {@link #install()}) and expensive
+ * matchers call {@link #checkpoint()} between comparisons. The checkpoint
+ * throws a {@link MatchInterruptedException} which is caught by
+ * {@link BasicFCMatchFinder}: a target exceeding its budget is skipped, and
+ * reaching the time limit or a cancellation ends the run with the matches
+ * found so far.
+ * <P>
+ * The budget only limits this matching stage: the finders post-processing the
+ * matches (disambiguation, one-to-one, target unioning) only check the
+ * cancellation, and otherwise complete their work on the matches found, which
+ * a partial run would leave inconsistent.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class MatchBudget {
+
+  private static final ThreadLocal<MatchBudget> CURRENT = new ThreadLocal<>();
+
+  private final TaskMonitor monitor;
+  private final long targetBudgetNanos;
+  private final long deadline;
+  private long targetDeadline = Long.MAX_VALUE;
+  private Feature currentTarget;
+  private boolean deadlineReached = false;
+  private final List<Feature> skippedTargets = new ArrayList<>();
+
+  /**
+   * Creates a budget starting now.
+   * @param monitor checked for cancellation requests
+   * @param targetBudgetMillis the maximum time spent on one target, 0 for no limit
+   * @param timeLimitMillis the maximum time of the whole run, 0 for no limit
+   */
+  public MatchBudget(TaskMonitor monitor, long targetBudgetMillis, long timeLimitMillis) {
+    this.monitor = monitor;
+    this.targetBudgetNanos = targetBudgetMillis * 1000000L;
+    this.deadline = timeLimitMillis > 0 ? System.nanoTime() + timeLimitMillis * 1000000L : Long.MAX_VALUE;
+  }
+
+  /**
+   * Returns the budget attached to the current thread.
+   * @return the current budget, or null if none
+   */
+  public static MatchBudget current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Attaches this budget to the current thread.
+   * @return the budget previously attached, to be given back to {@link #uninstall(MatchBudget)}
+   */
+  public MatchBudget install() {
+    MatchBudget previous = CURRENT.get();
+    CURRENT.set(this);
+    return previous;
+  }
+
+  /**
+   * Detaches this budget from the current thread.
+   * @param previous the budget returned by {@link #install()}
+   */
+  public void uninstall(MatchBudget previous) {
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Checks the budget attached to the current thread, if any.
+   * @throws MatchInterruptedException if the matching must stop
+   */
+  public static void checkpoint() {
+    MatchBudget budget = CURRENT.get();
+    if (budget != null) {
+      budget.check();
+    }
+  }
+
+  /**
+   * Checks this budget.
+   * @throws MatchInterruptedException if the matching must stop
+   */
+  public void check() {
+    if (monitor.isCancelRequested()) {
+      throw new MatchInterruptedException(MatchInterruptedException.Reason.CANCELLED);
+    }
+    if (deadline != Long.MAX_VALUE || targetDeadline != Long.MAX_VALUE) {
+      long now = System.nanoTime();
+      if (now - deadline > 0) {
+        deadlineReached = true;
+        throw new MatchInterruptedException(MatchInterruptedException.Reason.DEADLINE);
+      }
+      if (now - targetDeadline > 0) {
+        throw new MatchInterruptedException(MatchInterruptedException.Reason.TARGET_BUDGET);
+      }
+    }
+  }
+
+  /**
+   * Starts the time budget of a target.
+   * @param target the target about to be matched
+   */
+  public void startTarget(Feature target) {
+    currentTarget = target;
+    targetDeadline = targetBudgetNanos > 0 ? System.nanoTime() + targetBudgetNanos : Long.MAX_VALUE;
+  }
+
+  /**
+   * Ends the time budget of the current target.
+   */
+  public void endTarget() {
+    currentTarget = null;
+    targetDeadline = Long.MAX_VALUE;
+  }
+
+  /**
+   * Records that the current target exceeded its budget and was not matched.
+   */
+  void skipCurrentTarget() {
+    if (currentTarget != null) {
+      skippedTargets.add(currentTarget);
+    }
+    endTarget();
+  }
+
+  /**
+   * @return the targets which exceeded their time budget and were not matched
+   */
+  public List<Feature> getSkippedTargets() {
+    return Collections.unmodifiableList(skippedTargets);
+  }
+
+  /**
+   * @return whether the time limit of the run was reached, so the matches are incomplete
+   */
+  public boolean isDeadlineReached() {
+    return deadlineReached;
+  }
+}
@@ -0,0 +1,40 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+/**
+ * Thrown by {@link MatchBudget#checkpoint()} to abandon the matching of a target.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class MatchInterruptedException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Why the matching was interrupted.
+   */
+  public enum Reason {
+    /** The user asked to cancel. */
+    CANCELLED,
+    /** The time budget of the current target is exhausted. */
+    TARGET_BUDGET,
+    /** The time limit of the whole run is reached. */
+    DEADLINE
+  }
+
+  private final Reason reason;
+
+  /**
+   * @param reason why the matching was interrupted
+   */
+  public MatchInterruptedException(Reason reason) {
+    super(reason.toString());
+    this.reason = reason;
+  }
+
+  /**
+   * @return why the matching was interrupted
+   */
+  public Reason getReason() {
+    return reason;
+  }
+}
@@ -32,7 +32,9 @@
 package com.vividsolutions.jcs.conflate.polygonmatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -40,8 +42,8 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.util.Assert;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
-import com.vividsolutions.jump.feature.FeatureDataset;
 import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.feature.FeatureVisitor;
 
 /**
  * A FeatureCollection that stores the "score" of each Feature.  The score is
@@ -55,12 +57,29 @@ public class Matches implements FeatureCollection, Cloneable {
      * this Matches object
      */
     public Matches(FeatureSchema schema) {
-        dataset = new FeatureDataset(schema);
+        this.schema = schema;
+    }
+
+    /**
+     * Creates a Matches object keeping only the best matches: once maxSize
+     * matches are stored, adding a match discards the one with the lowest score
+     * (or the added one, if it is not better). The top match is unaffected.
+     * @param schema metadata applicable to the features that will be stored in
+     * this Matches object
+     * @param maxSize the maximum number of matches kept, 0 for no limit
+     */
+    public Matches(FeatureSchema schema, int maxSize) {
+        this(schema);
+        Assert.isTrue(maxSize >= 0, "maxSize = " + maxSize);
+        this.maxSize = maxSize;
+        if (maxSize > 0) {
+            heap = new int[maxSize];
+        }
     }
 
     @Override
     protected Matches clone() {
-        Matches clone = new Matches(dataset.getFeatureSchema());
+        Matches clone = new Matches(schema, maxSize);
         for (int i = 0; i < size(); i++) {
             clone.add(getFeature(i), getScore(i));
         }
@@ -80,8 +99,13 @@ public class Matches implements FeatureCollection, Cloneable {
         }
     }
 
-    private FeatureDataset dataset;
-    private List<Double> scores = new ArrayList<>();
+    private final FeatureSchema schema;
+    private final List<Feature> features = new ArrayList<>();
+    private double[] scores = new double[8];
+    private Envelope envelope;
+    private int maxSize = 0;
+    /** Bounded mode only: min-heap of the indexes of the matches, ordered by score. */
+    private int[] heap;
 
     /**
      * This method is not supported, because added features need to be associated
@@ -167,14 +191,142 @@ public class Matches implements FeatureCollection, Cloneable {
         if (score == 0) {
             return;
         }
-        scores.add(new Double(score));
-        dataset.add(feature);
+        int n = features.size();
+        if (heap != null && n == maxSize) {
+            // full: replace the lowest score, if lower
+            int lowest = heap[0];
+            if (score <= scores[lowest]) {
+                return;
+            }
+            features.set(lowest, feature);
+            scores[lowest] = score;
+            envelope = null;
+            siftDown(0);
+        } else {
+            if (n == scores.length) {
+                scores = Arrays.copyOf(scores, n * 2);
+            }
+            scores[n] = score;
+            features.add(feature);
+            if (envelope != null) {
+                envelope.expandToInclude(feature.getGeometry().getEnvelopeInternal());
+            }
+            if (heap != null) {
+                heap[n] = n;
+                siftUp(n);
+            }
+        }
         if (score > topScore) {
             topScore = score;
             topMatch = feature;
         }
     }
 
+    private void siftUp(int i) {
+        int item = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[heap[parent]] <= scores[item]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = item;
+    }
+
+    private void siftDown(int i) {
+        int n = features.size();
+        int item = heap[i];
+        while (2 * i + 1 < n) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+            if (scores[item] <= scores[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = item;
+    }
+
+    /**
+     * Gives the new score of a match, see {@link Matches#rescore(ScoreFunction)}.
+     */
+    public interface ScoreFunction {
+        /**
+         * @param feature the matched feature
+         * @param score its current score
+         * @return its new score, from 0 (the match is removed) to 1
+         */
+        double score(Feature feature, double score);
+    }
+
+    /**
+     * Replaces, in place, the score of each match by the one given by the function.
+     * Matches with a new score of 0 are removed, the order of the others is kept.
+     * The result is the same as adding the matches with their new scores to a new
+     * Matches object, but nothing is allocated.
+     * @param function gives the new scores
+     */
+    public void rescore(ScoreFunction function) {
+        int n = features.size();
+        int kept = 0;
+        topMatch = null;
+        topScore = 0;
+        for (int i = 0; i < n; i++) {
+            Feature feature = features.get(i);
+            double score = function.score(feature, scores[i]);
+            Assert.isTrue(0 <= score && score <= 1, "Score = " + score);
+            if (score == 0) {
+                continue;
+            }
+            features.set(kept, feature);
+            scores[kept] = score;
+            kept++;
+            if (score > topScore) {
+                topScore = score;
+                topMatch = feature;
+            }
+        }
+        if (kept < n) {
+            features.subList(kept, n).clear();
+            envelope = null;
+        }
+        if (heap != null) {
+            for (int i = 0; i < kept; i++) {
+                heap[i] = i;
+                siftUp(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the best matches of this Matches object.
+     * @param maxSize the maximum number of matches kept, 0 for no limit
+     * @return this Matches object if it has no more than maxSize matches,
+     * else a copy bounded to maxSize matches
+     */
+    public Matches best(int maxSize) {
+        if (maxSize <= 0 || size() <= maxSize) {
+            return this;
+        }
+        Matches best = new Matches(schema, maxSize);
+        for (int i = 0; i < size(); i++) {
+            best.add(getFeature(i), getScore(i));
+        }
+        return best;
+    }
+
+    /**
+     * @return the maximum number of matches kept, 0 if not bounded
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
     private Feature topMatch;
     private double topScore = 0;
 
@@ -195,45 +347,71 @@ public class Matches implements FeatureCollection, Cloneable {
      * @return the confidence of the ith match
      */
     public double getScore(int i) {
-        return scores.get(i).doubleValue();
+        Assert.isTrue(i < size());
+        return scores[i];
     }
 
     @Override
 	public FeatureSchema getFeatureSchema() {
-        return dataset.getFeatureSchema();
+        return schema;
     }
 
     @Override
 	public Envelope getEnvelope() {
-        return dataset.getEnvelope();
+        if (envelope == null) {
+            envelope = new Envelope();
+            for (Feature feature : features) {
+                envelope.expandToInclude(feature.getGeometry().getEnvelopeInternal());
+            }
+        }
+        return envelope;
     }
 
     @Override
 	public int size() {
-        return dataset.size();
+        return features.size();
     }
 
     @Override
 	public boolean isEmpty() {
-        return dataset.isEmpty();
+        return features.isEmpty();
     }
 
     public Feature getFeature(int index) {
-        return dataset.getFeature(index);
+        return features.get(index);
     }
 
     @Override
 	public List<Feature> getFeatures() {
-        return dataset.getFeatures();
+        return Collections.unmodifiableList(features);
     }
 
     @Override
 	public Iterator<Feature> iterator() {
-        return dataset.iterator();
+        return getFeatures().iterator();
     }
 
     @Override
 	public List<Feature> query(Envelope envelope) {
-        return dataset.query(envelope);
+        final List<Feature> result = new ArrayList<>();
+        query(envelope, new FeatureVisitor() {
+            @Override
+            public void visit(Feature feature) {
+                result.add(feature);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(Envelope envelope, FeatureVisitor visitor) {
+        if (!envelope.intersects(getEnvelope())) {
+            return;
+        }
+        for (Feature feature : features) {
+            if (feature.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+                visitor.visit(feature);
+            }
+        }
     }
 }
@@ -0,0 +1,33 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * A FeatureMatcher that only filters or rescores the Matches created by
+ * another FeatureMatcher, and can therefore do so in place. Used by
+ * {@link ChainMatcher} on the Matches it owns, so that post-processing
+ * does not copy the matches at each step.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public interface MatchesFilter extends FeatureMatcher {
+
+  /**
+   * Filters or rescores the matches in place. The result must be the same as
+   * the one of {@link #match(Feature, com.vividsolutions.jump.feature.FeatureCollection)}.
+   * @param target the feature to match
+   * @param matches a Matches object created by another FeatureMatcher, modified
+   */
+  void filter(Feature target, Matches matches);
+
+  /**
+   * Tells whether the filter keeps the ranking of the matches: it only removes
+   * the lowest scores, or rescores them in the same order. Applying it to the
+   * best matches only then gives the best matches of applying it to all of them,
+   * so the matcher before it may bound its matches.
+   * @return true if the filter keeps the ranking of the matches
+   */
+  default boolean keepsRanking() {
+    return false;
+  }
+}
@@ -0,0 +1,272 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * Measures the stages of a matching run: wall time, number of features,
+ * number of candidate pairs considered and number of matches kept.
+ * <P>
+ * Like {@link MatchBudget}, the metrics of a run are attached to the current
+ * thread (see {@link #install()}), so that FCMatchFinders and FeatureMatchers
+ * can record their stages without passing them around. Stages may be nested,
+ * a stage including the time and candidate pairs of the stages it contains.
+ * Listeners are notified of each stage, even without installed metrics.
+ * <P>
+ * The same metrics may be installed on several threads, e.g. on the workers
+ * of a {@link ConflationEngine} through {@link ConflationJob#setMetrics}: the
+ * stages are nested per thread, and those of a worker in the stage given to
+ * {@link #install(Stage)}.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class MatchingMetrics {
+
+  /**
+   * Notified of the stages of all runs.
+   */
+  public interface Listener {
+    /**
+     * @param stage a stage which just ended
+     */
+    void stageEnded(Stage stage);
+  }
+
+  /**
+   * A measured stage.
+   */
+  public static final class Stage {
+    private final String name;
+    private final int depth;
+    private final long start = System.nanoTime();
+    private final Stage parent;
+    private final MatchingMetrics metrics;
+    private long duration = -1;
+    private final int features;
+    private final AtomicLong candidatePairs = new AtomicLong();
+    private long matches;
+
+    private Stage(String name, int features, Stage parent, MatchingMetrics metrics) {
+      this.name = name;
+      this.features = features;
+      this.parent = parent;
+      this.depth = parent == null ? 0 : parent.depth + 1;
+      this.metrics = metrics;
+    }
+
+    /**
+     * Ends the stage.
+     * @param matches the number of matches (target-candidate pairs) kept by the stage
+     */
+    public void end(long matches) {
+      if (duration >= 0) {
+        return;
+      }
+      this.matches = matches;
+      duration = System.nanoTime() - start;
+      if (parent != null) {
+        parent.candidatePairs.addAndGet(candidatePairs.get());
+      }
+      if (metrics != null) {
+        metrics.open.get().remove(this);
+      }
+      for (Listener listener : listeners) {
+        listener.stageEnded(this);
+      }
+    }
+
+    /** @return the name of the stage */
+    public String getName() { return name; }
+    /** @return the nesting level of the stage, 0 for a top-level stage */
+    public int getDepth() { return depth; }
+    /** @return the wall time of the stage, in nanoseconds, -1 if not ended */
+    public long getDuration() { return duration; }
+    /** @return the number of features processed */
+    public int getFeatures() { return features; }
+    /** @return the number of target-candidate pairs considered */
+    public long getCandidatePairs() { return candidatePairs.get(); }
+    /** @return the number of matches kept */
+    public long getMatches() { return matches; }
+
+    /**
+     * @return the fraction of the candidate pairs which were discarded, NaN if no pair was considered
+     */
+    public double getPruningRatio() {
+      long pairs = candidatePairs.get();
+      return pairs > 0 ? 1 - Math.min(1, (double) matches / pairs) : Double.NaN;
+    }
+  }
+
+  private static final ThreadLocal<MatchingMetrics> CURRENT = new ThreadLocal<>();
+  private static final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  private final List<Stage> stages = new ArrayList<>();
+  /** The open stages of each thread, the innermost first. */
+  private final ThreadLocal<Deque<Stage>> open = ThreadLocal.withInitial(ArrayDeque::new);
+  /** The stage in which the top-level stages of each thread are nested, if any. */
+  private final ThreadLocal<Stage> base = new ThreadLocal<>();
+
+  /**
+   * @param listener notified of the stages of all runs
+   */
+  public static void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @param listener a listener previously added
+   */
+  public static void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return the metrics attached to the current thread, or null if none
+   */
+  public static MatchingMetrics current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Attaches these metrics to the current thread.
+   * @return the metrics previously attached, to be given back to {@link #uninstall(MatchingMetrics)}
+   */
+  public MatchingMetrics install() {
+    return install(null);
+  }
+
+  /**
+   * Attaches these metrics to the current thread, its top-level stages being
+   * nested in the given stage, e.g. the stage of another thread which handed
+   * work over to this one.
+   * @param parent the stage of these metrics in which the stages are nested, null for none
+   * @return the metrics previously attached, to be given back to {@link #uninstall(MatchingMetrics)}
+   */
+  public MatchingMetrics install(Stage parent) {
+    MatchingMetrics previous = CURRENT.get();
+    CURRENT.set(this);
+    if (parent != null) {
+      base.set(parent);
+    }
+    return previous;
+  }
+
+  /**
+   * Detaches these metrics from the current thread.
+   * @param previous the metrics returned by {@link #install()}
+   */
+  public void uninstall(MatchingMetrics previous) {
+    base.remove();
+    if (previous == null) {
+      CURRENT.remove();
+    } else {
+      CURRENT.set(previous);
+    }
+  }
+
+  /**
+   * Starts a stage, nested in the innermost open stage of the current metrics.
+   * @param name the name of the stage
+   * @param features the number of features processed by the stage
+   * @return the stage, to be ended by {@link Stage#end(long)}
+   */
+  public static Stage begin(String name, int features) {
+    MatchingMetrics metrics = CURRENT.get();
+    if (metrics == null) {
+      return new Stage(name, features, null, null);
+    }
+    Deque<Stage> open = metrics.open.get();
+    Stage parent = open.isEmpty() ? metrics.base.get() : open.peek();
+    Stage stage = new Stage(name, features, parent, metrics);
+    synchronized (metrics.stages) {
+      metrics.stages.add(stage);
+    }
+    open.push(stage);
+    return stage;
+  }
+
+  /**
+   * Runs a matching stage and measures it, the matches kept being those of the result.
+   * @param name the name of the stage
+   * @param features the number of features processed by the stage
+   * @param stage the matching
+   * @return the result of the matching
+   */
+  public static Map<Feature, Matches> measure(String name, int features,
+      Supplier<Map<Feature, Matches>> stage) {
+    Stage measured = begin(name, features);
+    Map<Feature, Matches> result = null;
+    try {
+      result = stage.get();
+      return result;
+    } finally {
+      measured.end(result == null ? 0 : pairCount(result));
+    }
+  }
+
+  /**
+   * Counts target-candidate pairs considered by the innermost open stage.
+   * @param pairs the number of pairs
+   */
+  public static void addCandidatePairs(long pairs) {
+    MatchingMetrics metrics = CURRENT.get();
+    if (metrics != null) {
+      Stage stage = metrics.open.get().peek();
+      if (stage != null) {
+        stage.candidatePairs.addAndGet(pairs);
+      }
+    }
+  }
+
+  /**
+   * @param map the matches of each target
+   * @return the total number of target-candidate pairs
+   */
+  public static long pairCount(Map<Feature, Matches> map) {
+    long count = 0;
+    for (Matches matches : map.values()) {
+      count += matches.size();
+    }
+    return count;
+  }
+
+  /**
+   * @return the stages, in the order they started
+   */
+  public List<Stage> getStages() {
+    synchronized (stages) {
+      return Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+  }
+
+  /**
+   * @return a table of the stages, nested stages being indented
+   */
+  public String summary() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format(Locale.ROOT, "%-36s %10s %10s %12s %10s %8s%n",
+        "Stage", "Time (ms)", "Features", "Candidates", "Matches", "Pruned"));
+    for (Stage stage : getStages()) {
+      StringBuilder name = new StringBuilder();
+      for (int i = 0; i < stage.depth; i++) {
+        name.append("  ");
+      }
+      name.append(stage.name);
+      double pruning = stage.getPruningRatio();
+      sb.append(String.format(Locale.ROOT, "%-36s %10.1f %10d %12d %10d %8s%n",
+          name, stage.duration / 1e6, stage.features, stage.getCandidatePairs(), stage.matches,
+          Double.isNaN(pruning) ? "-" : String.format(Locale.ROOT, "%.1f%%", pruning * 100)));
+    }
+    return sb.toString();
+  }
+}
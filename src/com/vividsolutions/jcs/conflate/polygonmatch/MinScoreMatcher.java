@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Filters out shapes with a score below a given value.
  */
-public class MinScoreMatcher implements FeatureMatcher {
+public class MinScoreMatcher implements MatchesFilter {
 
   /**
    * Creates a MinScoreMatcher with a minimum score of 0. Be sure to call
@@ -75,13 +75,28 @@ public class MinScoreMatcher implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Matches survivors = new Matches(candidates.getFeatureSchema());
-    Matches allMatches = (Matches) candidates;
-    for (int i = 0; i < allMatches.size(); i++) {
-      if (allMatches.getScore(i) >= minScore) {
-        survivors.add(allMatches.getFeature(i), allMatches.getScore(i));
-      }
-    }
+    Matches survivors = ((Matches) candidates).clone();
+    filter(target, survivors);
     return survivors;
   }
+
+  /**
+   * Filters out, in place, shapes with a score below the minimum score threshold.
+   * @param target ignored
+   * @param matches a Matches object created by another FeatureMatcher
+   */
+  @Override
+  public void filter(Feature target, Matches matches) {
+    matches.rescore(new Matches.ScoreFunction() {
+      @Override
+      public double score(Feature feature, double score) {
+        return score >= minScore ? score : 0;
+      }
+    });
+  }
+
+  @Override
+  public boolean keepsRanking() {
+    return true;
+  }
 }
@@ -0,0 +1,135 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.util.Assert;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureVisitor;
+import com.vividsolutions.jump.geom.EnvelopeUtil;
+
+/**
+ * Like {@link WindowMatcher}, quickly filters out shapes far from the feature,
+ * but keeps at most a given number of candidates: the nearest ones (by envelope
+ * distance) within a maximum distance.
+ * <P>
+ * The search starts with a window proportional to the feature size, and grows
+ * according to the number of candidates found (i.e. the local density) until
+ * enough candidates are found or the maximum distance is reached. Dense areas
+ * are therefore searched in small windows, and sparse areas in large ones.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class NearestCandidatesMatcher implements FeatureMatcher {
+
+  private final int maxCandidates;
+  private final double maxDistance;
+  private final double sizeFraction;
+
+  /**
+   * Creates a new NearestCandidatesMatcher.
+   * @param maxCandidates the maximum number of candidates kept for each feature
+   * @param maxDistance candidates farther than this distance from the feature's envelope are ignored
+   * @param sizeFraction the initial search distance, as a fraction of the feature's envelope size
+   */
+  public NearestCandidatesMatcher(int maxCandidates, double maxDistance, double sizeFraction) {
+    Assert.isTrue(maxCandidates > 0, "maxCandidates = " + maxCandidates);
+    Assert.isTrue(maxDistance > 0, "maxDistance = " + maxDistance);
+    this.maxCandidates = maxCandidates;
+    this.maxDistance = maxDistance;
+    this.sizeFraction = sizeFraction;
+  }
+
+  /**
+   * Creates a new NearestCandidatesMatcher, starting the search at the feature's envelope size.
+   * @param maxCandidates the maximum number of candidates kept for each feature
+   * @param maxDistance candidates farther than this distance from the feature's envelope are ignored
+   */
+  public NearestCandidatesMatcher(int maxCandidates, double maxDistance) {
+    this(maxCandidates, maxDistance, 1);
+  }
+
+  /**
+   * @return the maximum number of candidates kept for each feature
+   */
+  public int getMaxCandidates() { return maxCandidates; }
+
+  /**
+   * @return the maximum distance between the feature's envelope and a candidate's envelope
+   */
+  public double getMaxDistance() { return maxDistance; }
+
+  /**
+   * Finds the nearest candidates.
+   * @param target the feature to match
+   * @param candidates the features to search for matches
+   * @return at most maxCandidates candidates, nearest first, within maxDistance
+   * of the feature's envelope. Each will have a score of 1.
+   */
+  @Override
+  public Matches match(Feature target, FeatureCollection candidates) {
+    final Envelope envelope = target.getGeometry().getEnvelopeInternal();
+    Matches matches = new Matches(candidates.getFeatureSchema());
+    if (envelope.isNull()) {
+      return matches;
+    }
+    double size = Math.max(envelope.getWidth(), envelope.getHeight());
+    double buffer = Math.min(maxDistance, Math.max(size * sizeFraction, maxDistance / 16));
+    final PriorityQueue<Candidate> nearest = new PriorityQueue<>(maxCandidates + 1);
+    while (true) {
+      nearest.clear();
+      final double searchDistance = buffer;
+      final int[] inRange = new int[1];
+      candidates.query(EnvelopeUtil.expand(envelope, buffer), new FeatureVisitor() {
+        @Override
+        public void visit(Feature feature) {
+          double distance = envelope.distance(feature.getGeometry().getEnvelopeInternal());
+          if (distance > maxDistance) {
+            return;
+          }
+          if (distance <= searchDistance) {
+            inRange[0]++;
+          }
+          if (nearest.size() < maxCandidates) {
+            nearest.add(new Candidate(feature, distance));
+          } else if (distance < nearest.peek().distance) {
+            nearest.poll();
+            nearest.add(new Candidate(feature, distance));
+          }
+        }
+      });
+      // candidates in the window corners may be farther than the buffer, so the
+      // nearest ones are known only when enough are within the buffer distance
+      if (inRange[0] >= maxCandidates || buffer >= maxDistance) {
+        break;
+      }
+      // grow according to the density found so far
+      double growth = inRange[0] == 0 ? 4 : Math.sqrt((double) maxCandidates / inRange[0]);
+      buffer = Math.min(maxDistance, buffer * Math.max(1.5, Math.min(4, growth)));
+    }
+    Candidate[] sorted = nearest.toArray(new Candidate[nearest.size()]);
+    Arrays.sort(sorted);
+    for (int i = sorted.length - 1; i >= 0; i--) {
+      matches.add(sorted[i].feature, 1);
+    }
+    return matches;
+  }
+
+  /** Ordered by decreasing distance, so that the head of the queue is the farthest. */
+  private static final class Candidate implements Comparable<Candidate> {
+    private final Feature feature;
+    private final double distance;
+
+    Candidate(Feature feature, double distance) {
+      this.feature = feature;
+      this.distance = distance;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      return Double.compare(other.distance, distance);
+    }
+  }
+}
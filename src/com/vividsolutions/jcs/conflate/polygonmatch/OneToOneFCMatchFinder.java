@@ -61,8 +61,23 @@ public class OneToOneFCMatchFinder implements FCMatchFinder {
     this.matchFinder = matchFinder;
   }
 
+  /**
+   * @return the wrapped match finder
+   */
+  public FCMatchFinder getMatchFinder() {
+    return matchFinder;
+  }
+
   @Override
-  public Map<Feature, Matches> match(FeatureCollection targetFC, FeatureCollection candidateFC, TaskMonitor monitor) {
+  public Map<Feature, Matches> match(
+    final FeatureCollection targetFC,
+    final FeatureCollection candidateFC,
+    final TaskMonitor monitor) {
+    return MatchingMetrics.measure("One-to-one", targetFC.size(),
+      () -> doMatch(targetFC, candidateFC, monitor));
+  }
+
+  private Map<Feature, Matches> doMatch(FeatureCollection targetFC, FeatureCollection candidateFC, TaskMonitor monitor) {
     Map<Feature, Matches> targetToMatchesMap = matchFinder.match(targetFC, candidateFC, monitor);
     monitor.allowCancellationRequests();
     monitor.report("Finding best forward matches");
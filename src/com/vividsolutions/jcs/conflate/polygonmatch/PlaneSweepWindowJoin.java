@@ -0,0 +1,114 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Finds, for all the targets at once, the candidates that a {@link WindowMatcher}
+ * would return. Instead of one index query per target, the envelopes of both
+ * collections are sorted along the x axis and swept in a single pass, which
+ * takes O((n+m) log(n+m) + k) for n targets, m candidates and k window pairs.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class PlaneSweepWindowJoin {
+
+    private static final Comparator<Item> BY_MIN_X = new Comparator<Item>() {
+        @Override
+        public int compare(Item a, Item b) {
+            return Double.compare(a.minX, b.minX);
+        }
+    };
+
+    private PlaneSweepWindowJoin() {}
+
+    /**
+     * Returns the window candidates of each target.
+     * @param targetFC the features to match
+     * @param candidateFC the features to search for matches
+     * @param buffer the amount by which the window extends the target envelope on each side
+     * @param monitor checked for cancellation during the sweep
+     * @return the candidates with envelopes intersecting the window of each target, each with
+     * a score of 1. Targets without candidates have an empty Matches. Empty if cancelled.
+     */
+    public static Map<Feature, Matches> join(FeatureCollection targetFC,
+            FeatureCollection candidateFC, double buffer, TaskMonitor monitor) {
+        Item[] targets = items(targetFC, buffer);
+        Item[] candidates = items(candidateFC, 0);
+        Map<Feature, Matches> windows = new IdentityHashMap<>(targets.length);
+        for (Item target : targets) {
+            windows.put(target.feature, new Matches(candidateFC.getFeatureSchema()));
+        }
+        Arrays.sort(targets, BY_MIN_X);
+        Arrays.sort(candidates, BY_MIN_X);
+        int i = 0;
+        int j = 0;
+        // the item starting first is paired with all the items of the other side
+        // starting before it ends; it is then done with
+        while (i < targets.length && j < candidates.length) {
+            if ((i + j) % 1000 == 0 && monitor.isCancelRequested()) {
+                windows.clear();
+                return windows;
+            }
+            if (targets[i].minX <= candidates[j].minX) {
+                Item t = targets[i++];
+                Matches matches = windows.get(t.feature);
+                for (int k = j; k < candidates.length && candidates[k].minX <= t.maxX; k++) {
+                    if (t.overlapsY(candidates[k])) {
+                        matches.add(candidates[k].feature, 1);
+                    }
+                }
+            } else {
+                Item c = candidates[j++];
+                for (int k = i; k < targets.length && targets[k].minX <= c.maxX; k++) {
+                    if (c.overlapsY(targets[k])) {
+                        windows.get(targets[k].feature).add(c.feature, 1);
+                    }
+                }
+            }
+        }
+        return windows;
+    }
+
+    private static Item[] items(FeatureCollection fc, double buffer) {
+        Item[] items = new Item[fc.size()];
+        int n = 0;
+        for (Feature f : fc) {
+            items[n++] = new Item(f, f.getGeometry().getEnvelopeInternal(), buffer);
+        }
+        return n == items.length ? items : Arrays.copyOf(items, n);
+    }
+
+    private static final class Item {
+        private final Feature feature;
+        private final double minX;
+        private final double maxX;
+        private final double minY;
+        private final double maxY;
+
+        Item(Feature feature, Envelope env, double buffer) {
+            this.feature = feature;
+            if (env.isNull() || env.getWidth() + 2 * buffer < 0 || env.getHeight() + 2 * buffer < 0) {
+                // never intersects anything (a negative buffer can empty the window)
+                minX = minY = Double.POSITIVE_INFINITY;
+                maxX = maxY = Double.NEGATIVE_INFINITY;
+            } else {
+                minX = env.getMinX() - buffer;
+                maxX = env.getMaxX() + buffer;
+                minY = env.getMinY() - buffer;
+                maxY = env.getMaxY() + buffer;
+            }
+        }
+
+        boolean overlapsY(Item other) {
+            return minY <= other.maxY && other.minY <= maxY;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+
+/**
+ * Decorates a FeatureMatcher to measure it: number of invocations, total and
+ * percentile latency, candidates received and returned, and bytes allocated.
+ * Used to find which matchers of a pipeline dominate its cost.
+ * <P>
+ * The total time and allocations include those of the matchers called by the
+ * decorated one; the self time excludes the time spent in decorated matchers
+ * it calls. A decorated filter is still applied in place by
+ * {@link ChainMatcher} (see {@link #decorate(FeatureMatcher, Stats)}), and a
+ * decorated window still queries the candidates directly.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class ProfilingMatcher implements FeatureMatcher {
+
+  /** Time spent in decorated matchers called by the current one, per thread. */
+  private static final ThreadLocal<long[]> CHILD_NANOS = ThreadLocal.withInitial(() -> new long[1]);
+
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+
+  private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+  /**
+   * The measures of one decorated matcher.
+   */
+  public static final class Stats {
+    /** Latency histogram: 4 buckets per power of two of nanoseconds. */
+    private static final int BUCKETS = 256;
+
+    private final String name;
+    private long calls;
+    private long totalNanos;
+    private long selfNanos;
+    private long candidatesIn;
+    private long candidatesOut;
+    private long allocatedBytes = -1;
+    private final long[] histogram = new long[BUCKETS];
+
+    /**
+     * @param name the name of the measured matcher
+     */
+    public Stats(String name) {
+      this.name = name;
+    }
+
+    synchronized void record(long nanos, long self, int in, int out, long allocated) {
+      calls++;
+      totalNanos += nanos;
+      selfNanos += self;
+      candidatesIn += in;
+      candidatesOut += out;
+      if (allocated >= 0) {
+        allocatedBytes = Math.max(allocatedBytes, 0) + allocated;
+      }
+      histogram[bucket(nanos)]++;
+    }
+
+    /**
+     * Forgets all the measures.
+     */
+    public synchronized void reset() {
+      calls = 0;
+      totalNanos = 0;
+      selfNanos = 0;
+      candidatesIn = 0;
+      candidatesOut = 0;
+      allocatedBytes = -1;
+      Arrays.fill(histogram, 0);
+    }
+
+    /** @return the name of the measured matcher */
+    public String getName() { return name; }
+    /** @return the number of invocations */
+    public synchronized long getCalls() { return calls; }
+    /** @return the time spent in the calls, in nanoseconds */
+    public synchronized long getTotalNanos() { return totalNanos; }
+    /** @return the time spent in the calls minus the time of the decorated matchers they called */
+    public synchronized long getSelfNanos() { return selfNanos; }
+    /** @return the total number of candidates given to the calls */
+    public synchronized long getCandidatesIn() { return candidatesIn; }
+    /** @return the total number of matches returned by the calls */
+    public synchronized long getCandidatesOut() { return candidatesOut; }
+
+    /**
+     * @return the bytes allocated by the calls, or -1 if the JVM cannot tell
+     */
+    public synchronized long getAllocatedBytes() { return allocatedBytes; }
+
+    /**
+     * Returns the latency below which the given fraction of the calls
+     * completed, within about 12%.
+     * @param fraction between 0 and 1, e.g. 0.95
+     * @return the latency in nanoseconds, or 0 if there was no call
+     */
+    public synchronized long getPercentileNanos(double fraction) {
+      if (calls == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(fraction * calls);
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += histogram[i];
+        if (seen >= rank && histogram[i] > 0) {
+          return bucketValue(i);
+        }
+      }
+      return bucketValue(BUCKETS - 1);
+    }
+
+    private static int bucket(long nanos) {
+      if (nanos < 4) {
+        return (int) Math.max(nanos, 0);
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      int sub = (int) (nanos >>> (exponent - 2)) & 3;
+      return (exponent - 1) * 4 + sub;
+    }
+
+    private static long bucketValue(int bucket) {
+      if (bucket < 4) {
+        return bucket;
+      }
+      int exponent = bucket / 4 + 1;
+      long low = (4L + bucket % 4) << (exponent - 2);
+      return low + (1L << (exponent - 2)) / 2;
+    }
+  }
+
+  /**
+   * Decorates a matcher, keeping it a {@link MatchesFilter} if it is one.
+   * @param matcher the matcher to measure
+   * @param stats receives the measures
+   * @return the decorated matcher
+   */
+  public static ProfilingMatcher decorate(FeatureMatcher matcher, Stats stats) {
+    if (matcher instanceof MatchesFilter) {
+      return new ProfilingFilter((MatchesFilter) matcher, stats);
+    }
+    return new ProfilingMatcher(matcher, stats);
+  }
+
+  /**
+   * Returns the matcher decorated by the given one, if any.
+   * @param matcher a matcher, possibly decorated
+   * @return the undecorated matcher
+   */
+  public static FeatureMatcher undecorate(FeatureMatcher matcher) {
+    while (matcher instanceof ProfilingMatcher) {
+      matcher = ((ProfilingMatcher) matcher).getMatcher();
+    }
+    return matcher;
+  }
+
+  private final FeatureMatcher matcher;
+  private final Stats stats;
+
+  /**
+   * Creates a decorator. See {@link #decorate(FeatureMatcher, Stats)} to keep
+   * filters applied in place.
+   * @param matcher the matcher to measure
+   * @param stats receives the measures
+   */
+  public ProfilingMatcher(FeatureMatcher matcher, Stats stats) {
+    this.matcher = matcher;
+    this.stats = stats;
+  }
+
+  /**
+   * @return the decorated matcher
+   */
+  public FeatureMatcher getMatcher() {
+    return matcher;
+  }
+
+  /**
+   * @return the measures of the decorated matcher
+   */
+  public Stats getStats() {
+    return stats;
+  }
+
+  @Override
+  public Matches match(Feature target, FeatureCollection candidates) {
+    return match(target, candidates, 0);
+  }
+
+  @Override
+  public Matches match(Feature target, FeatureCollection candidates, int maxSize) {
+    int in = candidates.size();
+    Matches result = null;
+    long[] childNanos = CHILD_NANOS.get();
+    long outerChildNanos = childNanos[0];
+    childNanos[0] = 0;
+    long allocated = allocatedBytes();
+    long start = System.nanoTime();
+    try {
+      result = matcher.match(target, candidates, maxSize);
+      return result;
+    } finally {
+      end(start, allocated, childNanos, outerChildNanos, in, result == null ? 0 : result.size());
+    }
+  }
+
+  void end(long start, long allocated, long[] childNanos, long outerChildNanos, int in, int out) {
+    long nanos = System.nanoTime() - start;
+    if (allocated >= 0) {
+      allocated = allocatedBytes() - allocated;
+    }
+    stats.record(nanos, nanos - childNanos[0], in, out, allocated);
+    childNanos[0] = outerChildNanos + nanos;
+  }
+
+  private static long allocatedBytes() {
+    if (!ALLOCATION_SUPPORTED) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) THREAD_BEAN).getThreadAllocatedBytes(
+        Thread.currentThread().getId());
+  }
+
+  private static boolean isAllocationSupported() {
+    try {
+      if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+        if (bean.isThreadAllocatedMemorySupported() && !bean.isThreadAllocatedMemoryEnabled()) {
+          bean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return bean.isThreadAllocatedMemoryEnabled();
+      }
+    } catch (LinkageError | UnsupportedOperationException | SecurityException e) {
+      // not a HotSpot-like JVM
+    }
+    return false;
+  }
+
+  /**
+   * Decorates a filter, which can still be applied in place.
+   */
+  private static final class ProfilingFilter extends ProfilingMatcher implements MatchesFilter {
+
+    private ProfilingFilter(MatchesFilter filter, Stats stats) {
+      super(filter, stats);
+    }
+
+    @Override
+    public boolean keepsRanking() {
+      return ((MatchesFilter) getMatcher()).keepsRanking();
+    }
+
+    @Override
+    public void filter(Feature target, Matches matches) {
+      int in = matches.size();
+      long[] childNanos = CHILD_NANOS.get();
+      long outerChildNanos = childNanos[0];
+      childNanos[0] = 0;
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      try {
+        ((MatchesFilter) getMatcher()).filter(target, matches);
+      } finally {
+        end(start, allocated, childNanos, outerChildNanos, in, matches.size());
+      }
+    }
+  }
+}
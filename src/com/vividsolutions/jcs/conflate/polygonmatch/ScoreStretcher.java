@@ -40,7 +40,7 @@ import com.vividsolutions.jump.feature.FeatureCollection;
 /**
  * Re-scales the scores output from another FeatureMatcher
  */
-public class ScoreStretcher implements FeatureMatcher {
+public class ScoreStretcher implements MatchesFilter {
 
   /**
    * Creates a StretchFilter with the given control points.
@@ -64,14 +64,31 @@ public class ScoreStretcher implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
-    Matches oldMatches = (Matches) candidates;
-    Matches newMatches = new Matches(candidates.getFeatureSchema());
-    for (int i = 0; i < oldMatches.size(); i++) {
-      newMatches.add(oldMatches.getFeature(i), convert(oldMatches.getScore(i)));
-    }
+    Matches newMatches = ((Matches) candidates).clone();
+    filter(target, newMatches);
     return newMatches;
   }
 
+  /**
+   * Scales the scores in place, see {@link #match(Feature, FeatureCollection)}.
+   * @param target ignored
+   * @param matches a Matches object created by another FeatureMatcher
+   */
+  @Override
+  public void filter(Feature target, Matches matches) {
+    matches.rescore(new Matches.ScoreFunction() {
+      @Override
+      public double score(Feature feature, double score) {
+        return convert(score);
+      }
+    });
+  }
+
+  @Override
+  public boolean keepsRanking() {
+    return maxScore > minScore;
+  }
+
   private double convert(double oldScore) {
     //y = m x + b; v = m u + b
     double x = minScore, y = 0, u = maxScore, v = 1;
@@ -84,8 +84,23 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         this.maxCompositeSize = maxCompositeSize;
         this.matchFinder = matchFinder;
     }
+
+    /**
+     * @return the wrapped match finder
+     */
+    public FCMatchFinder getMatchFinder() {
+        return matchFinder;
+    }
     @Override
     public Map<Feature, Matches> match(
+        final FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        return MatchingMetrics.measure("Target unioning", targetFC.size(),
+            () -> doMatch(targetFC, candidateFC, monitor));
+    }
+
+    private Map<Feature, Matches> doMatch(
         FeatureCollection targetFC,
         FeatureCollection candidateFC,
         TaskMonitor monitor) {
@@ -138,7 +153,26 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
             }
         }
     }
+    /**
+     * Composite collections of previous runs, keyed by the maximum composite size.
+     * Building composites unions geometries, so it is worth not doing it again
+     * when only the matchers changed.
+     */
+    private static final DerivedCollectionCache<Integer> compositeFCCache = new DerivedCollectionCache<>();
     protected FeatureCollection createCompositeFC(
+        FeatureCollection fc,
+        TaskMonitor monitor) {
+        FeatureCollection compositeFC = compositeFCCache.get(fc, maxCompositeSize);
+        if (compositeFC == null) {
+            compositeFC = doCreateCompositeFC(fc, monitor);
+            // a cancelled run leaves composites out
+            if (!monitor.isCancelRequested()) {
+                compositeFCCache.put(fc, maxCompositeSize, compositeFC);
+            }
+        }
+        return compositeFC;
+    }
+    private FeatureCollection doCreateCompositeFC(
         FeatureCollection fc,
         TaskMonitor monitor) {
         FeatureCollection compositeFC = new FeatureDataset(fc.getFeatureSchema());
@@ -165,6 +199,9 @@ public class TargetUnioningFCMatchFinder implements FCMatchFinder {
         monitor.report("Discarding inferior composite matches");
         int j = 0;
         outer : for (DisambiguationMatch match : matchSet) {
+            if (monitor.isCancelRequested()) {
+                break;
+            }
             monitor.report(++j, matchSet.size(), "matches");
             for (Feature targetConstituent : ((CompositeFeature) match.getTarget()).getFeatures()) {
                 if (targetConstituentsEncountered.contains(targetConstituent)) {
@@ -0,0 +1,538 @@
+package com.vividsolutions.jcs.conflate.polygonmatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.geom.EnvelopeUtil;
+import com.vividsolutions.jump.index.SpatialIndexType;
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Runs a {@link ConflationJob} tile by tile, so that the memory used by the
+ * match finder (its maps, windows and derived collections) is bounded by the
+ * size of a tile rather than by the size of the whole job.
+ * <P>
+ * The combined envelope of the targets and candidates is divided into square
+ * tiles. Each target is owned by the tile containing the centre of its
+ * envelope. A tile is matched with the candidates within the halo of its
+ * owned targets, and with the other targets near these candidates, so that
+ * finders choosing between targets see their competitors across the seams.
+ * With a halo at least the window buffer of the matcher (see
+ * {@link #findHalo(FCMatchFinder)}), the owned targets are given the same
+ * candidates as in a single run.
+ * <P>
+ * The matches of a target are only kept from the tile owning it, the copies
+ * found in the halo of the other tiles are dropped. With unique candidates
+ * (for one-to-one finders), a candidate which is the top match of targets of
+ * several tiles is kept by the tile with the best score, the lowest tile index
+ * on ties. The targets of the other tiles are left unmatched: their next
+ * matches may be the top matches of yet other targets, the single run would
+ * have given them to others.
+ * The outcome does not depend on the order in which the tiles complete.
+ * <P>
+ * The matches are given to a {@link Listener} as soon as they are final: at the
+ * end of their tile, or once all the tiles sharing their top candidate are done.
+ * The tiles run in parallel on the {@link ConflationEngine}, a limited number at
+ * a time. The candidates should be indexed, as each tile queries them.
+ * Finders building composite targets may combine them differently at the seams.
+ * <pre>
+ * TiledConflation tiling = new TiledConflation(engine, 2000, TiledConflation.findHalo(finder));
+ * tiling.run(job, monitor, matches -&gt; write(matches));
+ * </pre>
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class TiledConflation {
+
+  /**
+   * Receives the final matches of the targets, on the thread calling
+   * {@link TiledConflation#run}.
+   */
+  public interface Listener {
+    /**
+     * @param matches the matches of some targets, each target being given once
+     */
+    void matched(Map<Feature, Matches> matches);
+  }
+
+  private final ConflationEngine engine;
+  private final double tileSize;
+  private final double halo;
+  private int maxTilesInProgress = Runtime.getRuntime().availableProcessors();
+  private boolean uniqueCandidates = false;
+
+  /**
+   * @param engine runs the tiles
+   * @param tileSize the width and height of the tiles
+   * @param halo the distance around the owned targets of a tile within which
+   *     candidates are matched, at least the window buffer of the match finder
+   */
+  public TiledConflation(ConflationEngine engine, double tileSize, double halo) {
+    if (!(tileSize > 0) || !(halo >= 0)) {
+      throw new IllegalArgumentException("Invalid tile size " + tileSize + " or halo " + halo);
+    }
+    this.engine = engine;
+    this.tileSize = tileSize;
+    this.halo = halo;
+  }
+
+  /**
+   * @param maxTilesInProgress the maximum number of tiles matched at the same
+   *     time, by default the number of processors
+   */
+  public void setMaxTilesInProgress(int maxTilesInProgress) {
+    this.maxTilesInProgress = Math.max(1, maxTilesInProgress);
+  }
+
+  /**
+   * @param uniqueCandidates true if a candidate can be the top match of one
+   *     target only (one-to-one finders), so that the seams are resolved
+   */
+  public void setUniqueCandidates(boolean uniqueCandidates) {
+    this.uniqueCandidates = uniqueCandidates;
+  }
+
+  /**
+   * Finds the distance within which a match finder looks for the candidates of
+   * a target: the buffer of the window starting its matcher.
+   * @param finder the match finder
+   * @return the distance, -1 if the finder may compare a target with any candidate
+   */
+  public static double findHalo(FCMatchFinder finder) {
+    if (finder instanceof DisambiguatingFCMatchFinder) {
+      return findHalo(((DisambiguatingFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof TopMatchDisambiguatingFCMatchFinder) {
+      return findHalo(((TopMatchDisambiguatingFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof OneToOneFCMatchFinder) {
+      return findHalo(((OneToOneFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof AreaFilterFCMatchFinder) {
+      return findHalo(((AreaFilterFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof TargetUnioningFCMatchFinder) {
+      return findHalo(((TargetUnioningFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof BasicFCMatchFinder) {
+      return findHalo(((BasicFCMatchFinder) finder).getMatcher());
+    }
+    return -1;
+  }
+
+  /**
+   * Tells whether a match finder gives each candidate to one target at most,
+   * so that the seams between tiles must be resolved.
+   * @param finder the match finder
+   * @return true for the disambiguating and one-to-one finders
+   */
+  public static boolean hasUniqueCandidates(FCMatchFinder finder) {
+    if (finder instanceof AreaFilterFCMatchFinder) {
+      return hasUniqueCandidates(((AreaFilterFCMatchFinder) finder).getMatchFinder());
+    } else if (finder instanceof TargetUnioningFCMatchFinder) {
+      return hasUniqueCandidates(((TargetUnioningFCMatchFinder) finder).getMatchFinder());
+    }
+    return finder instanceof DisambiguatingFCMatchFinder
+        || finder instanceof TopMatchDisambiguatingFCMatchFinder
+        || finder instanceof OneToOneFCMatchFinder;
+  }
+
+  private static double findHalo(FeatureMatcher matcher) {
+    if (matcher instanceof ProfilingMatcher) {
+      return findHalo(((ProfilingMatcher) matcher).getMatcher());
+    } else if (matcher instanceof ChainMatcher) {
+      List<FeatureMatcher> chain = ((ChainMatcher) matcher).getMatchers();
+      return chain.isEmpty() ? -1 : findHalo(chain.get(0));
+    } else if (matcher instanceof WindowMatcher) {
+      return ((WindowMatcher) matcher).getBuffer();
+    } else if (matcher instanceof WindowFilter) {
+      return ((WindowFilter) matcher).getBuffer();
+    } else if (matcher instanceof NearestCandidatesMatcher) {
+      return ((NearestCandidatesMatcher) matcher).getMaxDistance();
+    }
+    return -1;
+  }
+
+  /**
+   * Runs a job tile by tile.
+   * @param job the job; its time limit applies to the whole run, and its progress
+   *     listener is not used
+   * @param monitor receives the number of tiles done, and is checked for
+   *     cancellation requests
+   * @param listener receives the matches as they are final, null to get them all
+   *     in the result
+   * @return the outcome of the run, with the matches only if there is no listener
+   */
+  public ConflationResult run(ConflationJob job, TaskMonitor monitor, Listener listener) {
+    MatchingMetrics metrics = MatchingMetrics.current();
+    MatchingMetrics previousMetrics = null;
+    boolean ownMetrics = metrics == null;
+    if (ownMetrics) {
+      metrics = new MatchingMetrics();
+      previousMetrics = metrics.install();
+    }
+    try {
+      Map<Feature, Matches> allMatches = new HashMap<>();
+      Listener output = listener != null ? listener : matches -> allMatches.putAll(matches);
+      Run run = new Run(job, monitor, output);
+      MatchingMetrics.Stage planningStage = MatchingMetrics.begin("Tiling", job.getTargets().size());
+      run.plan();
+      planningStage.end(0);
+      MatchingMetrics.Stage matchingStage = MatchingMetrics.begin("Tiled matching", job.getTargets().size());
+      // the tiles are matched on the workers of the engine
+      run.metrics = metrics;
+      run.matchingStage = matchingStage;
+      run.execute();
+      matchingStage.end(run.pairCount);
+      return new ConflationResult(allMatches, metrics, run.skippedTargets, run.deadlineReached,
+          run.cancelled);
+    } finally {
+      if (ownMetrics) {
+        metrics.uninstall(previousMetrics);
+      }
+    }
+  }
+
+  /**
+   * A tile with owned targets.
+   */
+  private static final class Tile {
+    final int index;
+    // the owned targets, expanded by the halo: where the candidates of the tile are
+    final Envelope reach = new Envelope();
+    int ownedCount;
+    boolean done;
+
+    Tile(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * A target whose top candidate may be the top match of targets of other tiles.
+   */
+  private static final class SeamEntry {
+    final Tile tile;
+    final Feature target;
+    final Matches matches;
+    final List<Tile> contenders;
+
+    SeamEntry(Tile tile, Feature target, Matches matches, List<Tile> contenders) {
+      this.tile = tile;
+      this.target = target;
+      this.matches = matches;
+      this.contenders = contenders;
+    }
+
+    boolean isReady() {
+      for (Tile t : contenders) {
+        if (!t.done) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The state of one run, used on the thread calling {@link TiledConflation#run}.
+   */
+  private final class Run {
+    private final ConflationJob job;
+    private final TaskMonitor monitor;
+    private final Listener listener;
+    private final TreeMap<Integer, Tile> tiles = new TreeMap<>();
+    // how far the reach of a tile extends beyond its square, at most
+    private double maxMargin;
+    // the seam entries, by top candidate
+    private final Map<Feature, List<SeamEntry>> seams = new HashMap<>();
+    private final List<Feature> skippedTargets = new ArrayList<>();
+    // the targets without geometry, owned by tile 0
+    private final List<Feature> emptyTargets = new ArrayList<>();
+    private boolean deadlineReached;
+    private boolean cancelled;
+    private boolean interrupted;
+    private long pairCount;
+    private MatchingMetrics metrics;
+    private MatchingMetrics.Stage matchingStage;
+
+    // the grid of the tiles
+    private double minX;
+    private double minY;
+    private int columns;
+    private int rows;
+
+    Run(ConflationJob job, TaskMonitor monitor, Listener listener) {
+      this.job = job;
+      this.monitor = monitor;
+      this.listener = listener;
+    }
+
+    private int tileIndex(double x, double y) {
+      int column = Math.min(columns - 1, Math.max(0, (int) Math.floor((x - minX) / tileSize)));
+      int row = Math.min(rows - 1, Math.max(0, (int) Math.floor((y - minY) / tileSize)));
+      return row * columns + column;
+    }
+
+    private int owner(Feature feature) {
+      Envelope e = feature.getGeometry().getEnvelopeInternal();
+      if (e.isNull()) {
+        return 0;
+      }
+      return tileIndex((e.getMinX() + e.getMaxX()) / 2, (e.getMinY() + e.getMaxY()) / 2);
+    }
+
+    void plan() {
+      Envelope extent = new Envelope(job.getTargets().getEnvelope());
+      extent.expandToInclude(job.getCandidates().getEnvelope());
+      if (extent.isNull()) {
+        extent = new Envelope(0, 0, 0, 0);
+      }
+      minX = extent.getMinX();
+      minY = extent.getMinY();
+      columns = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, Math.ceil(extent.getWidth() / tileSize)));
+      rows = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2 / columns, Math.ceil(extent.getHeight() / tileSize)));
+      for (Feature target : job.getTargets()) {
+        int index = owner(target);
+        Tile tile = tiles.get(index);
+        if (tile == null) {
+          tile = new Tile(index);
+          tiles.put(index, tile);
+        }
+        tile.ownedCount++;
+        Envelope e = target.getGeometry().getEnvelopeInternal();
+        if (e.isNull()) {
+          emptyTargets.add(target);
+        } else {
+          tile.reach.expandToInclude(EnvelopeUtil.expand(e, halo));
+        }
+      }
+      for (Tile tile : tiles.values()) {
+        if (tile.reach.isNull()) {
+          continue;
+        }
+        double squareMinX = minX + (tile.index % columns) * tileSize;
+        double squareMinY = minY + (tile.index / columns) * tileSize;
+        maxMargin = Math.max(maxMargin, Math.max(
+            Math.max(squareMinX - tile.reach.getMinX(), tile.reach.getMaxX() - squareMinX - tileSize),
+            Math.max(squareMinY - tile.reach.getMinY(), tile.reach.getMaxY() - squareMinY - tileSize)));
+      }
+    }
+
+    void execute() {
+      monitor.allowCancellationRequests();
+      monitor.report("Matching tiles");
+      long deadline = job.getTimeLimit() > 0 ? System.currentTimeMillis() + job.getTimeLimit() : 0;
+      BlockingQueue<Object[]> completed = new LinkedBlockingQueue<>();
+      Map<Tile, CompletableFuture<ConflationResult>> inProgress = new HashMap<>();
+      Iterator<Tile> pending = tiles.values().iterator();
+      int tilesDone = 0;
+      while (pending.hasNext() || !inProgress.isEmpty()) {
+        if (!cancelled && monitor.isCancelRequested()) {
+          cancelled = true;
+          for (CompletableFuture<ConflationResult> future : inProgress.values()) {
+            future.cancel(false);
+          }
+        }
+        while (!cancelled && !deadlineReached && pending.hasNext()
+            && inProgress.size() < maxTilesInProgress) {
+          long remaining = deadline == 0 ? 0 : deadline - System.currentTimeMillis();
+          if (deadline != 0 && remaining <= 0) {
+            deadlineReached = true;
+            break;
+          }
+          final Tile tile = pending.next();
+          CompletableFuture<ConflationResult> future = engine.submit(createTileJob(tile, remaining));
+          inProgress.put(tile, future);
+          future.whenComplete((result, failure) -> completed.add(new Object[] {tile, result, failure}));
+        }
+        if (inProgress.isEmpty()) {
+          break;
+        }
+        Object[] done = take(completed, inProgress);
+        Tile tile = (Tile) done[0];
+        inProgress.remove(tile);
+        Throwable failure = (Throwable) done[2];
+        if (failure instanceof CompletionException && failure.getCause() != null) {
+          failure = failure.getCause();
+        }
+        if (failure instanceof CancellationException) {
+          continue;
+        } else if (failure != null) {
+          for (CompletableFuture<ConflationResult> future : inProgress.values()) {
+            future.cancel(false);
+          }
+          throw failure instanceof RuntimeException ? (RuntimeException) failure
+              : new IllegalStateException("Matching of tile " + tile.index + " failed", failure);
+        }
+        tileMatched(tile, (ConflationResult) done[1]);
+        monitor.report(++tilesDone, tiles.size(), "tiles");
+      }
+      // tiles not run (cancelled, out of time) cannot claim candidates anymore
+      for (Tile tile : tiles.values()) {
+        tile.done = true;
+      }
+      resolveSeams();
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private Object[] take(BlockingQueue<Object[]> completed,
+        Map<Tile, CompletableFuture<ConflationResult>> inProgress) {
+      while (true) {
+        try {
+          return completed.take();
+        } catch (InterruptedException e) {
+          // cancel the run, still waiting for the tiles in progress to end
+          interrupted = true;
+          cancelled = true;
+          for (CompletableFuture<ConflationResult> future : inProgress.values()) {
+            future.cancel(false);
+          }
+        }
+      }
+    }
+
+    private ConflationJob createTileJob(Tile tile, long timeLimit) {
+      List<Feature> tileCandidates = new ArrayList<>();
+      List<Feature> tileTargets = new ArrayList<>();
+      FeatureCollection candidates = job.getCandidates();
+      if (!tile.reach.isNull()) {
+        // the candidates of the owned targets
+        tileCandidates.addAll(candidates.query(tile.reach));
+        // the targets competing for these candidates
+        Envelope targetEnvelope = new Envelope(tile.reach);
+        for (Feature candidate : tileCandidates) {
+          targetEnvelope.expandToInclude(candidate.getGeometry().getEnvelopeInternal());
+        }
+        tileTargets.addAll(job.getTargets().query(EnvelopeUtil.expand(targetEnvelope, halo)));
+      }
+      if (tile.index == 0) {
+        tileTargets.addAll(emptyTargets);
+      }
+      ConflationJob tileJob = new ConflationJob(
+          new FeatureDataset(tileTargets, job.getTargets().getFeatureSchema()),
+          new FeatureDataset(tileCandidates, candidates.getFeatureSchema()),
+          job::createMatchFinder);
+      SpatialIndexType indexType = job.getSpatialIndexType();
+      tileJob.setSpatialIndexType(indexType != null ? indexType : SpatialIndexType.AUTOMATIC);
+      tileJob.setSpatialIndexNodeCapacity(job.getSpatialIndexNodeCapacity());
+      tileJob.setTargetTimeBudget(job.getTargetTimeBudget());
+      tileJob.setTimeLimit(Math.max(0, timeLimit));
+      tileJob.setMetrics(metrics, matchingStage);
+      return tileJob;
+    }
+
+    private void tileMatched(Tile tile, ConflationResult result) {
+      tile.done = true;
+      deadlineReached |= result.isDeadlineReached();
+      cancelled |= result.isCancelled();
+      for (Feature target : result.getSkippedTargets()) {
+        if (owner(target) == tile.index) {
+          skippedTargets.add(target);
+        }
+      }
+      Map<Feature, Matches> matched = new HashMap<>();
+      for (Map.Entry<Feature, Matches> entry : result.getMatches().entrySet()) {
+        Feature target = entry.getKey();
+        if (owner(target) != tile.index) {
+          // matched in the halo of this tile, kept from the tile owning it
+          continue;
+        }
+        Matches matches = entry.getValue();
+        pairCount += matches.size();
+        List<Tile> contenders = uniqueCandidates && !matches.isEmpty()
+            ? contenders(tile, matches.getTopMatch()) : null;
+        if (contenders == null || contenders.isEmpty()) {
+          matched.put(target, matches);
+        } else {
+          List<SeamEntry> entries = seams.get(matches.getTopMatch());
+          if (entries == null) {
+            entries = new ArrayList<>(2);
+            seams.put(matches.getTopMatch(), entries);
+          }
+          entries.add(new SeamEntry(tile, target, matches, contenders));
+        }
+      }
+      if (!matched.isEmpty()) {
+        listener.matched(matched);
+      }
+      resolveSeams();
+    }
+
+    /**
+     * @return the other tiles whose targets may have the candidate as top match
+     */
+    private List<Tile> contenders(Tile tile, Feature candidate) {
+      Envelope e = candidate.getGeometry().getEnvelopeInternal();
+      List<Tile> contenders = new ArrayList<>(0);
+      if (e.isNull()) {
+        return contenders;
+      }
+      int minColumn = (int) Math.max(0, Math.floor((e.getMinX() - maxMargin - minX) / tileSize));
+      int maxColumn = (int) Math.min(columns - 1, Math.floor((e.getMaxX() + maxMargin - minX) / tileSize));
+      int minRow = (int) Math.max(0, Math.floor((e.getMinY() - maxMargin - minY) / tileSize));
+      int maxRow = (int) Math.min(rows - 1, Math.floor((e.getMaxY() + maxMargin - minY) / tileSize));
+      for (int row = minRow; row <= maxRow; row++) {
+        for (int column = minColumn; column <= maxColumn; column++) {
+          Tile other = tiles.get(row * columns + column);
+          if (other != null && other != tile && other.reach.intersects(e)) {
+            contenders.add(other);
+          }
+        }
+      }
+      return contenders;
+    }
+
+    private void resolveSeams() {
+      Map<Feature, Matches> matched = new HashMap<>();
+      for (Iterator<List<SeamEntry>> i = seams.values().iterator(); i.hasNext();) {
+        List<SeamEntry> entries = i.next();
+        if (!allReady(entries)) {
+          continue;
+        }
+        i.remove();
+        // the tile of the best top score keeps the candidate
+        Tile winner = null;
+        double bestScore = 0;
+        for (SeamEntry entry : entries) {
+          double score = entry.matches.getTopScore();
+          if (winner == null || score > bestScore
+              || (score == bestScore && entry.tile.index < winner.index)) {
+            winner = entry.tile;
+            bestScore = score;
+          }
+        }
+        for (SeamEntry entry : entries) {
+          // the losers are not given their next matches, which may conflict in turn
+          matched.put(entry.target, entry.tile == winner ? entry.matches
+              : new Matches(entry.matches.getFeatureSchema()));
+        }
+      }
+      if (!matched.isEmpty()) {
+        listener.matched(matched);
+      }
+    }
+
+    private boolean allReady(List<SeamEntry> entries) {
+      Set<Tile> checked = new HashSet<>();
+      for (SeamEntry entry : entries) {
+        if (checked.add(entry.tile) && !entry.isReady()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
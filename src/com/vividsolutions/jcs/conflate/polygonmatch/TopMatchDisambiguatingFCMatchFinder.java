@@ -63,8 +63,23 @@ public class TopMatchDisambiguatingFCMatchFinder implements FCMatchFinder {
         this.matchFinder = matchFinder;
     }
 
+    /**
+     * @return the wrapped match finder
+     */
+    public FCMatchFinder getMatchFinder() {
+        return matchFinder;
+    }
+
     @Override
     public Map<Feature, Matches> match(
+        final FeatureCollection targetFC,
+        final FeatureCollection candidateFC,
+        final TaskMonitor monitor) {
+        return MatchingMetrics.measure("Top match disambiguation", targetFC.size(),
+            () -> doMatch(targetFC, candidateFC, monitor));
+    }
+
+    private Map<Feature, Matches> doMatch(
         FeatureCollection targetFC,
         FeatureCollection candidateFC,
         TaskMonitor monitor) {
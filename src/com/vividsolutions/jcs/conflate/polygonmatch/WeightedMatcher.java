@@ -85,14 +85,19 @@ public class WeightedMatcher implements FeatureMatcher {
    */
     @Override
   public Matches match(Feature target, FeatureCollection candidates) {
+    return match(target, candidates, 0);
+  }
+
+    @Override
+  public Matches match(Feature target, FeatureCollection candidates, int maxSize) {
     if (weightTotal() == 0) { return new Matches(candidates.getFeatureSchema()); }
     Map<FeatureMatcher, Matches> matcherToMatchesMap = matcherToMatchesMap(target, candidates);
     Map<Feature, Double> featureToScoreMap = featureToScoreMap(matcherToMatchesMap);
-    return toMatches(featureToScoreMap, candidates.getFeatureSchema());
+    return toMatches(featureToScoreMap, candidates.getFeatureSchema(), maxSize);
   }
 
-  private Matches toMatches(Map<Feature, Double> featureToScoreMap, FeatureSchema schema) {
-    Matches matches = new Matches(schema);
+  private Matches toMatches(Map<Feature, Double> featureToScoreMap, FeatureSchema schema, int maxSize) {
+    Matches matches = new Matches(schema, maxSize);
     for (Feature feature : featureToScoreMap.keySet()) {
       double score = featureToScoreMap.get(feature).doubleValue();
       matches.add(feature, score);
@@ -104,6 +109,7 @@ public class WeightedMatcher implements FeatureMatcher {
     HashMap<FeatureMatcher, Matches> matcherToMatchesMap = new HashMap<>();
     for (FeatureMatcher matcher : matcherToWeightMap.keySet()) {
       if (normalizedWeight(matcher) == 0) { continue; }
+      MatchBudget.checkpoint();
       matcherToMatchesMap.put(matcher, matcher.match(feature, candidates));
     }
     return matcherToMatchesMap;
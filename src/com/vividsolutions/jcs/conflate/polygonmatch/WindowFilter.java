@@ -37,6 +37,7 @@ package com.vividsolutions.jcs.conflate.polygonmatch;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureVisitor;
 import com.vividsolutions.jump.geom.EnvelopeUtil;
 
 /**
@@ -60,6 +61,12 @@ public class WindowFilter implements FeatureMatcher {
   public WindowFilter() {}
 
   private double buffer;
+
+  /**
+   * @return the amount by which the envelope is extended on each side
+   */
+  public double getBuffer() { return buffer; }
+
   /**
    * Quickly filters out shapes that lie outside a given distance from the feature's
    * envelope.
@@ -72,6 +79,14 @@ public class WindowFilter implements FeatureMatcher {
   public Matches match(Feature target, FeatureCollection candidates) {
     Envelope window = new Envelope(target.getGeometry().getEnvelopeInternal());
     window = EnvelopeUtil.expand(window, buffer);
-    return new Matches(candidates.getFeatureSchema(), candidates.query(window));
+    final Matches matches = new Matches(candidates.getFeatureSchema());
+    // window hits go straight into the matches, without an intermediate list
+    candidates.query(window, new FeatureVisitor() {
+      @Override
+      public void visit(Feature feature) {
+        matches.add(feature, 1);
+      }
+    });
+    return matches;
   }
 }
@@ -0,0 +1,123 @@
+package com.vividsolutions.jump.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jump.index.DynamicSpatialIndex;
+
+/**
+ * An indexed FeatureCollection which, unlike {@link IndexedFeatureCollection},
+ * can be modified: features can be added, removed or moved (see
+ * {@link #setGeometry(Feature, Geometry)}) and the index is updated
+ * incrementally.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class DynamicIndexedFeatureCollection extends FeatureCollectionWrapper {
+    private DynamicSpatialIndex spatialIndex;
+    private long modificationCount = 0;
+
+    /**
+     * Creates an index of the features of the given collection. The collection
+     * must not be modified directly afterwards, only through this wrapper.
+     * @param fc the features to index
+     * @param nodeCapacity the node capacity of the underlying STR-tree
+     */
+    public DynamicIndexedFeatureCollection(FeatureCollection fc, int nodeCapacity) {
+        super(fc);
+        spatialIndex = new DynamicSpatialIndex(nodeCapacity);
+        spatialIndex.insertAll(getFeatures(), f -> f.getGeometry().getEnvelopeInternal());
+    }
+
+    /**
+     * Returns a number incremented at each modification of this collection, so
+     * that results derived from it can tell whether they are outdated.
+     * @return the number of modifications made to this collection
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    @Override
+    public List<Feature> query(Envelope env) {
+        final List<Feature> result = new ArrayList<>();
+        query(env, new FeatureVisitor() {
+            @Override
+            public void visit(Feature feature) {
+                result.add(feature);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(final Envelope env, final FeatureVisitor visitor) {
+        // the index visits *potential* overlaps, only actual ones are passed on
+        spatialIndex.query(env, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                Feature f = (Feature) item;
+                if (env.intersects(f.getGeometry().getEnvelopeInternal())) {
+                    visitor.visit(f);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void add(Feature feature) {
+        super.add(feature);
+        spatialIndex.insert(feature.getGeometry().getEnvelopeInternal(), feature);
+        modificationCount++;
+    }
+
+    @Override
+    public void addAll(Collection<? extends Feature> features) {
+        super.addAll(features);
+        spatialIndex.insertAll(features, f -> f.getGeometry().getEnvelopeInternal());
+        modificationCount++;
+    }
+
+    @Override
+    public void remove(Feature feature) {
+        super.remove(feature);
+        spatialIndex.remove(feature.getGeometry().getEnvelopeInternal(), feature);
+        modificationCount++;
+    }
+
+    @Override
+    public void removeAll(Collection<Feature> features) {
+        super.removeAll(features);
+        for (Feature f : features) {
+            spatialIndex.remove(f.getGeometry().getEnvelopeInternal(), f);
+        }
+        modificationCount++;
+    }
+
+    @Override
+    public Collection<Feature> remove(Envelope env) {
+        Collection<Feature> removed = query(env);
+        removeAll(removed);
+        return removed;
+    }
+
+    /**
+     * Changes the geometry of a feature of this collection and updates the index.
+     * @param feature a feature of this collection
+     * @param geometry the new geometry of the feature
+     */
+    public void setGeometry(Feature feature, Geometry geometry) {
+        spatialIndex.remove(feature.getGeometry().getEnvelopeInternal(), feature);
+        feature.setGeometry(geometry);
+        spatialIndex.insert(geometry.getEnvelopeInternal(), feature);
+        modificationCount++;
+        FeatureCollection wrappee = getUltimateWrappee();
+        if (wrappee instanceof FeatureDataset) {
+            ((FeatureDataset) wrappee).invalidateEnvelope();
+        }
+    }
+}
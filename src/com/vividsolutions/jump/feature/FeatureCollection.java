@@ -86,6 +86,19 @@ public interface FeatureCollection extends Iterable<Feature> {
      */
     List<Feature> query(Envelope envelope);
 
+    /**
+     * A quick search for features, using an envelope comparison. Unlike
+     * {@link #query(Envelope)}, the features found are handed to the visitor
+     * as they are found, without building a list.
+     * @param envelope the envelope to query against
+     * @param visitor receives the features whose envelopes intersect the given envelope
+     */
+    default void query(Envelope envelope, FeatureVisitor visitor) {
+        for (Feature feature : query(envelope)) {
+            visitor.visit(feature);
+        }
+    }
+
     /**
      * Adds a feature to this collection.
      * @param feature a Feature to add to the end of this collection
@@ -116,6 +116,11 @@ public abstract class FeatureCollectionWrapper implements FeatureCollection {
         return fc.query(envelope);
     }
 
+    @Override
+    public void query(Envelope envelope, FeatureVisitor visitor) {
+        fc.query(envelope, visitor);
+    }
+
     @Override
 	public void add(Feature feature) {
         fc.add(feature);
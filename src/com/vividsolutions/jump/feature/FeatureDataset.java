@@ -130,6 +130,18 @@ public class FeatureDataset implements FeatureCollection {
         return queryResult;
     }
 
+    @Override
+    public void query(Envelope envelope, FeatureVisitor visitor) {
+        if (!envelope.intersects(getEnvelope())) {
+            return;
+        }
+        for (Feature feature : features) {
+            if (feature.getGeometry().getEnvelopeInternal().intersects(envelope)) {
+                visitor.visit(feature);
+            }
+        }
+    }
+
     @Override
 	public void add(Feature feature) {
         features.add(feature);
@@ -0,0 +1,485 @@
+package com.vividsolutions.jump.feature;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryCollection;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiLineString;
+import com.vividsolutions.jts.geom.MultiPoint;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jump.geom.HilbertOrder;
+
+/**
+ * Writes features to a file read by {@link MappedFeatureCollection}, for
+ * datasets too large to be kept in memory.
+ * <P>
+ * The features are sorted along a Hilbert curve of their envelope centers, so
+ * that neighbouring features are stored together, and indexed by a packed
+ * Hilbert R-tree stored in the file. All numbers are big-endian.
+ * <pre>
+ * header  := "JCSF" version:int featureCount:int nodeSize:int attributeCount:int
+ *            minX minY maxX maxY:double (type:byte nameLength:short name:UTF-8)*
+ *            indexOffset:long offsetsOffset:long
+ * index   := (minX minY maxX maxY:double)* (child:int)*   one box and one child per node,
+ *            the leaves first (in feature order), the root last
+ * offsets := (recordOffset:long)*                          one per feature
+ * record  := attribute* geometry
+ * </pre>
+ * The attributes of type INTEGER and DOUBLE are written as a presence byte and
+ * the value, all the others as strings (length:int, -1 for null, and UTF-8
+ * bytes). The geometries are written as a type byte followed by packed
+ * coordinate sequences (count:int and x, y doubles), see {@link #writeGeometry}.
+ * No record crosses a multiple of {@link #SEGMENT_SIZE}, so that the file can
+ * be mapped in segments of that size.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class FeatureStore {
+
+    static final byte[] MAGIC = "JCSF".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+
+    /** Default number of children of the nodes of the R-tree. */
+    public static final int DEFAULT_NODE_SIZE = 16;
+
+    static final int SEGMENT_SHIFT = 30;
+    /** Size of the segments in which the files are mapped. */
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    static final int NODE_BYTES = 32;
+
+    static final byte TYPE_STRING = 0;
+    static final byte TYPE_INTEGER = 1;
+    static final byte TYPE_DOUBLE = 2;
+
+    static final byte POINT = 1;
+    static final byte LINESTRING = 2;
+    static final byte LINEARRING = 3;
+    static final byte POLYGON = 4;
+    static final byte MULTIPOINT = 5;
+    static final byte MULTILINESTRING = 6;
+    static final byte MULTIPOLYGON = 7;
+    static final byte GEOMETRYCOLLECTION = 8;
+
+    private FeatureStore() {
+    }
+
+    /**
+     * Writes features with the default node size.
+     * @see #write(File, FeatureSchema, Iterable, int)
+     */
+    public static void write(File file, FeatureSchema schema, Iterable<Feature> features) throws IOException {
+        write(file, schema, features, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Writes features to a file. The features are read once and written to a
+     * temporary file next to the destination, only their envelopes are kept
+     * in memory (about 80 bytes per feature while the index is built).
+     * @param file the file to write
+     * @param schema the schema of the features
+     * @param features the features, all with the given schema
+     * @param nodeSize the number of children of the nodes of the index
+     * @throws IOException if a file cannot be written
+     */
+    public static void write(File file, FeatureSchema schema, Iterable<Feature> features, int nodeSize)
+            throws IOException {
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("The node size must be at least 2: " + nodeSize);
+        }
+        File temp = File.createTempFile("features", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            Records records = writeRecords(temp, schema, features);
+            writeStore(file, schema, records, temp, nodeSize);
+        } finally {
+            if (!temp.delete()) {
+                temp.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * The offsets and the envelopes of the records written to the temporary file.
+     */
+    private static final class Records {
+        int count;
+        long[] offsets = new long[1024];
+        double[] envelopes = new double[4 * 1024];
+        final Envelope extent = new Envelope();
+
+        void add(long offset, Envelope env) {
+            if (count + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                envelopes = Arrays.copyOf(envelopes, envelopes.length * 2);
+            }
+            offsets[count] = offset;
+            envelopes[4 * count] = env.getMinX();
+            envelopes[4 * count + 1] = env.getMinY();
+            envelopes[4 * count + 2] = env.getMaxX();
+            envelopes[4 * count + 3] = env.getMaxY();
+            extent.expandToInclude(env);
+            count++;
+        }
+
+        long length(int i) {
+            return offsets[i + 1] - offsets[i];
+        }
+    }
+
+    private static Records writeRecords(File temp, FeatureSchema schema, Iterable<Feature> features)
+            throws IOException {
+        Records records = new Records();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(buffer);
+        long offset = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 16)) {
+            for (Feature f : features) {
+                if (records.count == Integer.MAX_VALUE - 1) {
+                    throw new IOException("Too many features");
+                }
+                buffer.reset();
+                writeAttributes(record, schema, f);
+                Geometry g = f.getGeometry();
+                writeGeometry(record, g);
+                record.flush();
+                if (buffer.size() > SEGMENT_SIZE) {
+                    throw new IOException("Feature too large: " + buffer.size() + " bytes");
+                }
+                records.add(offset, g.getEnvelopeInternal());
+                buffer.writeTo(out);
+                offset += buffer.size();
+            }
+        }
+        records.offsets[records.count] = offset;
+        return records;
+    }
+
+    private static void writeAttributes(DataOutputStream out, FeatureSchema schema, Feature f) throws IOException {
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            AttributeType type = schema.getAttributeType(i);
+            if (type == AttributeType.GEOMETRY) {
+                continue;
+            }
+            Object value = f.getAttribute(i);
+            if (type == AttributeType.INTEGER) {
+                out.writeBoolean(value != null);
+                out.writeInt(value == null ? 0 : ((Number) value).intValue());
+            } else if (type == AttributeType.DOUBLE) {
+                out.writeBoolean(value != null);
+                out.writeDouble(value == null ? 0 : ((Number) value).doubleValue());
+            } else if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Writes a geometry: its type, then
+     * <UL>
+     *   <LI>for points, line strings and rings, their coordinate sequence;
+     *   <LI>for polygons, the number of rings and their sequences, the shell first;
+     *   <LI>for collections, the number of members and the members.
+     * </UL>
+     */
+    private static void writeGeometry(DataOutputStream out, Geometry g) throws IOException {
+        if (g instanceof Point) {
+            out.writeByte(POINT);
+            writeSequence(out, ((Point) g).getCoordinateSequence());
+        } else if (g instanceof LinearRing) {
+            out.writeByte(LINEARRING);
+            writeSequence(out, ((LinearRing) g).getCoordinateSequence());
+        } else if (g instanceof LineString) {
+            out.writeByte(LINESTRING);
+            writeSequence(out, ((LineString) g).getCoordinateSequence());
+        } else if (g instanceof Polygon) {
+            Polygon p = (Polygon) g;
+            out.writeByte(POLYGON);
+            out.writeInt(p.getNumInteriorRing() + 1);
+            writeSequence(out, p.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < p.getNumInteriorRing(); i++) {
+                writeSequence(out, p.getInteriorRingN(i).getCoordinateSequence());
+            }
+        } else if (g instanceof GeometryCollection) {
+            out.writeByte(g instanceof MultiPoint ? MULTIPOINT
+                    : g instanceof MultiLineString ? MULTILINESTRING
+                    : g instanceof MultiPolygon ? MULTIPOLYGON
+                    : GEOMETRYCOLLECTION);
+            out.writeInt(g.getNumGeometries());
+            for (int i = 0; i < g.getNumGeometries(); i++) {
+                writeGeometry(out, g.getGeometryN(i));
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported geometry: " + g.getGeometryType());
+        }
+    }
+
+    private static void writeSequence(DataOutputStream out, CoordinateSequence seq) throws IOException {
+        out.writeInt(seq.size());
+        for (int i = 0; i < seq.size(); i++) {
+            out.writeDouble(seq.getX(i));
+            out.writeDouble(seq.getY(i));
+        }
+    }
+
+    private static void writeStore(File file, FeatureSchema schema, Records records, File temp, int nodeSize)
+            throws IOException {
+        int n = records.count;
+        int[] order = hilbertOrder(records);
+        int[] levelBounds = levelBounds(n, nodeSize);
+        int numNodes = n == 0 ? 0 : levelBounds[levelBounds.length - 1];
+        double[] boxes = new double[4 * numNodes];
+        int[] children = new int[numNodes];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(records.envelopes, 4 * order[i], boxes, 4 * i, 4);
+            children[i] = i;
+        }
+        records.envelopes = null;
+        buildTree(boxes, children, levelBounds, nodeSize);
+
+        byte[] header = header(schema, records.extent, n, nodeSize);
+        long indexOffset = align(header.length + 16, NODE_BYTES);
+        long offsetsOffset = align(indexOffset + (long) numNodes * (NODE_BYTES + 4), 8);
+        long[] recordOffsets = new long[n];
+        long position = offsetsOffset + 8L * n;
+        for (int i = 0; i < n; i++) {
+            long length = records.length(order[i]);
+            if (length > 0 && (position >>> SEGMENT_SHIFT) != ((position + length - 1) >>> SEGMENT_SHIFT)) {
+                position = align(position, SEGMENT_SIZE);
+            }
+            recordOffsets[i] = position;
+            position += length;
+        }
+
+        try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+             FileChannel input = new RandomAccessFile(temp, "r").getChannel()) {
+            channel.truncate(0);
+            ChannelOutput out = new ChannelOutput(channel);
+            out.put(header);
+            out.putLong(indexOffset);
+            out.putLong(offsetsOffset);
+            out.padTo(indexOffset);
+            for (double d : boxes) {
+                out.putDouble(d);
+            }
+            for (int c : children) {
+                out.putInt(c);
+            }
+            out.padTo(offsetsOffset);
+            for (long offset : recordOffsets) {
+                out.putLong(offset);
+            }
+            ByteBuffer record = ByteBuffer.allocate(1 << 16);
+            for (int i = 0; i < n; i++) {
+                int length = (int) records.length(order[i]);
+                if (record.capacity() < length) {
+                    record = ByteBuffer.allocate(Math.max(length, 2 * record.capacity()));
+                }
+                record.clear().limit(length);
+                long from = records.offsets[order[i]];
+                while (record.hasRemaining()) {
+                    if (input.read(record, from + record.position()) < 0) {
+                        throw new IOException("Unexpected end of " + temp);
+                    }
+                }
+                out.padTo(recordOffsets[i]);
+                out.put(record.array(), 0, length);
+            }
+            out.flush();
+        }
+    }
+
+    private static byte[] header(FeatureSchema schema, Envelope extent, int count, int nodeSize)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+        out.writeInt(nodeSize);
+        out.writeInt(schema.getAttributeCount() - (schema.getGeometryIndex() >= 0 ? 1 : 0));
+        out.writeDouble(extent.isNull() ? 0 : extent.getMinX());
+        out.writeDouble(extent.isNull() ? 0 : extent.getMinY());
+        out.writeDouble(extent.isNull() ? -1 : extent.getMaxX());
+        out.writeDouble(extent.isNull() ? -1 : extent.getMaxY());
+        for (int i = 0; i < schema.getAttributeCount(); i++) {
+            AttributeType type = schema.getAttributeType(i);
+            if (type == AttributeType.GEOMETRY) {
+                continue;
+            }
+            out.writeByte(type == AttributeType.INTEGER ? TYPE_INTEGER
+                    : type == AttributeType.DOUBLE ? TYPE_DOUBLE : TYPE_STRING);
+            byte[] name = schema.getAttributeName(i).getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+        }
+        out.flush();
+        // the index and offsets positions are written after the header
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return the positions of the features sorted by the Hilbert value of their envelope center
+     */
+    private static int[] hilbertOrder(Records records) {
+        int n = records.count;
+        double[] e = records.envelopes;
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long h = HilbertOrder.index((e[4 * i] + e[4 * i + 2]) / 2, (e[4 * i + 1] + e[4 * i + 3]) / 2,
+                    records.extent);
+            // 32 bits of Hilbert value, 31 bits of position
+            keys[i] = h << 31 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (keys[i] & 0x7fffffff);
+        }
+        return order;
+    }
+
+    /**
+     * Computes the cumulated node counts of the levels of a packed tree.
+     * @return the position after the last node of each level, the leaves first
+     */
+    static int[] levelBounds(int count, int nodeSize) {
+        int[] bounds = new int[1];
+        int n = count;
+        int numNodes = count;
+        bounds[0] = numNodes;
+        if (count == 0) {
+            return bounds;
+        }
+        do {
+            n = (n + nodeSize - 1) / nodeSize;
+            numNodes += n;
+            bounds = Arrays.copyOf(bounds, bounds.length + 1);
+            bounds[bounds.length - 1] = numNodes;
+        } while (n != 1);
+        return bounds;
+    }
+
+    /**
+     * Computes the boxes of the inner nodes from the leaves, each node
+     * pointing to the position of its first child.
+     */
+    private static void buildTree(double[] boxes, int[] children, int[] levelBounds, int nodeSize) {
+        int pos = 0;
+        int node = levelBounds[0];
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level];
+            while (pos < end) {
+                int first = pos;
+                double minX = Double.POSITIVE_INFINITY;
+                double minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY;
+                double maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < nodeSize && pos < end; i++, pos++) {
+                    minX = Math.min(minX, boxes[4 * pos]);
+                    minY = Math.min(minY, boxes[4 * pos + 1]);
+                    maxX = Math.max(maxX, boxes[4 * pos + 2]);
+                    maxY = Math.max(maxY, boxes[4 * pos + 3]);
+                }
+                boxes[4 * node] = minX;
+                boxes[4 * node + 1] = minY;
+                boxes[4 * node + 2] = maxX;
+                boxes[4 * node + 3] = maxY;
+                children[node] = first;
+                node++;
+            }
+        }
+    }
+
+    private static long align(long position, long alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Buffered writes to a file channel, keeping track of the position.
+     */
+    private static final class ChannelOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private long position;
+
+        ChannelOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buffer.putInt(v);
+            position += 4;
+        }
+
+        void putLong(long v) throws IOException {
+            ensure(8);
+            buffer.putLong(v);
+            position += 8;
+        }
+
+        void putDouble(double v) throws IOException {
+            ensure(8);
+            buffer.putDouble(v);
+            position += 8;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            put(bytes, 0, bytes.length);
+        }
+
+        void put(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                ensure(1);
+                int n = Math.min(length, buffer.remaining());
+                buffer.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+                position += n;
+            }
+        }
+
+        void padTo(long target) throws IOException {
+            while (position < target) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
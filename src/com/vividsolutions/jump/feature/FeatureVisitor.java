@@ -0,0 +1,16 @@
+package com.vividsolutions.jump.feature;
+
+/**
+ * Receives the features found by {@link FeatureCollection#query(com.vividsolutions.jts.geom.Envelope, FeatureVisitor)},
+ * one at a time, so that no intermediate list has to be built.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public interface FeatureVisitor {
+
+    /**
+     * Called for each feature found.
+     * @param feature a feature whose envelope intersects the query envelope
+     */
+    void visit(Feature feature);
+}
@@ -36,6 +36,7 @@ import java.util.Collection;
 import java.util.List;
 
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.ItemVisitor;
 import com.vividsolutions.jts.index.SpatialIndex;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
@@ -71,22 +72,31 @@ public class IndexedFeatureCollection extends FeatureCollectionWrapper {
 
     @Override
 	public List<Feature> query(Envelope env) {
-        // index query returns list of *potential* overlaps (e.g. it is a primary filter)
-        @SuppressWarnings("unchecked")
-		List<Feature> candidate = spatialIndex.query(env);
-
-        // filter out only Features where envelope actually intersects
-        List<Feature> result = new ArrayList<>();
-
-        for (Feature f : candidate) {
-            if (env.intersects(f.getGeometry().getEnvelopeInternal())) {
-                result.add(f);
+        final List<Feature> result = new ArrayList<>();
+        query(env, new FeatureVisitor() {
+            @Override
+            public void visit(Feature feature) {
+                result.add(feature);
             }
-        }
-
+        });
         return result;
     }
 
+    @Override
+    public void query(final Envelope env, final FeatureVisitor visitor) {
+        // index query visits *potential* overlaps (e.g. it is a primary filter),
+        // only Features where envelope actually intersects are passed on
+        spatialIndex.query(env, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                Feature f = (Feature) item;
+                if (env.intersects(f.getGeometry().getEnvelopeInternal())) {
+                    visitor.visit(f);
+                }
+            }
+        });
+    }
+
     private void createIndex() {
         for (Feature f : this) {
             spatialIndex.insert(f.getGeometry().getEnvelopeInternal(), f);
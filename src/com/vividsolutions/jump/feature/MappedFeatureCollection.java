@@ -0,0 +1,426 @@
+package com.vividsolutions.jump.feature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * A read-only FeatureCollection reading the features of a file written by
+ * {@link FeatureStore} through memory-mapped buffers, so that it can be used as
+ * the candidates of a match finder without loading the dataset in the heap.
+ * <P>
+ * Queries walk the packed R-tree of the file, and only the features found are
+ * read. A feature stays the same object as long as it is referenced (e.g. by
+ * matches), but once it is garbage collected, reading it again gives a new
+ * object: use the envelope or the attributes of the features, not their
+ * {@link Feature#getID()}, to identify them across queries.
+ * <P>
+ * Match finders transforming the whole candidate collection before matching
+ * (e.g. filtering by area or unioning candidates) read every feature, and
+ * should be applied to the targets only.
+ * <P>
+ * The collection is safe for concurrent queries.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class MappedFeatureCollection implements FeatureCollection {
+
+    private final File file;
+    private final ByteBuffer[] segments;
+    private final FeatureSchema schema;
+    /** The attribute types, in the order of the schema, -1 for the geometry. */
+    private final byte[] attributeTypes;
+    private final int size;
+    private final int nodeSize;
+    private final int[] levelBounds;
+    private final int numNodes;
+    private final Envelope envelope;
+    private final long boxesOffset;
+    private final long childrenOffset;
+    private final long offsetsOffset;
+    private final GeometryFactory factory = new GeometryFactory();
+
+    private final Map<Integer, FeatureReference> cache = new HashMap<>();
+    private final ReferenceQueue<Feature> collected = new ReferenceQueue<>();
+
+    /**
+     * Maps a feature file.
+     * @param file a file written by {@link FeatureStore}
+     * @throws IOException if the file cannot be read or is not a feature file
+     */
+    public MappedFeatureCollection(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long length = channel.size();
+            int count = (int) ((length + FeatureStore.SEGMENT_SIZE - 1) >>> FeatureStore.SEGMENT_SHIFT);
+            segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << FeatureStore.SEGMENT_SHIFT;
+                // the mappings stay valid after the channel is closed
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(FeatureStore.SEGMENT_SIZE, length - start));
+                segments[i] = segment;
+            }
+        }
+        if (segments.length == 0) {
+            throw new IOException("Not a feature file: " + file);
+        }
+        ByteBuffer header = segments[0].duplicate();
+        try {
+            for (byte b : FeatureStore.MAGIC) {
+                if (header.get() != b) {
+                    throw new IOException("Not a feature file: " + file);
+                }
+            }
+            int version = header.getInt();
+            if (version != FeatureStore.VERSION) {
+                throw new IOException("Unsupported version of feature file: " + version);
+            }
+            size = header.getInt();
+            nodeSize = header.getInt();
+            int attributeCount = header.getInt();
+            double minX = header.getDouble();
+            double minY = header.getDouble();
+            double maxX = header.getDouble();
+            double maxY = header.getDouble();
+            envelope = minX > maxX ? new Envelope() : new Envelope(minX, maxX, minY, maxY);
+            schema = new FeatureSchema();
+            schema.addAttribute("GEOMETRY", AttributeType.GEOMETRY);
+            attributeTypes = new byte[attributeCount + 1];
+            attributeTypes[0] = -1;
+            for (int i = 1; i <= attributeCount; i++) {
+                byte type = header.get();
+                byte[] name = new byte[header.getShort() & 0xffff];
+                header.get(name);
+                attributeTypes[i] = type;
+                schema.addAttribute(new String(name, StandardCharsets.UTF_8),
+                        type == FeatureStore.TYPE_INTEGER ? AttributeType.INTEGER
+                        : type == FeatureStore.TYPE_DOUBLE ? AttributeType.DOUBLE : AttributeType.STRING);
+            }
+            boxesOffset = header.getLong();
+            offsetsOffset = header.getLong();
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid feature file: " + file, e);
+        }
+        if (nodeSize < 2 || size < 0) {
+            throw new IOException("Invalid feature file: " + file);
+        }
+        levelBounds = FeatureStore.levelBounds(size, nodeSize);
+        numNodes = size == 0 ? 0 : levelBounds[levelBounds.length - 1];
+        childrenOffset = boxesOffset + (long) numNodes * FeatureStore.NODE_BYTES;
+    }
+
+    /**
+     * @return the mapped file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public FeatureSchema getFeatureSchema() {
+        return schema;
+    }
+
+    @Override
+    public Envelope getEnvelope() {
+        return new Envelope(envelope);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a read-only view of the features, read as they are accessed
+     */
+    @Override
+    public List<Feature> getFeatures() {
+        return new AbstractList<Feature>() {
+            @Override
+            public Feature get(int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+                }
+                return getFeature(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Feature> iterator() {
+        return getFeatures().iterator();
+    }
+
+    @Override
+    public List<Feature> query(Envelope env) {
+        final List<Feature> result = new ArrayList<>();
+        query(env, new FeatureVisitor() {
+            @Override
+            public void visit(Feature feature) {
+                result.add(feature);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(Envelope env, FeatureVisitor visitor) {
+        if (numNodes == 0 || env.isNull()) {
+            return;
+        }
+        int[] stack = new int[16];
+        int stackSize = 0;
+        int nodeIndex = numNodes - 1;
+        while (true) {
+            // the children of a node follow each other, up to the end of their level
+            int end = Math.min(nodeIndex + nodeSize, upperBound(nodeIndex));
+            for (int pos = nodeIndex; pos < end; pos++) {
+                long box = boxesOffset + (long) pos * FeatureStore.NODE_BYTES;
+                if (getDouble(box) > env.getMaxX() || getDouble(box + 8) > env.getMaxY()
+                        || getDouble(box + 16) < env.getMinX() || getDouble(box + 24) < env.getMinY()) {
+                    continue;
+                }
+                int child = getInt(childrenOffset + 4L * pos);
+                if (nodeIndex < size) {
+                    visitor.visit(getFeature(child));
+                } else {
+                    if (stackSize == stack.length) {
+                        stack = Arrays.copyOf(stack, stackSize * 2);
+                    }
+                    stack[stackSize++] = child;
+                }
+            }
+            if (stackSize == 0) {
+                return;
+            }
+            nodeIndex = stack[--stackSize];
+        }
+    }
+
+    private int upperBound(int nodeIndex) {
+        for (int bound : levelBounds) {
+            if (bound > nodeIndex) {
+                return bound;
+            }
+        }
+        return numNodes;
+    }
+
+    /**
+     * Returns a feature, reading it if it is not referenced any more.
+     * @param index the position of the feature in the file
+     * @return the feature
+     */
+    public Feature getFeature(int index) {
+        Integer key = index;
+        synchronized (cache) {
+            purge();
+            FeatureReference ref = cache.get(key);
+            Feature f = ref == null ? null : ref.get();
+            if (f != null) {
+                return f;
+            }
+        }
+        Feature read = read(index);
+        synchronized (cache) {
+            // another thread may have read it meanwhile
+            FeatureReference ref = cache.get(key);
+            Feature f = ref == null ? null : ref.get();
+            if (f != null) {
+                return f;
+            }
+            cache.put(key, new FeatureReference(read, index, collected));
+            return read;
+        }
+    }
+
+    private void purge() {
+        FeatureReference ref;
+        while ((ref = (FeatureReference) collected.poll()) != null) {
+            if (cache.get(ref.index) == ref) {
+                cache.remove(ref.index);
+            }
+        }
+    }
+
+    private Feature read(int index) {
+        long offset = getLong(offsetsOffset + 8L * index);
+        ByteBuffer record = segments[(int) (offset >>> FeatureStore.SEGMENT_SHIFT)].duplicate();
+        record.position((int) (offset & (FeatureStore.SEGMENT_SIZE - 1)));
+        BasicFeature f = new BasicFeature(schema);
+        for (int i = 1; i < attributeTypes.length; i++) {
+            switch (attributeTypes[i]) {
+            case FeatureStore.TYPE_INTEGER: {
+                boolean present = record.get() != 0;
+                int value = record.getInt();
+                f.setAttribute(i, present ? Integer.valueOf(value) : null);
+                break;
+            }
+            case FeatureStore.TYPE_DOUBLE: {
+                boolean present = record.get() != 0;
+                double value = record.getDouble();
+                f.setAttribute(i, present ? Double.valueOf(value) : null);
+                break;
+            }
+            default: {
+                int length = record.getInt();
+                if (length < 0) {
+                    f.setAttribute(i, null);
+                } else {
+                    byte[] bytes = new byte[length];
+                    record.get(bytes);
+                    f.setAttribute(i, new String(bytes, StandardCharsets.UTF_8));
+                }
+            }
+            }
+        }
+        f.setAttribute(0, readGeometry(record));
+        return f;
+    }
+
+    private Geometry readGeometry(ByteBuffer in) {
+        byte type = in.get();
+        switch (type) {
+        case FeatureStore.POINT:
+            return factory.createPoint(readSequence(in));
+        case FeatureStore.LINESTRING:
+            return factory.createLineString(readSequence(in));
+        case FeatureStore.LINEARRING:
+            return factory.createLinearRing(readSequence(in));
+        case FeatureStore.POLYGON: {
+            int rings = in.getInt();
+            LinearRing shell = factory.createLinearRing(readSequence(in));
+            LinearRing[] holes = new LinearRing[rings - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = factory.createLinearRing(readSequence(in));
+            }
+            return factory.createPolygon(shell, holes);
+        }
+        default:
+            break;
+        }
+        Geometry[] members = new Geometry[in.getInt()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = readGeometry(in);
+        }
+        switch (type) {
+        case FeatureStore.MULTIPOINT:
+            return factory.createMultiPoint(copy(members, new Point[members.length]));
+        case FeatureStore.MULTILINESTRING:
+            return factory.createMultiLineString(copy(members, new LineString[members.length]));
+        case FeatureStore.MULTIPOLYGON:
+            return factory.createMultiPolygon(copy(members, new Polygon[members.length]));
+        case FeatureStore.GEOMETRYCOLLECTION:
+            return factory.createGeometryCollection(members);
+        default:
+            throw new IllegalStateException("Invalid geometry type " + type + " in " + file);
+        }
+    }
+
+    private static <T> T[] copy(Geometry[] members, T[] array) {
+        System.arraycopy(members, 0, array, 0, members.length);
+        return array;
+    }
+
+    private static CoordinateSequence readSequence(ByteBuffer in) {
+        double[] coords = new double[2 * in.getInt()];
+        in.asDoubleBuffer().get(coords);
+        in.position(in.position() + 8 * coords.length);
+        return new PackedCoordinateSequence.Double(coords, 2);
+    }
+
+    private ByteBuffer segment(long position) {
+        return segments[(int) (position >>> FeatureStore.SEGMENT_SHIFT)];
+    }
+
+    private double getDouble(long position) {
+        return segment(position).getDouble((int) (position & (FeatureStore.SEGMENT_SIZE - 1)));
+    }
+
+    private int getInt(long position) {
+        return segment(position).getInt((int) (position & (FeatureStore.SEGMENT_SIZE - 1)));
+    }
+
+    private long getLong(long position) {
+        return segment(position).getLong((int) (position & (FeatureStore.SEGMENT_SIZE - 1)));
+    }
+
+    @Override
+    public void add(Feature feature) {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    @Override
+    public void addAll(Collection<? extends Feature> features) {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    @Override
+    public void removeAll(Collection<Feature> features) {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    @Override
+    public void remove(Feature feature) {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    @Override
+    public Collection<Feature> remove(Envelope env) {
+        throw new UnsupportedOperationException("Mapped feature files cannot be modified");
+    }
+
+    /**
+     * Keeps a feature while it is referenced elsewhere.
+     */
+    private static final class FeatureReference extends WeakReference<Feature> {
+        final Integer index;
+
+        FeatureReference(Feature feature, int index, ReferenceQueue<Feature> queue) {
+            super(feature, queue);
+            this.index = index;
+        }
+    }
+}
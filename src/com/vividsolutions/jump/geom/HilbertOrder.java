@@ -0,0 +1,93 @@
+package com.vividsolutions.jump.geom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * Orders features along a Hilbert curve of their envelope centres, so that
+ * features close in the list are close in space. Processing features in this
+ * order makes consecutive spatial queries hit the same index nodes and
+ * candidate features.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public final class HilbertOrder {
+
+    /** Number of bits per axis: the extent is divided in a 2^16 x 2^16 grid. */
+    private static final int ORDER = 16;
+    private static final int SIDE = 1 << ORDER;
+
+    private HilbertOrder() {}
+
+    /**
+     * Returns the position along the Hilbert curve of a point of the given extent.
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param extent the extent covered by the curve
+     * @return the distance along the curve, between 0 and 2^32 - 1
+     */
+    public static long index(double x, double y, Envelope extent) {
+        return index(toGrid(x, extent.getMinX(), extent.getWidth()),
+                toGrid(y, extent.getMinY(), extent.getHeight()));
+    }
+
+    private static int toGrid(double value, double min, double size) {
+        if (!(size > 0)) {
+            return 0;
+        }
+        int i = (int) ((value - min) / size * (SIDE - 1));
+        return Math.max(0, Math.min(SIDE - 1, i));
+    }
+
+    private static long index(int x, int y) {
+        long d = 0;
+        for (int s = SIDE / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant so that the lower level curve is oriented properly
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = SIDE - 1 - x;
+                    y = SIDE - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Returns the features sorted along a Hilbert curve of their envelope centres.
+     * @param features the features to sort
+     * @return a new list of the features, in curve order
+     */
+    public static List<Feature> sort(Collection<Feature> features) {
+        Envelope extent = new Envelope();
+        for (Feature f : features) {
+            extent.expandToInclude(f.getGeometry().getEnvelopeInternal());
+        }
+        // sort the curve positions together with the feature positions packed in a long
+        Feature[] array = features.toArray(new Feature[features.size()]);
+        long[] keys = new long[array.length];
+        for (int i = 0; i < array.length; i++) {
+            Envelope env = array[i].getGeometry().getEnvelopeInternal();
+            long h = env.isNull() ? 0 : index(
+                    (env.getMinX() + env.getMaxX()) / 2, (env.getMinY() + env.getMaxY()) / 2, extent);
+            keys[i] = (h << 31) | i;
+        }
+        Arrays.sort(keys);
+        List<Feature> sorted = new ArrayList<>(array.length);
+        for (long key : keys) {
+            sorted.add(array[(int) (key & Integer.MAX_VALUE)]);
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,174 @@
+package com.vividsolutions.jump.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.SpatialIndex;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * A spatial index supporting insertions and removals at any time, with query
+ * performance close to a packed STR-tree.
+ * <P>
+ * Most items live in a packed (static) STR-tree. Items inserted after the
+ * tree was built go to a small quadtree, and removed items of the STR-tree are
+ * only marked as removed. When these pending changes exceed a fraction of the
+ * index size, the STR-tree is rebuilt from scratch with all live items. Inserts
+ * and removals therefore cost O(log n) (amortized), and queries only pay for
+ * the few pending changes.
+ * <P>
+ * The envelope of each item is remembered, so an item can be removed even
+ * after its geometry changed.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class DynamicSpatialIndex implements SpatialIndex {
+
+    /** Pending changes tolerated before rebuilding, as a fraction of the number of items. */
+    private static final double REBUILD_FRACTION = 0.1;
+    /** Pending changes always tolerated, so that small indexes are not rebuilt constantly. */
+    private static final int MIN_PENDING_CHANGES = 64;
+
+    private final int nodeCapacity;
+    /** all live items with their envelope */
+    private final Map<Object, Envelope> envelopes = new IdentityHashMap<>();
+    private STRtree packedTree;
+    /** items of packedTree that were removed since it was built */
+    private final Set<Object> removedFromPacked = Collections.newSetFromMap(new IdentityHashMap<>());
+    /** items inserted since packedTree was built */
+    private Quadtree inserted = new Quadtree();
+    private final Set<Object> insertedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Creates an empty index.
+     * @param nodeCapacity the node capacity of the packed STR-tree
+     */
+    public DynamicSpatialIndex(int nodeCapacity) {
+        this.nodeCapacity = nodeCapacity;
+        packedTree = new STRtree(nodeCapacity);
+    }
+
+    public int size() {
+        return envelopes.size();
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item) {
+        if (envelopes.containsKey(item)) {
+            remove(envelopes.get(item), item);
+        }
+        // an item re-inserted after its removal stays marked as removed in the
+        // packed tree, where it may be indexed with an outdated envelope
+        envelopes.put(item, itemEnv);
+        inserted.insert(itemEnv, item);
+        insertedItems.add(item);
+        rebuildIfNeeded();
+    }
+
+    /**
+     * Inserts many items at once. When they are too many to be kept as pending
+     * changes, the packed tree is rebuilt once with all the items, instead of
+     * being rebuilt repeatedly while they are inserted one by one.
+     * @param items the items to insert
+     * @param envelopeOf gives the envelope of an item
+     */
+    public <T> void insertAll(Collection<T> items, Function<? super T, Envelope> envelopeOf) {
+        if (pendingChanges() + items.size() <= maxPendingChanges()) {
+            for (T item : items) {
+                insert(envelopeOf.apply(item), item);
+            }
+            return;
+        }
+        // the rebuild indexes every item with its current envelope, whatever was pending
+        for (T item : items) {
+            envelopes.put(item, envelopeOf.apply(item));
+        }
+        rebuild();
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item) {
+        Envelope env = envelopes.remove(item);
+        if (env == null) {
+            return false;
+        }
+        if (insertedItems.remove(item)) {
+            inserted.remove(env, item);
+        } else {
+            removedFromPacked.add(item);
+        }
+        rebuildIfNeeded();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List query(Envelope searchEnv) {
+        final List<Object> result = new ArrayList<>();
+        query(searchEnv, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                result.add(item);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void query(Envelope searchEnv, final ItemVisitor visitor) {
+        if (removedFromPacked.isEmpty()) {
+            packedTree.query(searchEnv, visitor);
+        } else {
+            packedTree.query(searchEnv, new ItemVisitor() {
+                @Override
+                public void visitItem(Object item) {
+                    if (!removedFromPacked.contains(item)) {
+                        visitor.visitItem(item);
+                    }
+                }
+            });
+        }
+        if (!insertedItems.isEmpty()) {
+            inserted.query(searchEnv, visitor);
+        }
+    }
+
+    /**
+     * Rebuilds the packed tree with all the live items, clearing the pending changes.
+     */
+    public void rebuild() {
+        packedTree = new STRtree(nodeCapacity);
+        for (Map.Entry<Object, Envelope> entry : envelopes.entrySet()) {
+            packedTree.insert(entry.getValue(), entry.getKey());
+        }
+        if (!envelopes.isEmpty()) {
+            packedTree.build();
+        }
+        removedFromPacked.clear();
+        inserted = new Quadtree();
+        insertedItems.clear();
+    }
+
+    private void rebuildIfNeeded() {
+        if (pendingChanges() > maxPendingChanges()) {
+            rebuild();
+        }
+    }
+
+    private int pendingChanges() {
+        return removedFromPacked.size() + insertedItems.size();
+    }
+
+    private double maxPendingChanges() {
+        return Math.max(MIN_PENDING_CHANGES, REBUILD_FRACTION * envelopes.size());
+    }
+}
@@ -0,0 +1,186 @@
+package com.vividsolutions.jump.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.index.SpatialIndex;
+import com.vividsolutions.jts.util.Assert;
+
+/**
+ * A spatial index hashing items into a uniform grid of fixed size cells.
+ * <P>
+ * Works best when the items are spread rather uniformly and have sizes
+ * similar to the cell size (e.g. dense grids of buildings): a query then only
+ * looks at a few cells, each holding a few items. Items covering more than
+ * {@link #MAX_CELLS_PER_ITEM} cells are kept in a separate list scanned by
+ * every query, so that a few huge items do not fill the whole grid.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public class GridSpatialIndex implements SpatialIndex {
+
+    /** Items covering more cells than this are not hashed into the grid. */
+    public static final int MAX_CELLS_PER_ITEM = 64;
+
+    private final double cellSize;
+    private final Map<Long, List<Entry>> cells = new HashMap<>();
+    private final List<Entry> oversizedEntries = new ArrayList<>();
+
+    /**
+     * Creates an empty grid index.
+     * @param cellSize the width and height of the cells, must be positive
+     */
+    public GridSpatialIndex(double cellSize) {
+        Assert.isTrue(cellSize > 0, "cellSize = " + cellSize);
+        this.cellSize = cellSize;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    public void insert(Envelope itemEnv, Object item) {
+        if (itemEnv.isNull()) {
+            return;
+        }
+        Entry entry = new Entry(itemEnv, item);
+        long minX = cell(itemEnv.getMinX());
+        long maxX = cell(itemEnv.getMaxX());
+        long minY = cell(itemEnv.getMinY());
+        long maxY = cell(itemEnv.getMaxY());
+        if ((maxX - minX + 1) * (maxY - minY + 1) > MAX_CELLS_PER_ITEM) {
+            oversizedEntries.add(entry);
+            return;
+        }
+        for (long x = minX; x <= maxX; x++) {
+            for (long y = minY; y <= maxY; y++) {
+                cells.computeIfAbsent(key(x, y), k -> new ArrayList<>(4)).add(entry);
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public List query(Envelope searchEnv) {
+        final List<Object> result = new ArrayList<>();
+        query(searchEnv, new ItemVisitor() {
+            @Override
+            public void visitItem(Object item) {
+                result.add(item);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visits the items whose envelope intersects the search envelope. Unlike
+     * other indexes this is an exact test, not only a primary filter, and each
+     * item is visited only once.
+     */
+    @Override
+    public void query(Envelope searchEnv, ItemVisitor visitor) {
+        if (searchEnv.isNull()) {
+            return;
+        }
+        for (Entry entry : oversizedEntries) {
+            if (entry.envelope.intersects(searchEnv)) {
+                visitor.visitItem(entry.item);
+            }
+        }
+        long minX = cell(searchEnv.getMinX());
+        long maxX = cell(searchEnv.getMaxX());
+        long minY = cell(searchEnv.getMinY());
+        long maxY = cell(searchEnv.getMaxY());
+        if ((maxX - minX + 1) * (maxY - minY + 1) > cells.size()) {
+            // the window covers more cells than there are non-empty ones
+            for (Map.Entry<Long, List<Entry>> cell : cells.entrySet()) {
+                long x = cell.getKey().longValue() >> 32;
+                long y = (int) cell.getKey().longValue();
+                if (minX <= x && x <= maxX && minY <= y && y <= maxY) {
+                    visitCell(cell.getValue(), x, y, minX, minY, searchEnv, visitor);
+                }
+            }
+            return;
+        }
+        for (long x = minX; x <= maxX; x++) {
+            for (long y = minY; y <= maxY; y++) {
+                List<Entry> entries = cells.get(key(x, y));
+                if (entries != null) {
+                    visitCell(entries, x, y, minX, minY, searchEnv, visitor);
+                }
+            }
+        }
+    }
+
+    private void visitCell(List<Entry> entries, long x, long y, long queryMinX, long queryMinY,
+            Envelope searchEnv, ItemVisitor visitor) {
+        for (Entry entry : entries) {
+            // An item spanning several cells is reported only from the first
+            // cell shared by the item and the query, to avoid duplicates.
+            if (x == Math.max(cell(entry.envelope.getMinX()), queryMinX)
+                    && y == Math.max(cell(entry.envelope.getMinY()), queryMinY)
+                    && entry.envelope.intersects(searchEnv)) {
+                visitor.visitItem(entry.item);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Envelope itemEnv, Object item) {
+        boolean removed = false;
+        for (Iterator<Entry> i = oversizedEntries.iterator(); i.hasNext();) {
+            if (i.next().item == item) {
+                i.remove();
+                return true;
+            }
+        }
+        long minX = cell(itemEnv.getMinX());
+        long maxX = cell(itemEnv.getMaxX());
+        long minY = cell(itemEnv.getMinY());
+        long maxY = cell(itemEnv.getMaxY());
+        for (long x = minX; x <= maxX; x++) {
+            for (long y = minY; y <= maxY; y++) {
+                Long key = key(x, y);
+                List<Entry> entries = cells.get(key);
+                if (entries == null) {
+                    continue;
+                }
+                for (Iterator<Entry> i = entries.iterator(); i.hasNext();) {
+                    if (i.next().item == item) {
+                        i.remove();
+                        removed = true;
+                        break;
+                    }
+                }
+                if (entries.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private long cell(double ordinate) {
+        return (long) Math.floor(ordinate / cellSize);
+    }
+
+    private static Long key(long x, long y) {
+        return Long.valueOf((x << 32) | (y & 0xFFFFFFFFL));
+    }
+
+    private static final class Entry {
+        private final Envelope envelope;
+        private final Object item;
+
+        Entry(Envelope envelope, Object item) {
+            this.envelope = envelope;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.vividsolutions.jump.index;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.SpatialIndex;
+import com.vividsolutions.jts.index.quadtree.Quadtree;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+
+/**
+ * The spatial index structures available to index a FeatureCollection, and
+ * a heuristic choosing one from the statistics of the features.
+ * <P>
+ * Class not part of the original JCS code.
+ */
+public enum SpatialIndexType {
+    /** Chosen from the feature statistics, see {@link #choose(FeatureCollection)}. */
+    AUTOMATIC,
+    /** Packed STR-tree, a good general purpose index for static data. */
+    STRTREE,
+    /** Quadtree, which keeps large features high in the tree. */
+    QUADTREE,
+    /** Uniform grid hash, see {@link GridSpatialIndex}. */
+    GRID;
+
+    /** Same node capacity as the default IndexedFeatureCollection STR-tree. */
+    public static final int DEFAULT_NODE_CAPACITY = 10;
+
+    /** Below this number of features, the index choice does not matter. */
+    private static final int SMALL_COLLECTION_SIZE = 256;
+
+    /**
+     * Creates an empty index of this type suited to the given features. The
+     * features are not inserted.
+     * @param fc the features that will be indexed
+     * @param nodeCapacity the node capacity of STR-trees
+     * @return an empty spatial index
+     */
+    public SpatialIndex create(FeatureCollection fc, int nodeCapacity) {
+        switch (this) {
+        case AUTOMATIC:
+            return choose(fc).create(fc, nodeCapacity);
+        case QUADTREE:
+            return new Quadtree();
+        case GRID:
+            return new GridSpatialIndex(gridCellSize(new Statistics(fc)));
+        case STRTREE:
+        default:
+            return new STRtree(Math.max(2, nodeCapacity));
+        }
+    }
+
+    /**
+     * Chooses an index type from the feature count, the distribution of the
+     * feature sizes and the occupancy of the collection extent:
+     * <UL>
+     *   <LI>similar sized features spread all over the extent (e.g. a dense
+     *       grid of buildings) use a uniform grid;
+     *   <LI>features with widely varying sizes (e.g. large landuse areas
+     *       mixed with POIs) use a quadtree;
+     *   <LI>other cases, including small collections, use an STR-tree.
+     * </UL>
+     * @param fc the features to index
+     * @return the index type to use, never AUTOMATIC
+     */
+    public static SpatialIndexType choose(FeatureCollection fc) {
+        if (fc.size() < SMALL_COLLECTION_SIZE) {
+            return STRTREE;
+        }
+        Statistics stats = new Statistics(fc);
+        if (stats.sizeVariation > 2.0) {
+            return QUADTREE;
+        }
+        if (stats.sizeVariation < 1.0 && stats.occupancy > 0.5) {
+            return GRID;
+        }
+        return STRTREE;
+    }
+
+    private static double gridCellSize(Statistics stats) {
+        // cells about twice as large as the average feature, but not so small
+        // that the grid would have much more cells than features
+        double cellSize = Math.max(2 * stats.meanSize, stats.meanSpacing);
+        if (!(cellSize > 0)) {
+            cellSize = 1;
+        }
+        return cellSize;
+    }
+
+    /**
+     * Statistics computed in one pass over the feature envelopes.
+     */
+    private static final class Statistics {
+        /** mean of the feature envelope sizes (average of width and height) */
+        private double meanSize;
+        /** coefficient of variation (standard deviation / mean) of the sizes */
+        private double sizeVariation;
+        /** side of the square cell that would contain one feature on average */
+        private double meanSpacing;
+        /** fraction of non-empty cells of a coarse grid over the extent */
+        private double occupancy;
+
+        Statistics(FeatureCollection fc) {
+            int n = fc.size();
+            Envelope extent = new Envelope();
+            double sum = 0;
+            double sumSquares = 0;
+            for (Feature f : fc) {
+                Envelope env = f.getGeometry().getEnvelopeInternal();
+                extent.expandToInclude(env);
+                double size = (env.getWidth() + env.getHeight()) / 2;
+                sum += size;
+                sumSquares += size * size;
+            }
+            if (n == 0 || extent.isNull()) {
+                return;
+            }
+            meanSize = sum / n;
+            double variance = Math.max(0, sumSquares / n - meanSize * meanSize);
+            sizeVariation = meanSize > 0 ? Math.sqrt(variance) / meanSize : 0;
+            double area = extent.getWidth() * extent.getHeight();
+            meanSpacing = Math.sqrt(area / n);
+            // coarse grid with about one cell per 4 features
+            int side = Math.max(1, (int) Math.sqrt(n / 4.0));
+            boolean[] occupied = new boolean[side * side];
+            for (Feature f : fc) {
+                Envelope env = f.getGeometry().getEnvelopeInternal();
+                int x = bin((env.getMinX() + env.getMaxX()) / 2, extent.getMinX(), extent.getWidth(), side);
+                int y = bin((env.getMinY() + env.getMaxY()) / 2, extent.getMinY(), extent.getHeight(), side);
+                occupied[y * side + x] = true;
+            }
+            int count = 0;
+            for (boolean b : occupied) {
+                if (b) {
+                    count++;
+                }
+            }
+            occupancy = (double) count / occupied.length;
+        }
+
+        private static int bin(double value, double min, double width, int side) {
+            if (width <= 0) {
+                return 0;
+            }
+            return Math.min(side - 1, Math.max(0, (int) ((value - min) / width * side)));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.actions.search.SearchCompiler;
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.plugins.conflation.config.ProgrammingMatchFinderPanel;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jump.index.SpatialIndexType;
+
+/**
+ * Runs the conflation of two .osm files without user interface.
+ * <p>
+ * The match finder is given by an expression, as typed in the programming
+ * panel of the settings dialog. The matches, and the reference and subject
+ * objects left unmatched, are written as CSV files in the output directory:
+ * {@code matches.csv}, {@code reference-only.csv} and {@code subject-only.csv}.
+ * <pre>
+ * Usage: ConflationCommandLine --reference ref.osm --subject subject.osm
+ *        (--expression "Disambiguating(Basic(...))" | --expression-file finder.txt)
+ *        [--output dir] [--projection EPSG:3857]
+ *        [--reference-filter "building=*"] [--subject-filter "building=*"]
+ *        [--index automatic|strtree|...] [--time-limit seconds] [--tile-size size]
+ *        [--max-candidates n]
+ * </pre>
+ * The filters are JOSM search expressions, by default all tagged objects are
+ * matched. The files may be compressed (.osm.gz, .osm.bz2). The JOSM and JTS
+ * plugin jars must be in the class path. With {@code --tile-size}, the objects
+ * are matched by tiles of that size in projected units (see
+ * {@link MatchesComputation}), bounding the memory of the match finder. With
+ * {@code --max-candidates}, the basic finders of the expression keep only the
+ * best candidates of each object.
+ */
+public final class ConflationCommandLine {
+
+    private File referenceFile;
+    private File subjectFile;
+    private String expression;
+    private File outputDir = new File(".");
+    private String projectionCode = "EPSG:3857";
+    private String referenceFilter;
+    private String subjectFilter;
+    private SpatialIndexType indexType = SpatialIndexType.AUTOMATIC;
+    private long timeLimit;
+    private double tileSize;
+    private int maxCandidates;
+
+    private ConflationCommandLine() {
+    }
+
+    public static void main(String[] args) {
+        ConflationCommandLine commandLine = new ConflationCommandLine();
+        try {
+            commandLine.parseArguments(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            printUsage();
+            System.exit(2);
+        }
+        try {
+            commandLine.run();
+        } catch (IllegalArgumentException | IOException | IllegalDataException | SearchCompiler.ParseError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: ConflationCommandLine --reference ref.osm --subject subject.osm\n"
+                + "       (--expression \"Disambiguating(Basic(...))\" | --expression-file finder.txt)\n"
+                + "       [--output dir] [--projection EPSG:3857]\n"
+                + "       [--reference-filter \"building=*\"] [--subject-filter \"building=*\"]\n"
+                + "       [--index automatic|strtree|...] [--time-limit seconds] [--tile-size size]\n"
+                + "       [--max-candidates n]");
+    }
+
+    private void parseArguments(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of option " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--reference":
+                referenceFile = new File(value);
+                break;
+            case "--subject":
+                subjectFile = new File(value);
+                break;
+            case "--expression":
+                expression = value;
+                break;
+            case "--expression-file":
+                expression = new String(Files.readAllBytes(new File(value).toPath()), StandardCharsets.UTF_8);
+                break;
+            case "--output":
+                outputDir = new File(value);
+                break;
+            case "--projection":
+                projectionCode = value;
+                break;
+            case "--reference-filter":
+                referenceFilter = value;
+                break;
+            case "--subject-filter":
+                subjectFilter = value;
+                break;
+            case "--index":
+                indexType = SpatialIndexType.valueOf(value.toUpperCase(Locale.ROOT));
+                break;
+            case "--time-limit":
+                timeLimit = (long) (Double.parseDouble(value) * 1000);
+                break;
+            case "--tile-size":
+                tileSize = Double.parseDouble(value);
+                break;
+            case "--max-candidates":
+                maxCandidates = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (referenceFile == null || subjectFile == null || expression == null) {
+            throw new IllegalArgumentException("The reference and subject files and the expression are required");
+        }
+    }
+
+    private void run() throws IOException, IllegalDataException, SearchCompiler.ParseError {
+        initialize(projectionCode);
+        FCMatchFinder finder = ProgrammingMatchFinderPanel.parseMatchFinder(expression, maxCandidates);
+
+        DataSet referenceDataSet = load(referenceFile);
+        DataSet subjectDataSet = load(subjectFile);
+        SimpleMatchSettings settings = new SimpleMatchSettings();
+        settings.setReferenceDataSet(referenceDataSet);
+        settings.setReferenceSelection(select(referenceDataSet, referenceFilter));
+        settings.setSubjectDataSet(subjectDataSet);
+        settings.setSubjectSelection(select(subjectDataSet, subjectFilter));
+        settings.setMatchFinder(finder);
+        String finderExpression = expression;
+        int finderMaxCandidates = maxCandidates;
+        settings.setMatchFinderFactory(
+                () -> ProgrammingMatchFinderPanel.parseMatchFinder(finderExpression, finderMaxCandidates));
+        settings.setMatchFinderConfiguration(ProgrammingMatchFinderPanel.class.getSimpleName() + ";"
+                + maxCandidates + ";" + expression);
+        settings.setSpatialIndexType(indexType);
+        settings.setTimeLimit(timeLimit);
+        settings.setTileSize(tileSize);
+        Main.info("Conflation: matching " + settings.getReferenceSelection().size() + " reference objects with "
+                + settings.getSubjectSelection().size() + " subject objects");
+
+        SimpleMatchList matches = new SimpleMatchList();
+        matches.addAll(MatchesComputation.generateMatches(settings, NullProgressMonitor.INSTANCE));
+        List<OsmPrimitive> referenceOnly = new ArrayList<>();
+        for (OsmPrimitive r : settings.getReferenceSelection()) {
+            if (!matches.hasMatchForReference(r)) {
+                referenceOnly.add(r);
+            }
+        }
+        List<OsmPrimitive> subjectOnly = new ArrayList<>();
+        for (OsmPrimitive s : settings.getSubjectSelection()) {
+            if (!matches.hasMatchForSubject(s)) {
+                subjectOnly.add(s);
+            }
+        }
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create the directory " + outputDir);
+        }
+        writeMatches(new File(outputDir, "matches.csv"), matches);
+        writeObjects(new File(outputDir, "reference-only.csv"), referenceOnly);
+        writeObjects(new File(outputDir, "subject-only.csv"), subjectOnly);
+        System.out.println(matches.size() + " matches, " + referenceOnly.size() + " reference objects and "
+                + subjectOnly.size() + " subject objects unmatched, written to " + outputDir);
+    }
+
+    /**
+     * Prepares JOSM for use without user interface.
+     * @param projectionCode the code of the projection in which the features are created, e.g. "EPSG:3857"
+     * @throws IllegalArgumentException if the projection is unknown
+     */
+    static void initialize(String projectionCode) {
+        if (Main.pref == null) {
+            Main.pref = new Preferences();
+        }
+        Projection projection = Projections.getProjectionByCode(projectionCode);
+        if (projection == null) {
+            throw new IllegalArgumentException("Unknown projection: " + projectionCode);
+        }
+        // the features are created in the projection of the application
+        Main.setProjection(projection);
+    }
+
+    /**
+     * @param file an .osm file, possibly compressed
+     * @return its data
+     */
+    static DataSet load(File file) throws IOException, IllegalDataException {
+        try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+            return OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    /**
+     * @param dataSet the data
+     * @param filter a JOSM search expression, null for all tagged objects
+     * @return the complete objects of the data set matching the filter
+     */
+    private static List<OsmPrimitive> select(DataSet dataSet, String filter) throws SearchCompiler.ParseError {
+        SearchCompiler.Match match = filter == null ? null : SearchCompiler.compile(filter);
+        List<OsmPrimitive> selection = new ArrayList<>();
+        for (OsmPrimitive p : dataSet.allNonDeletedCompletePrimitives()) {
+            if (match != null ? match.match(p) : p.isTagged()) {
+                selection.add(p);
+            }
+        }
+        return selection;
+    }
+
+    private static void writeMatches(File file, SimpleMatchList matches) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("reference_type,reference_id,subject_type,subject_id,score,distance");
+            for (SimpleMatch m : matches) {
+                out.println(String.format(Locale.ROOT, "%s,%d,%s,%d,%.6f,%.3f",
+                        m.getReferenceObject().getType().getAPIName(), m.getReferenceObject().getUniqueId(),
+                        m.getSubjectObject().getType().getAPIName(), m.getSubjectObject().getUniqueId(),
+                        m.score, m.distance));
+            }
+        }
+    }
+
+    private static void writeObjects(File file, Collection<OsmPrimitive> objects) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            out.println("type,id,name");
+            for (OsmPrimitive p : objects) {
+                out.println(p.getType().getAPIName() + "," + p.getUniqueId() + "," + quote(p.get("name")));
+            }
+        }
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,108 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openstreetmap.josm.Main;
+
+import com.vividsolutions.jcs.conflate.polygonmatch.MatchingMetrics;
+
+/**
+ * Emits the stages of the matching runs as Java Flight Recorder events, so that they
+ * appear in recordings next to the GC and CPU activity.
+ * <p>
+ * The plugin is built for Java 8, whose API has no JFR: the event type is defined at
+ * runtime with the {@code jdk.jfr.EventFactory} of the running JVM, through reflection.
+ * Runtimes without it (Java 8 before update 262) emit no event, and the listener removes
+ * itself if emitting an event fails.
+ */
+final class ConflationJfrEvents implements MatchingMetrics.Listener {
+
+    private final Object factory;
+    private final Method newEvent;
+    private final Method isEnabled;
+    private final Method set;
+    private final Method commit;
+    private final AtomicBoolean failed = new AtomicBoolean();
+
+    private ConflationJfrEvents() throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+        Class<?> event = Class.forName("jdk.jfr.Event");
+        Constructor<?> annotation = annotationElement.getConstructor(Class.class, Object.class);
+        Constructor<?> field = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        Class<?> name = Class.forName("jdk.jfr.Name");
+        Class<?> label = Class.forName("jdk.jfr.Label");
+        Class<?> category = Class.forName("jdk.jfr.Category");
+        Class<?> description = Class.forName("jdk.jfr.Description");
+        Class<?> timespan = Class.forName("jdk.jfr.Timespan");
+
+        List<Object> eventAnnotations = Arrays.asList(
+                annotation.newInstance(name, "org.openstreetmap.josm.plugins.conflation.Stage"),
+                annotation.newInstance(label, "Conflation Stage"),
+                annotation.newInstance(category, new String[] {"JOSM", "Conflation"}),
+                annotation.newInstance(description, "A stage of a conflation matching run"));
+        // in the order of the values set by stageEnded
+        List<Object> fields = Arrays.asList(
+                field.newInstance(String.class, "name",
+                        Collections.singletonList(annotation.newInstance(label, "Stage"))),
+                field.newInstance(int.class, "depth",
+                        Collections.singletonList(annotation.newInstance(label, "Depth"))),
+                field.newInstance(long.class, "wallTime", Arrays.asList(
+                        annotation.newInstance(label, "Wall Time"),
+                        annotation.newInstance(timespan, "NANOSECONDS"))),
+                field.newInstance(int.class, "features",
+                        Collections.singletonList(annotation.newInstance(label, "Features"))),
+                field.newInstance(long.class, "candidatePairs",
+                        Collections.singletonList(annotation.newInstance(label, "Candidate Pairs"))),
+                field.newInstance(long.class, "matches",
+                        Collections.singletonList(annotation.newInstance(label, "Matches"))),
+                field.newInstance(double.class, "pruningRatio",
+                        Collections.singletonList(annotation.newInstance(label, "Pruning Ratio"))));
+        factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, eventAnnotations, fields);
+        newEvent = eventFactory.getMethod("newEvent");
+        isEnabled = event.getMethod("isEnabled");
+        set = event.getMethod("set", int.class, Object.class);
+        commit = event.getMethod("commit");
+    }
+
+    /**
+     * Defines the event type in the running JVM.
+     * @return the listener emitting the events, or null if JFR is not available
+     */
+    static ConflationJfrEvents create() {
+        try {
+            return new ConflationJfrEvents();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void stageEnded(MatchingMetrics.Stage stage) {
+        try {
+            Object event = newEvent.invoke(factory);
+            if (!(Boolean) isEnabled.invoke(event)) {
+                return;
+            }
+            Object[] values = {stage.getName(), stage.getDepth(), stage.getDuration(), stage.getFeatures(),
+                    stage.getCandidatePairs(), stage.getMatches(), stage.getPruningRatio()};
+            for (int i = 0; i < values.length; i++) {
+                set.invoke(event, i, values[i]);
+            }
+            commit.invoke(event);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the matching must go on without the events
+            MatchingMetrics.removeListener(this);
+            if (failed.compareAndSet(false, true)) {
+                Main.warn("Conflation: JFR events disabled, emitting one failed: " + e);
+            }
+        }
+    }
+}
@@ -66,8 +66,8 @@ public class ConflationLayer extends Layer {
             if (reference != null && subject != null) {
                 GeneralPath path = new GeneralPath();
                 // we have a pair, so draw line between them
-                Point p1 = mv.getPoint(ConflationUtils.getCenter(reference));
-                Point p2 = mv.getPoint(ConflationUtils.getCenter(subject));
+                Point p1 = mv.getPoint(ConflationUtils.getCenter(reference, mv.getProjection()));
+                Point p2 = mv.getPoint(ConflationUtils.getCenter(subject, mv.getProjection()));
                 path.moveTo(p1.x, p1.y);
                 path.lineTo(p2.x, p2.y);
                 //logger.info(String.format("Line %d,%d to %d,%d", p1.x, p1.y, p2.x, p2.y));
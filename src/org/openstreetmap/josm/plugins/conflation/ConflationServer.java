@@ -0,0 +1,349 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonWriter;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.plugins.conflation.config.ProgrammingMatchFinderPanel;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationEngine;
+import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.MatchBatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.MappedFeatureCollection;
+
+/**
+ * A local HTTP service matching the features it receives against a reference
+ * dataset loaded once, so that tools not written in Java can use the matchers
+ * without starting JOSM for each request.
+ * <p>
+ * The reference features are converted and indexed at startup, and the JIT
+ * stays warm between requests. Concurrent requests with the same expression
+ * are matched together (see {@link MatchBatcher}), sharing the index queries
+ * and the work done on the reference features. Requests whose match finder
+ * chooses between targets (see {@link MatchBatcher#choosesBetweenTargets})
+ * are matched alone unless they ask for a batch, as their matches would
+ * otherwise depend on the targets of the other requests.
+ * <ul>
+ * <li>{@code POST /match?expression=...}: the body is OSM XML or GeoJSON data
+ *     (in WGS84), whose features are the targets of the match finder given by
+ *     the expression (as typed in the programming panel of the settings), the
+ *     reference features being the candidates. Add {@code batch=false} to match
+ *     the features of the request alone, or {@code batch=true} to batch them
+ *     even with a finder choosing between targets. The response is a JSON object:
+ *     {@code {"matches": [{"feature": "way/12", "reference": "way/34", "score": 0.93}],
+ *     "unmatched": ["node/5"]}}.</li>
+ * <li>{@code GET /status}: the size of the reference and the numbers of
+ *     requests and batches.</li>
+ * </ul>
+ * <pre>
+ * Usage: ConflationServer --reference ref.osm|ref.geojson [--port 8112] [--bind 127.0.0.1]
+ *        [--expression "..."] [--projection EPSG:3857] [--threads n] [--batch-window ms]
+ *        [--max-candidates n]
+ * </pre>
+ * The expression given at startup is used by requests without one. With
+ * {@code --max-candidates}, the basic finders of all the expressions keep only
+ * the best candidates of each object.
+ * <p>
+ * References too large for the heap are read from a feature file (see
+ * {@link MappedFeatureCollection}), created from an .osm or GeoJSON file with
+ * {@code --reference ref.osm --write-features ref.features}. The identifiers of
+ * the features are kept in the file.
+ */
+public final class ConflationServer {
+
+    private File referenceFile;
+    private int port = 8112;
+    private String bindAddress = "127.0.0.1";
+    private String defaultExpression;
+    private String projectionCode = "EPSG:3857";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long batchWindow = 20;
+    private int maxCandidates;
+    private File featureFile;
+
+    private FeatureCollection reference;
+    /** The identifiers of the reference features, null if they are read from a feature file. */
+    private Map<Feature, String> referenceIds;
+    private MatchBatcher batcher;
+    private final AtomicLong unbatchedRequests = new AtomicLong();
+
+    private ConflationServer() {
+    }
+
+    public static void main(String[] args) {
+        ConflationServer server = new ConflationServer();
+        try {
+            server.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: ConflationServer --reference ref.osm|ref.geojson|ref.features [--port 8112]\n"
+                    + "       [--bind 127.0.0.1] [--expression \"...\"] [--projection EPSG:3857] [--threads n]\n"
+                    + "       [--batch-window ms] [--max-candidates n] [--write-features ref.features]");
+            System.exit(2);
+        }
+        try {
+            server.start();
+        } catch (IllegalArgumentException | IOException | IllegalDataException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of option " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--reference":
+                referenceFile = new File(value);
+                break;
+            case "--port":
+                port = Integer.parseInt(value);
+                break;
+            case "--bind":
+                bindAddress = value;
+                break;
+            case "--expression":
+                defaultExpression = value;
+                break;
+            case "--projection":
+                projectionCode = value;
+                break;
+            case "--threads":
+                threads = Integer.parseInt(value);
+                break;
+            case "--batch-window":
+                batchWindow = Long.parseLong(value);
+                break;
+            case "--max-candidates":
+                maxCandidates = Integer.parseInt(value);
+                break;
+            case "--write-features":
+                featureFile = new File(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (referenceFile == null) {
+            throw new IllegalArgumentException("The reference file is required");
+        }
+    }
+
+    private void start() throws IOException, IllegalDataException {
+        ConflationCommandLine.initialize(projectionCode);
+        if (defaultExpression != null) {
+            ProgrammingMatchFinderPanel.parseMatchFinder(defaultExpression);
+        }
+        long start = System.nanoTime();
+        if (referenceFile.getName().endsWith(".features")) {
+            reference = new MappedFeatureCollection(referenceFile);
+            if (!reference.getFeatureSchema().hasAttribute(ServiceFeatures.ID_ATTRIBUTE)) {
+                throw new IllegalArgumentException(
+                        "No " + ServiceFeatures.ID_ATTRIBUTE + " attribute in " + referenceFile);
+            }
+        } else {
+            if (isGeoJson(referenceFile.getName())) {
+                try (InputStream in = new FileInputStream(referenceFile)) {
+                    referenceIds = ServiceFeatures.readGeoJson(in, Main.getProjection());
+                }
+            } else {
+                referenceIds = ServiceFeatures.fromDataSet(ConflationCommandLine.load(referenceFile));
+            }
+            if (featureFile != null) {
+                ServiceFeatures.writeFeatureFile(referenceIds, featureFile);
+                System.out.println(referenceIds.size() + " features written to " + featureFile);
+                return;
+            }
+            reference = ServiceFeatures.index(referenceIds.keySet());
+        }
+        Main.info(String.format(Locale.ROOT, "Conflation service: %d reference features loaded in %.1f s",
+                reference.size(), (System.nanoTime() - start) / 1e9));
+
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        ConflationEngine engine = new ConflationEngine(Executors.newFixedThreadPool(threads));
+        batcher = new MatchBatcher(engine, reference, batchWindow, timer);
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+        // the request threads wait for their batch
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/match", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handleMatch(exchange);
+            }
+        });
+        server.createContext("/status", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                JsonObject status = Json.createObjectBuilder()
+                        .add("reference", reference.size())
+                        .add("requests", batcher.getRequestCount())
+                        .add("batches", batcher.getBatchCount())
+                        .add("unbatchedRequests", unbatchedRequests.get())
+                        .build();
+                send(exchange, 200, status);
+            }
+        });
+        server.start();
+        System.out.println("Conflation service listening on http://" + bindAddress + ":" + port + "/");
+    }
+
+    private void handleMatch(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "POST expected");
+                return;
+            }
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            final String expression = parameters.getOrDefault("expression", defaultExpression);
+            if (expression == null) {
+                sendError(exchange, 400, "Missing expression");
+                return;
+            }
+            // reject invalid expressions before joining a batch
+            FCMatchFinder finder = ProgrammingMatchFinderPanel.parseMatchFinder(expression, maxCandidates);
+            Map<Feature, String> targets = readTargets(exchange);
+            String key = expression;
+            String batch = parameters.get("batch");
+            if (batch == null ? MatchBatcher.choosesBetweenTargets(finder) : !"true".equals(batch)) {
+                key = expression + "\u0000" + unbatchedRequests.incrementAndGet();
+            }
+            Map<Feature, Matches> matches = batcher.submit(key,
+                    () -> ProgrammingMatchFinderPanel.parseMatchFinder(expression, maxCandidates),
+                    targets.keySet()).get();
+            send(exchange, 200, toJson(targets, matches));
+        } catch (IllegalArgumentException | IllegalDataException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (ExecutionException e) {
+            Main.error(e.getCause());
+            sendError(exchange, 500, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendError(exchange, 503, "Interrupted");
+        } catch (RuntimeException e) {
+            Main.error(e);
+            sendError(exchange, 500, e.toString());
+        }
+    }
+
+    private static Map<Feature, String> readTargets(HttpExchange exchange) throws IOException, IllegalDataException {
+        byte[] body = readAll(exchange.getRequestBody());
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean json = contentType != null ? contentType.contains("json") : startsWith(body, '{');
+        if (json) {
+            return ServiceFeatures.readGeoJson(new ByteArrayInputStream(body), Main.getProjection());
+        }
+        return ServiceFeatures.fromDataSet(
+                OsmReader.parseDataSet(new ByteArrayInputStream(body), NullProgressMonitor.INSTANCE));
+    }
+
+    private JsonObject toJson(Map<Feature, String> targets, Map<Feature, Matches> matches) {
+        JsonArrayBuilder matched = Json.createArrayBuilder();
+        JsonArrayBuilder unmatched = Json.createArrayBuilder();
+        for (Map.Entry<Feature, String> target : targets.entrySet()) {
+            Matches m = matches.get(target.getKey());
+            if (m == null || m.size() == 0) {
+                unmatched.add(target.getValue());
+            } else {
+                matched.add(Json.createObjectBuilder()
+                        .add("feature", target.getValue())
+                        .add("reference", referenceId(m.getTopMatch()))
+                        .add("score", m.getTopScore()));
+            }
+        }
+        return Json.createObjectBuilder().add("matches", matched).add("unmatched", unmatched).build();
+    }
+
+    private String referenceId(Feature feature) {
+        return referenceIds != null ? referenceIds.get(feature) : feature.getString(ServiceFeatures.ID_ATTRIBUTE);
+    }
+
+    private static boolean isGeoJson(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".geojson") || name.endsWith(".json");
+    }
+
+    private static boolean startsWith(byte[] body, char c) {
+        for (byte b : body) {
+            if (!Character.isWhitespace(b)) {
+                return b == c;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return parameters;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, Json.createObjectBuilder().add("error", String.valueOf(message)).build());
+    }
+
+    private static void send(HttpExchange exchange, int status, JsonObject json) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (JsonWriter writer = Json.createWriter(buffer)) {
+            writer.writeObject(json);
+        }
+        byte[] body = buffer.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.Component;
 import java.awt.Dialog;
+import java.awt.Font;
 import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
@@ -16,6 +17,7 @@ import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,6 +37,7 @@ import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
+import javax.swing.JTextArea;
 import javax.swing.ListSelectionModel;
 import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
@@ -47,7 +50,9 @@ import javax.swing.table.TableCellRenderer;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.actions.AutoScaleAction;
+import org.openstreetmap.josm.actions.DiskAccessAction;
 import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.actions.SaveActionBase;
 import org.openstreetmap.josm.command.Command;
 import org.openstreetmap.josm.data.SelectionChangedListener;
 import org.openstreetmap.josm.data.osm.DataSet;
@@ -70,6 +75,8 @@ import org.openstreetmap.josm.gui.layer.LayerManager.LayerAddEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.widgets.AbstractFileChooser;
 import org.openstreetmap.josm.gui.widgets.PopupMenuLauncher;
 import org.openstreetmap.josm.io.OsmTransferException;
 import org.openstreetmap.josm.plugins.conflation.config.SettingsDialog;
@@ -80,6 +87,8 @@ import org.openstreetmap.josm.tools.Shortcut;
 import org.openstreetmap.josm.tools.UserCancelException;
 import org.xml.sax.SAXException;
 
+import com.vividsolutions.jcs.conflate.polygonmatch.MatchingMetrics;
+
 public class ConflationToggleDialog extends ToggleDialog
 implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, LayerChangeListener {
 
@@ -87,6 +96,7 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
     public static final String PREF_PREFIX = "conflation";
     final JTabbedPane tabbedPane;
     final JTable matchTable;
+    final JTextArea runSummaryArea;
     final JList<OsmPrimitive> referenceOnlyList;
     final UnmatchedObjectListModel referenceOnlyListModel;
     final JList<OsmPrimitive> subjectOnlyList;
@@ -189,6 +199,12 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
         tabbedPane.addTab(tr("Reference only"), new JScrollPane(referenceOnlyList));
         tabbedPane.addTab(tr("Subject only"), new JScrollPane(subjectOnlyList));
 
+        // time spent in each stage of the last matching run
+        runSummaryArea = new JTextArea();
+        runSummaryArea.setEditable(false);
+        runSummaryArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, runSummaryArea.getFont().getSize()));
+        tabbedPane.addTab(tr("Run summary"), new JScrollPane(runSummaryArea));
+
         conflateAction = new ConflateAction();
         conflateButton = new SideButton(conflateAction);
         // TODO: don't need this arrow box now, but likely will shortly
@@ -217,7 +233,9 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
         createLayout(tabbedPane, false, Arrays.asList(new SideButton[]{
                 new SideButton(new ConfigureAction()),
                 conflateButton,
-                removeButton
+                removeButton,
+                new SideButton(new SaveResultsAction()),
+                new SideButton(new LoadResultsAction())
                 // new SideButton("Replace Geometry", false),
                 // new SideButton("Merge Tags", false),
                 // new SideButton("Remove", false)
@@ -359,6 +377,74 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
         }
     }
 
+    class SaveResultsAction extends JosmAction {
+
+        SaveResultsAction() {
+            super(tr("Save"), "save", tr("Save the matches and the unmatched objects to a file"),
+                    null, false);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (settings == null) {
+                JOptionPane.showMessageDialog(Main.parent, tr("There are no conflation results to save."),
+                        tr("Save conflation results"), JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            File file = SaveActionBase.createAndOpenSaveFileChooser(
+                    tr("Save conflation results"), MatchResultsFile.EXTENSION);
+            if (file == null) {
+                return;
+            }
+            try {
+                int skipped = MatchResultsFile.save(file, settings.getMatchFinderConfiguration(), matches,
+                        listContent(referenceOnlyListModel), listContent(subjectOnlyListModel));
+                if (skipped > 0) {
+                    JOptionPane.showMessageDialog(Main.parent,
+                            tr("{0} results involving new objects were not saved, upload the objects first to keep them.",
+                                    skipped),
+                            tr("Save conflation results"), JOptionPane.WARNING_MESSAGE);
+                }
+            } catch (IOException ex) {
+                Main.error(ex);
+                JOptionPane.showMessageDialog(Main.parent, ex.getMessage(),
+                        tr("Error saving conflation results"), JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    class LoadResultsAction extends JosmAction {
+
+        LoadResultsAction() {
+            super(tr("Load"), "open", tr("Load matches saved for the reference and subject layers"),
+                    null, false);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            SimpleMatchSettings loadSettings = settingsDialog.getSettings();
+            if (loadSettings.getReferenceDataSet() == null || loadSettings.getSubjectDataSet() == null) {
+                JOptionPane.showMessageDialog(Main.parent,
+                        tr("Choose the reference and subject layers in the configuration first."),
+                        tr("Load conflation results"), JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            AbstractFileChooser chooser = DiskAccessAction.createAndOpenFileChooser(
+                    true, false, tr("Load conflation results"), MatchResultsFile.EXTENSION);
+            if (chooser != null) {
+                loadResults(chooser.getSelectedFile(), loadSettings);
+            }
+        }
+    }
+
+    private static List<OsmPrimitive> listContent(UnmatchedObjectListModel model) {
+        List<OsmPrimitive> content = new ArrayList<>(model.getSize());
+        for (int i = 0; i < model.getSize(); i++) {
+            content.add(model.getElementAt(i));
+        }
+        return content;
+    }
+
     @Override
     public void showNotify() {
         super.showNotify();
@@ -1131,6 +1217,9 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
     @Override
     public void layerRemoving(LayerRemoveEvent e) {
         Layer removedLayer = e.getRemovedLayer();
+        if (removedLayer instanceof OsmDataLayer) {
+            FeatureIndexRegistry.getInstance().invalidate(((OsmDataLayer) removedLayer).data);
+        }
         if (settings != null) {
             boolean shouldclearReferenceSettings = removedLayer == settings.getReferenceLayer();
             boolean shouldclearSubjectSettings = removedLayer == settings.getSubjectLayer();
@@ -1146,6 +1235,57 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
         // Do nothing
     }
 
+    /**
+     * Restores saved results in a PleaseWaitRunnable window, in place of the current ones.
+     * @param file the saved results
+     * @param loadSettings the settings whose data sets contain the objects of the results
+     */
+    private void loadResults(final File file, final SimpleMatchSettings loadSettings) {
+        Main.worker.submit(new PleaseWaitRunnable(tr("Loading matches")) {
+
+            private MatchResultsFile.Restored restored;
+
+            @Override
+            protected void realRun() throws SAXException, IOException, OsmTransferException {
+                restored = MatchResultsFile.restore(file, loadSettings.getReferenceDataSet(),
+                        loadSettings.getSubjectDataSet());
+            }
+
+            @Override
+            protected void finish() {
+                if (restored == null) {
+                    return;
+                }
+                clear(true, true, false);
+                loadSettings.setReferenceSelection(restored.getReferenceObjects());
+                loadSettings.setSubjectSelection(restored.getSubjectObjects());
+                settings = loadSettings;
+                setListsContentAddListnersAndLayer(restored.getMatches(),
+                        restored.getReferenceOnly(), restored.getSubjectOnly());
+                List<String> warnings = new ArrayList<>();
+                if (restored.getFingerprint() != MatchResultsFile.fingerprint(
+                        loadSettings.getMatchFinderConfiguration())) {
+                    warnings.add(tr("The results were computed with other match settings."));
+                }
+                if (restored.getMissingCount() > 0) {
+                    warnings.add(tr("{0} objects of the results were not found in the layers.",
+                            restored.getMissingCount()));
+                }
+                if (restored.getChangedCount() > 0) {
+                    warnings.add(tr("{0} objects of the results have changed since they were saved.",
+                            restored.getChangedCount()));
+                }
+                if (!warnings.isEmpty()) {
+                    JOptionPane.showMessageDialog(Main.parent, String.join("\n", warnings),
+                            tr("Load conflation results"), JOptionPane.WARNING_MESSAGE);
+                }
+            }
+
+            @Override
+            protected void cancel() {}
+        });
+    }
+
     /**
      * Launch the matching computation in a PleaseWaitRunnable window.
      */
@@ -1155,12 +1295,14 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
             private SimpleMatchList computedMatches;
             private Collection<OsmPrimitive> referenceOnlyList;
             private Collection<OsmPrimitive> subjectOnlyList;
+            private MatchingMetrics runMetrics;
             boolean executionOk = false;
 
             @Override
             protected void realRun() throws SAXException, IOException, OsmTransferException {
                 computedMatches = new SimpleMatchList();
                 computedMatches.addAll(MatchesComputation.generateMatches(settings, getProgressMonitor()));
+                runMetrics = MatchesComputation.getLastRunMetrics();
                 if (!getProgressMonitor().isCanceled()) {
                     referenceOnlyList = settings.getReferenceSelection().stream().filter(
                             r -> !computedMatches.hasMatchForReference(r)).collect(Collectors.toList());
@@ -1172,6 +1314,10 @@ implements SelectionChangedListener, DataSetListener, SimpleMatchListListener, L
 
             @Override
             protected void finish() {
+                if (runMetrics != null) {
+                    runSummaryArea.setText(runMetrics.summary());
+                    runSummaryArea.setCaretPosition(0);
+                }
                 if (!getProgressMonitor().isCanceled() && executionOk) {
                     setListsContentAddListnersAndLayer(computedMatches, referenceOnlyList, subjectOnlyList);
                 }
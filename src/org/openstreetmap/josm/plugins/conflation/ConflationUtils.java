@@ -14,14 +14,28 @@ import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.PrimitiveData;
 import org.openstreetmap.josm.data.osm.visitor.MergeSourceBuildingVisitor;
+import org.openstreetmap.josm.data.projection.Projection;
 
 public final class ConflationUtils {
 
     private ConflationUtils() {}
 
+    /**
+     * @param prim a primitive
+     * @return the center of its bounding box, in the current projection
+     */
     public static EastNorth getCenter(OsmPrimitive prim) {
+        return getCenter(prim, Main.getProjection());
+    }
+
+    /**
+     * @param prim a primitive
+     * @param projection the projection to use, e.g. the one of a map view
+     * @return the center of its bounding box, in the given projection
+     */
+    public static EastNorth getCenter(OsmPrimitive prim, Projection projection) {
         LatLon center = prim.getBBox().getTopLeft().getCenter(prim.getBBox().getBottomRight());
-        return Main.map.mapView.getProjection().latlon2eastNorth(center);
+        return projection.latlon2eastNorth(center);
     }
 
     public static List<PrimitiveData> copyObjects(DataSet sourceDataSet, OsmPrimitive primitive) {
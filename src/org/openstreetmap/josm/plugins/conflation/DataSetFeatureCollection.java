@@ -0,0 +1,293 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.plugins.jts.JTSConverter;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * A read-only FeatureCollection of selected primitives, whose {@link #query(Envelope)}
+ * relies on the spatial index JOSM already maintains for the data set, instead of
+ * copying the selection in another index.
+ * <p>
+ * Features are created on demand, the first time a primitive is returned, and
+ * then kept so that the same feature is always returned for a given primitive.
+ * This is efficient when the selection is a large part of the data set and
+ * the collection is mostly queried with small windows (candidates search).
+ */
+public class DataSetFeatureCollection implements FeatureCollection {
+
+    /** Minimum fraction of the data set that must be selected for this collection to be worth using. */
+    private static final double MIN_SELECTED_FRACTION = 0.5;
+
+    /** Number of steps each edge of a query envelope is sampled with when converted to lat/lon. */
+    private static final int BBOX_EDGE_SAMPLES = 8;
+
+    private final DataSet dataSet;
+    private final Set<OsmPrimitive> selection;
+    private final List<Relation> selectedRelations = new ArrayList<>();
+    private final boolean searchNodes;
+    private final boolean searchWays;
+    private final Function<OsmPrimitive, OsmFeature> sharedFeatures;
+    private final Map<OsmPrimitive, OsmFeature> features = new ConcurrentHashMap<>();
+    private final JTSConverter converter = OsmFeature.createConverter();
+    private FeatureSchema schema;
+    private Envelope envelope;
+    private List<Feature> allFeatures;
+
+    /**
+     * Creates the collection.
+     * @param dataSet the data set containing the selection
+     * @param selection the primitives of this collection
+     * @param sharedFeatures gives the feature already created for a primitive by another
+     *      collection, or null. Used to keep a single feature per primitive. May be null.
+     */
+    public DataSetFeatureCollection(DataSet dataSet, Collection<OsmPrimitive> selection,
+            Function<OsmPrimitive, OsmFeature> sharedFeatures) {
+        this.dataSet = dataSet;
+        this.selection = Collections.unmodifiableSet(new LinkedHashSet<>(selection));
+        this.sharedFeatures = sharedFeatures;
+        boolean hasNodes = false;
+        boolean hasWays = false;
+        for (OsmPrimitive p : this.selection) {
+            if (p instanceof Node) {
+                hasNodes = true;
+            } else if (p instanceof Way) {
+                hasWays = true;
+            } else if (p instanceof Relation) {
+                selectedRelations.add((Relation) p);
+            }
+        }
+        searchNodes = hasNodes;
+        searchWays = hasWays;
+    }
+
+    /**
+     * Tells if searching candidates in the data set index is expected to be faster than
+     * building a dedicated index, i.e. if most of the nodes or ways of the data set are
+     * selected. Otherwise, most of the primitives found in the data set would be dropped.
+     * @param dataSet the data set containing the selection
+     * @param selection the selected primitives
+     * @return true if a DataSetFeatureCollection should be used
+     */
+    public static boolean isEfficientFor(DataSet dataSet, Collection<OsmPrimitive> selection) {
+        if (dataSet == null) {
+            return false;
+        }
+        int nodes = 0;
+        int ways = 0;
+        int relations = 0;
+        for (OsmPrimitive p : selection) {
+            if (p instanceof Node) {
+                nodes++;
+            } else if (p instanceof Way) {
+                ways++;
+            } else if (p instanceof Relation) {
+                relations++;
+            }
+        }
+        if (relations > selection.size() / 2) {
+            // relations are scanned linearly
+            return false;
+        }
+        return (nodes == 0 || nodes >= MIN_SELECTED_FRACTION * dataSet.getNodes().size())
+            && (ways == 0 || ways >= MIN_SELECTED_FRACTION * dataSet.getWays().size());
+    }
+
+    /**
+     * Returns the feature for the given primitive, creating it if needed.
+     * @param primitive a primitive
+     * @return the corresponding feature, or null if the primitive is not part of this collection
+     */
+    public OsmFeature getFeature(OsmPrimitive primitive) {
+        if (!selection.contains(primitive)) {
+            return null;
+        }
+        return features.computeIfAbsent(primitive, p -> {
+            OsmFeature shared = sharedFeatures != null ? sharedFeatures.apply(p) : null;
+            return shared != null ? shared : new OsmFeature(p, converter);
+        });
+    }
+
+    @Override
+    public synchronized FeatureSchema getFeatureSchema() {
+        if (schema == null) {
+            schema = MatchesComputation.createSchema(selection);
+        }
+        return schema;
+    }
+
+    @Override
+    public synchronized Envelope getEnvelope() {
+        if (envelope == null) {
+            envelope = new Envelope();
+            if (allFeatures != null) {
+                for (Feature f : allFeatures) {
+                    envelope.expandToInclude(f.getGeometry().getEnvelopeInternal());
+                }
+            } else {
+                // avoid converting everything, project the bounding box instead
+                Projection projection = Main.getProjection();
+                for (OsmPrimitive p : selection) {
+                    BBox bbox = p.getBBox();
+                    for (LatLon ll : new LatLon[] {bbox.getTopLeft(), bbox.getBottomRight()}) {
+                        EastNorth en = projection.latlon2eastNorth(ll);
+                        envelope.expandToInclude(en.east(), en.north());
+                    }
+                }
+            }
+        }
+        return envelope;
+    }
+
+    @Override
+    public int size() {
+        return selection.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return selection.isEmpty();
+    }
+
+    @Override
+    public synchronized List<Feature> getFeatures() {
+        if (allFeatures == null) {
+            List<Feature> list = new ArrayList<>(selection.size());
+            for (OsmPrimitive p : selection) {
+                list.add(getFeature(p));
+            }
+            allFeatures = Collections.unmodifiableList(list);
+        }
+        return allFeatures;
+    }
+
+    @Override
+    public Iterator<Feature> iterator() {
+        return getFeatures().iterator();
+    }
+
+    @Override
+    public List<Feature> query(Envelope env) {
+        List<Feature> result = new ArrayList<>();
+        if (env.isNull()) {
+            return result;
+        }
+        BBox bbox = toBBox(env);
+        List<OsmPrimitive> found = new ArrayList<>();
+        Lock lock = dataSet.getReadLock();
+        lock.lock();
+        try {
+            if (searchNodes) {
+                found.addAll(dataSet.searchNodes(bbox));
+            }
+            if (searchWays) {
+                found.addAll(dataSet.searchWays(bbox));
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Relation r : selectedRelations) {
+            if (r.getBBox().intersects(bbox)) {
+                found.add(r);
+            }
+        }
+        for (OsmPrimitive p : found) {
+            if (selection.contains(p)) {
+                Feature f = getFeature(p);
+                if (env.intersects(f.getGeometry().getEnvelopeInternal())) {
+                    result.add(f);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Converts a projected envelope to a lat/lon bounding box containing it.
+     * <p>
+     * The edges of the envelope are not straight in lat/lon with every projection,
+     * so they are sampled and the box is padded by the length of one sampling step,
+     * which covers the bulge of an edge between two samples. The candidates found are
+     * checked against the envelope afterwards, so the padding only costs a few extra tests.
+     */
+    private static BBox toBBox(Envelope env) {
+        Projection projection = Main.getProjection();
+        double minLat = Double.POSITIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i <= BBOX_EDGE_SAMPLES; i++) {
+            double x = env.getMinX() + env.getWidth() * i / BBOX_EDGE_SAMPLES;
+            double y = env.getMinY() + env.getHeight() * i / BBOX_EDGE_SAMPLES;
+            double[][] points = {
+                    {x, env.getMinY()}, {x, env.getMaxY()},
+                    {env.getMinX(), y}, {env.getMaxX(), y}};
+            for (double[] point : points) {
+                LatLon ll = projection.eastNorth2latlon(new EastNorth(point[0], point[1]));
+                minLat = Math.min(minLat, ll.lat());
+                minLon = Math.min(minLon, ll.lon());
+                maxLat = Math.max(maxLat, ll.lat());
+                maxLon = Math.max(maxLon, ll.lon());
+            }
+        }
+        double padLat = (maxLat - minLat) / BBOX_EDGE_SAMPLES;
+        double padLon = (maxLon - minLon) / BBOX_EDGE_SAMPLES;
+        return new BBox(minLon - padLon, minLat - padLat, maxLon + padLon, maxLat + padLat);
+    }
+
+    @Override
+    public void add(Feature feature) {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+
+    @Override
+    public void addAll(Collection<? extends Feature> features) {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+
+    @Override
+    public void removeAll(Collection<Feature> features) {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+
+    @Override
+    public void remove(Feature feature) {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+
+    @Override
+    public Collection<Feature> remove(Envelope env) {
+        throw new UnsupportedOperationException("Data set backed collection cannot be modified");
+    }
+}
@@ -0,0 +1,320 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.projection.ProjectionChangeListener;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jump.feature.DynamicIndexedFeatureCollection;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+
+/**
+ * Keeps the indexed feature collections built by {@link MatchesComputation}
+ * so that they can be reused when matching is run again on the same data.
+ * <p>
+ * An entry is identified by the data set it was built from, its role (reference
+ * or subject), the selection (compared by content, a fingerprint is used as a
+ * quick check), the variant of the index and the change counter of the data set.
+ * Any change to a data set increments its counter, so stale entries are never
+ * handed back. Only the latest collection of each data set and role is kept:
+ * trying other selections or index settings replaces it, so that at most one
+ * converted and indexed copy of each side of the conflation stays in memory.
+ * <p>
+ * The exceptions are the changes a collection can follow:
+ * <ul>
+ * <li>added primitives are not part of any registered selection, the collections are kept;</li>
+ * <li>on a geometry change (node moved, way nodes or relation members changed), collections
+ * that can be updated ({@link DynamicIndexedFeatureCollection}) are kept and the
+ * geometry of the affected features is updated the next time they are requested;</li>
+ * <li>removed primitives are likewise removed from the collections that can be updated,
+ * which are then registered for the selection without them.</li>
+ * </ul>
+ * Other changes (e.g. tags) forget the collections of the data set.
+ * <p>
+ * The features hold their data set, so entries are kept until {@link #invalidate(DataSet)}
+ * is called (the conflation dialog does it when a layer is removed). A projection change
+ * forgets every collection, their geometries being projected coordinates.
+ */
+public final class FeatureIndexRegistry {
+
+    /**
+     * The side of the conflation a collection is built for.
+     */
+    public enum Role {
+        REFERENCE, SUBJECT
+    }
+
+    private static final FeatureIndexRegistry INSTANCE = new FeatureIndexRegistry();
+
+    private final Map<DataSet, DataSetEntries> entriesByDataSet = new HashMap<>();
+
+    // Main only keeps a weak reference to the projection listeners
+    private final ProjectionChangeListener projectionListener = (oldValue, newValue) -> projectionChanged();
+
+    private FeatureIndexRegistry() {
+        Main.addProjectionChangeListener(projectionListener);
+    }
+
+    /**
+     * @return the unique instance
+     */
+    public static FeatureIndexRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the indexed collection previously registered for this selection.
+     * @param dataSet the data set containing the selection
+     * @param role the side of the conflation the collection is built for
+     * @param selection the selected primitives
+     * @param variant describes how the collection is built (e.g. the index type), may be null
+     * @return the cached collection, or null if none is available or the data changed since
+     */
+    public synchronized FeatureCollection get(DataSet dataSet, Role role, Collection<OsmPrimitive> selection,
+            Object variant) {
+        if (dataSet == null) {
+            return null;
+        }
+        DataSetEntries entries = entriesByDataSet.get(dataSet);
+        if (entries == null) {
+            return null;
+        }
+        if (!entries.removedPrimitives.isEmpty()) {
+            removeFeatures(entries);
+        }
+        if (!entries.movedPrimitives.isEmpty()) {
+            updateMovedFeatures(entries);
+        }
+        Registered registered = entries.collections.get(role);
+        if (registered == null
+                || !registered.key.equals(new SelectionKey(selection, variant, entries.changeCounter))) {
+            return null;
+        }
+        return registered.collection;
+    }
+
+    /**
+     * Registers an indexed collection built from the given selection, replacing the
+     * collection previously registered for the data set and role.
+     * @param dataSet the data set containing the selection
+     * @param role the side of the conflation the collection is built for
+     * @param selection the selected primitives
+     * @param variant describes how the collection is built (e.g. the index type), may be null
+     * @param collection the indexed collection built from the selection
+     */
+    public synchronized void put(DataSet dataSet, Role role, Collection<OsmPrimitive> selection, Object variant,
+            FeatureCollection collection) {
+        if (dataSet == null) {
+            return;
+        }
+        DataSetEntries entries = entriesByDataSet.get(dataSet);
+        if (entries == null) {
+            entries = new DataSetEntries();
+            entriesByDataSet.put(dataSet, entries);
+            dataSet.addDataSetListener(entries.listener);
+        }
+        entries.collections.put(role,
+                new Registered(new SelectionKey(selection, variant, entries.changeCounter), collection));
+    }
+
+    /**
+     * Forgets every collection built from the given data set, e.g. when its layer is removed.
+     * @param dataSet the data set
+     */
+    public synchronized void invalidate(DataSet dataSet) {
+        DataSetEntries entries = entriesByDataSet.remove(dataSet);
+        if (entries != null) {
+            dataSet.removeDataSetListener(entries.listener);
+        }
+    }
+
+    /**
+     * Forgets every registered collection.
+     */
+    public synchronized void clear() {
+        for (Iterator<Map.Entry<DataSet, DataSetEntries>> i = entriesByDataSet.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<DataSet, DataSetEntries> entry = i.next();
+            entry.getKey().removeDataSetListener(entry.getValue().listener);
+            i.remove();
+        }
+    }
+
+    private synchronized void projectionChanged() {
+        for (DataSetEntries entries : entriesByDataSet.values()) {
+            forgetCollections(entries);
+        }
+    }
+
+    private static void forgetCollections(DataSetEntries entries) {
+        entries.changeCounter++;
+        entries.collections.clear();
+        entries.movedPrimitives.clear();
+        entries.removedPrimitives.clear();
+    }
+
+    private synchronized void dataSetChanged(DataSetEntries entries, AbstractDatasetChangedEvent event) {
+        if (event instanceof PrimitivesAddedEvent) {
+            // e.g. a removal undone before the collections were requested again
+            entries.removedPrimitives.removeAll(event.getPrimitives());
+        } else if (event instanceof PrimitivesRemovedEvent) {
+            entries.removedPrimitives.addAll(event.getPrimitives());
+        } else if (event instanceof NodeMovedEvent || event instanceof WayNodesChangedEvent
+                || event instanceof RelationMembersChangedEvent) {
+            // the parent ways and relations are moved too
+            for (OsmPrimitive p : event.getPrimitives()) {
+                entries.movedPrimitives.add(p);
+                for (OsmPrimitive parent : p.getReferrers()) {
+                    entries.movedPrimitives.add(parent);
+                    entries.movedPrimitives.addAll(parent.getReferrers());
+                }
+            }
+        } else {
+            forgetCollections(entries);
+        }
+    }
+
+    /**
+     * Removes the features of the removed primitives from the collections that support it,
+     * registering them again for the selection without these primitives, and forgets the
+     * other collections containing them.
+     */
+    private static void removeFeatures(DataSetEntries entries) {
+        for (Iterator<Map.Entry<Role, Registered>> i = entries.collections.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<Role, Registered> entry = i.next();
+            SelectionKey key = entry.getValue().key;
+            FeatureCollection fc = entry.getValue().collection;
+            if (Collections.disjoint(key.primitives, entries.removedPrimitives)) {
+                continue;
+            }
+            if (fc instanceof DynamicIndexedFeatureCollection) {
+                List<Feature> removed = new ArrayList<>();
+                for (Feature f : fc) {
+                    if (entries.removedPrimitives.contains(((OsmFeature) f).getPrimitive())) {
+                        removed.add(f);
+                    }
+                }
+                fc.removeAll(removed);
+                entry.setValue(new Registered(key.without(entries.removedPrimitives), fc));
+            } else {
+                i.remove();
+            }
+        }
+        entries.movedPrimitives.removeAll(entries.removedPrimitives);
+        entries.removedPrimitives.clear();
+    }
+
+    /**
+     * Updates the geometry of the moved features in the collections that support it,
+     * and forgets the other collections.
+     */
+    private static void updateMovedFeatures(DataSetEntries entries) {
+        Map<OsmFeature, Geometry> newGeometries = new HashMap<>();
+        for (Iterator<Registered> i = entries.collections.values().iterator(); i.hasNext();) {
+            FeatureCollection fc = i.next().collection;
+            if (!(fc instanceof DynamicIndexedFeatureCollection)) {
+                i.remove();
+                continue;
+            }
+            DynamicIndexedFeatureCollection dynamicFC = (DynamicIndexedFeatureCollection) fc;
+            List<OsmFeature> moved = new ArrayList<>();
+            for (Feature f : dynamicFC) {
+                if (entries.movedPrimitives.contains(((OsmFeature) f).getPrimitive())) {
+                    moved.add((OsmFeature) f);
+                }
+            }
+            for (OsmFeature f : moved) {
+                // features shared by both sides are converted only once
+                dynamicFC.setGeometry(f, newGeometries.computeIfAbsent(f, OsmFeature::convertGeometry));
+            }
+        }
+        entries.movedPrimitives.clear();
+    }
+
+    private final class DataSetEntries {
+        private long changeCounter;
+        private final Set<OsmPrimitive> movedPrimitives = new HashSet<>();
+        private final Set<OsmPrimitive> removedPrimitives = new HashSet<>();
+        private final Map<Role, Registered> collections = new EnumMap<>(Role.class);
+        private final DataSetListenerAdapter listener = new DataSetListenerAdapter(
+                new DataSetListenerAdapter.Listener() {
+            @Override
+            public void processDatasetEvent(AbstractDatasetChangedEvent event) {
+                dataSetChanged(DataSetEntries.this, event);
+            }
+        });
+    }
+
+    private static final class Registered {
+        private final SelectionKey key;
+        private final FeatureCollection collection;
+
+        Registered(SelectionKey key, FeatureCollection collection) {
+            this.key = key;
+            this.collection = collection;
+        }
+    }
+
+    private static final class SelectionKey {
+        private final Set<OsmPrimitive> primitives;
+        private final long fingerprint;
+        private final Object variant;
+        private final long changeCounter;
+
+        SelectionKey(Collection<OsmPrimitive> selection, Object variant, long changeCounter) {
+            this.primitives = new HashSet<>(selection);
+            long f = primitives.size();
+            for (OsmPrimitive p : primitives) {
+                // order independent
+                f += p.getUniqueId() * 0x9E3779B97F4A7C15L;
+            }
+            this.fingerprint = f;
+            this.variant = variant;
+            this.changeCounter = changeCounter;
+        }
+
+        SelectionKey without(Set<OsmPrimitive> removed) {
+            List<OsmPrimitive> remaining = new ArrayList<>(primitives);
+            remaining.removeAll(removed);
+            return new SelectionKey(remaining, variant, changeCounter);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (fingerprint ^ (fingerprint >>> 32)) * 31 + (int) changeCounter;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SelectionKey)) {
+                return false;
+            }
+            SelectionKey other = (SelectionKey) obj;
+            return fingerprint == other.fingerprint
+                    && changeCounter == other.changeCounter
+                    && Objects.equals(variant, other.variant)
+                    && primitives.equals(other.primitives);
+        }
+    }
+}
@@ -0,0 +1,473 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+
+/**
+ * Saves the matches and the unmatched objects of a conflation in a compact
+ * binary file, so that they can be restored later without recomputing them.
+ * <p>
+ * The objects are stored by type, id and version, and are looked up in the
+ * reference and subject data sets when restoring. The file also keeps a
+ * fingerprint of the settings of the match finder, to detect results computed
+ * with other settings.
+ * <pre>
+ * file   := "CFLM" version:byte fingerprint:long record* END
+ * record := MATCH types:byte refId:varlong refVersion:varint subjId:varlong subjVersion:varint
+ *                 score:float distance:float
+ *         | REFERENCE_ONLY type:byte id:varlong version:varint
+ *         | SUBJECT_ONLY type:byte id:varlong version:varint
+ * </pre>
+ * The ids are written as zigzag encoded differences with the previous id of
+ * the same side, so that the ids of data sorted by id take one or two bytes.
+ * <p>
+ * The objects not uploaded yet are left out: their ids are only valid during
+ * the session which created them, and would designate other objects later.
+ */
+public final class MatchResultsFile {
+
+    /** The extension of the files, without dot. */
+    public static final String EXTENSION = "conflation";
+
+    private static final byte[] MAGIC = "CFLM".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int END = 0;
+    private static final int MATCH = 1;
+    private static final int REFERENCE_ONLY = 2;
+    private static final int SUBJECT_ONLY = 3;
+
+    private static final OsmPrimitiveType[] TYPES = {
+        OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+
+    private MatchResultsFile() {
+    }
+
+    /**
+     * Computes the fingerprint identifying the settings of a match finder.
+     * @param configuration the description of the settings, see
+     *      {@link SimpleMatchSettings#getMatchFinderConfiguration()}, may be null
+     * @return the 64 bits FNV-1a hash of the description, 0 if it is null
+     */
+    public static long fingerprint(String configuration) {
+        if (configuration == null) {
+            return 0;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : configuration.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Saves conflation results.
+     * @param file the file to write
+     * @param configuration the description of the settings of the match finder, may be null
+     * @param matches the matches
+     * @param referenceOnly the unmatched reference objects
+     * @param subjectOnly the unmatched subject objects
+     * @return the number of matches and objects left out because they involve new objects
+     * @throws IOException if the file cannot be written
+     */
+    public static int save(File file, String configuration, Iterable<SimpleMatch> matches,
+            Iterable<OsmPrimitive> referenceOnly, Iterable<OsmPrimitive> subjectOnly) throws IOException {
+        int skipped = 0;
+        try (Writer writer = new Writer(new FileOutputStream(file), fingerprint(configuration))) {
+            for (SimpleMatch m : matches) {
+                if (!writer.writeMatch(m)) {
+                    skipped++;
+                }
+            }
+            for (OsmPrimitive p : referenceOnly) {
+                if (!writer.writeReferenceOnly(p)) {
+                    skipped++;
+                }
+            }
+            for (OsmPrimitive p : subjectOnly) {
+                if (!writer.writeSubjectOnly(p)) {
+                    skipped++;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Restores conflation results, looking up their objects in the given data sets.
+     * @param file the file to read
+     * @param referenceDataSet the reference data
+     * @param subjectDataSet the subject data
+     * @return the restored results
+     * @throws IOException if the file cannot be read or is not a file of conflation results
+     */
+    public static Restored restore(File file, DataSet referenceDataSet, DataSet subjectDataSet) throws IOException {
+        Restored restored = new Restored(referenceDataSet, subjectDataSet);
+        try (InputStream in = new FileInputStream(file)) {
+            restored.fingerprint = read(in, restored);
+        }
+        // one insertion sorts the matches once
+        restored.matches.addAll(restored.matchBuffer);
+        restored.matchBuffer.clear();
+        return restored;
+    }
+
+    /**
+     * Reads conflation results as a stream.
+     * @param in the data, as written by a {@link Writer}
+     * @param handler receives the records, in the order they were written
+     * @return the fingerprint of the settings of the match finder
+     * @throws IOException if the data cannot be read or are not conflation results
+     */
+    public static long read(InputStream in, Handler handler) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Not a file of conflation results");
+            }
+        }
+        int version = data.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported version of conflation results: " + version);
+        }
+        long fingerprint = data.readLong();
+        long lastReferenceId = 0;
+        long lastSubjectId = 0;
+        while (true) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+            case END:
+                return fingerprint;
+            case MATCH: {
+                int types = data.readUnsignedByte();
+                long referenceId = lastReferenceId + readZigZag(data);
+                int referenceVersion = readVarInt(data);
+                long subjectId = lastSubjectId + readZigZag(data);
+                int subjectVersion = readVarInt(data);
+                float score = data.readFloat();
+                float distance = data.readFloat();
+                handler.match(type(types >> 2), referenceId, referenceVersion,
+                        type(types & 3), subjectId, subjectVersion, score, distance);
+                lastReferenceId = referenceId;
+                lastSubjectId = subjectId;
+                break;
+            }
+            case REFERENCE_ONLY: {
+                OsmPrimitiveType type = type(data.readUnsignedByte());
+                long id = lastReferenceId + readZigZag(data);
+                handler.referenceOnly(type, id, readVarInt(data));
+                lastReferenceId = id;
+                break;
+            }
+            case SUBJECT_ONLY: {
+                OsmPrimitiveType type = type(data.readUnsignedByte());
+                long id = lastSubjectId + readZigZag(data);
+                handler.subjectOnly(type, id, readVarInt(data));
+                lastSubjectId = id;
+                break;
+            }
+            default:
+                throw new IOException("Invalid record in conflation results: " + tag);
+            }
+        }
+    }
+
+    private static OsmPrimitiveType type(int index) throws IOException {
+        if (index >= TYPES.length) {
+            throw new IOException("Invalid object type in conflation results: " + index);
+        }
+        return TYPES[index];
+    }
+
+    private static int typeIndex(OsmPrimitive p) {
+        switch (p.getType()) {
+        case NODE:
+            return 0;
+        case WAY:
+            return 1;
+        case RELATION:
+            return 2;
+        default:
+            throw new IllegalArgumentException("Unsupported object type: " + p.getType());
+        }
+    }
+
+    private static long readZigZag(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IOException("Invalid number in conflation results");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        return (int) readZigZag(in);
+    }
+
+    /**
+     * Receives the records of conflation results, see {@link MatchResultsFile#read}.
+     */
+    public interface Handler {
+        void match(OsmPrimitiveType referenceType, long referenceId, int referenceVersion,
+                OsmPrimitiveType subjectType, long subjectId, int subjectVersion, float score, float distance);
+
+        void referenceOnly(OsmPrimitiveType type, long id, int version);
+
+        void subjectOnly(OsmPrimitiveType type, long id, int version);
+    }
+
+    /**
+     * Writes conflation results as a stream. The results are complete once
+     * the writer is closed.
+     */
+    public static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private long lastReferenceId;
+        private long lastSubjectId;
+
+        /**
+         * @param out receives the data, closed with the writer
+         * @param fingerprint the fingerprint of the settings of the match finder, see {@link #fingerprint}
+         * @throws IOException if the header cannot be written
+         */
+        public Writer(OutputStream out, long fingerprint) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.out.write(MAGIC);
+            this.out.writeByte(FORMAT_VERSION);
+            this.out.writeLong(fingerprint);
+        }
+
+        /**
+         * Writes a match, unless one of its objects is new.
+         * @param match the match
+         * @return false if the match was left out
+         * @throws IOException if the match cannot be written
+         */
+        public boolean writeMatch(SimpleMatch match) throws IOException {
+            OsmPrimitive r = match.getReferenceObject();
+            OsmPrimitive s = match.getSubjectObject();
+            if (r.isNew() || s.isNew()) {
+                return false;
+            }
+            out.writeByte(MATCH);
+            out.writeByte(typeIndex(r) << 2 | typeIndex(s));
+            writeZigZag(r.getUniqueId() - lastReferenceId);
+            writeZigZag(r.getVersion());
+            writeZigZag(s.getUniqueId() - lastSubjectId);
+            writeZigZag(s.getVersion());
+            out.writeFloat((float) match.score);
+            out.writeFloat((float) match.distance);
+            lastReferenceId = r.getUniqueId();
+            lastSubjectId = s.getUniqueId();
+            return true;
+        }
+
+        /**
+         * Writes an unmatched reference object, unless it is new.
+         * @param p the object
+         * @return false if the object was left out
+         * @throws IOException if the object cannot be written
+         */
+        public boolean writeReferenceOnly(OsmPrimitive p) throws IOException {
+            if (p.isNew()) {
+                return false;
+            }
+            out.writeByte(REFERENCE_ONLY);
+            out.writeByte(typeIndex(p));
+            writeZigZag(p.getUniqueId() - lastReferenceId);
+            writeZigZag(p.getVersion());
+            lastReferenceId = p.getUniqueId();
+            return true;
+        }
+
+        /**
+         * Writes an unmatched subject object, unless it is new.
+         * @param p the object
+         * @return false if the object was left out
+         * @throws IOException if the object cannot be written
+         */
+        public boolean writeSubjectOnly(OsmPrimitive p) throws IOException {
+            if (p.isNew()) {
+                return false;
+            }
+            out.writeByte(SUBJECT_ONLY);
+            out.writeByte(typeIndex(p));
+            writeZigZag(p.getUniqueId() - lastSubjectId);
+            writeZigZag(p.getVersion());
+            lastSubjectId = p.getUniqueId();
+            return true;
+        }
+
+        private void writeZigZag(long value) throws IOException {
+            long v = (value << 1) ^ (value >> 63);
+            while ((v & ~0x7fL) != 0) {
+                out.writeByte((int) (v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            out.writeByte((int) v);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(END);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Conflation results restored from a file. The objects missing from the
+     * data sets are left out, the objects whose version changed are kept.
+     */
+    public static final class Restored implements Handler {
+        private final DataSet referenceDataSet;
+        private final DataSet subjectDataSet;
+        private final SimpleMatchList matches = new SimpleMatchList();
+        private final List<SimpleMatch> matchBuffer = new ArrayList<>();
+        private final List<OsmPrimitive> referenceOnly = new ArrayList<>();
+        private final List<OsmPrimitive> subjectOnly = new ArrayList<>();
+        private long fingerprint;
+        private int missingCount;
+        private int changedCount;
+
+        Restored(DataSet referenceDataSet, DataSet subjectDataSet) {
+            this.referenceDataSet = referenceDataSet;
+            this.subjectDataSet = subjectDataSet;
+        }
+
+        @Override
+        public void match(OsmPrimitiveType referenceType, long referenceId, int referenceVersion,
+                OsmPrimitiveType subjectType, long subjectId, int subjectVersion, float score, float distance) {
+            OsmPrimitive r = lookup(referenceDataSet, referenceType, referenceId, referenceVersion);
+            OsmPrimitive s = lookup(subjectDataSet, subjectType, subjectId, subjectVersion);
+            if (r != null && s != null) {
+                matchBuffer.add(new SimpleMatch(r, s, score, distance));
+            }
+        }
+
+        @Override
+        public void referenceOnly(OsmPrimitiveType type, long id, int version) {
+            OsmPrimitive p = lookup(referenceDataSet, type, id, version);
+            if (p != null) {
+                referenceOnly.add(p);
+            }
+        }
+
+        @Override
+        public void subjectOnly(OsmPrimitiveType type, long id, int version) {
+            OsmPrimitive p = lookup(subjectDataSet, type, id, version);
+            if (p != null) {
+                subjectOnly.add(p);
+            }
+        }
+
+        private OsmPrimitive lookup(DataSet dataSet, OsmPrimitiveType type, long id, int version) {
+            if (id <= 0) {
+                // the id of a new object, which may now be given to another one
+                missingCount++;
+                return null;
+            }
+            OsmPrimitive p = dataSet.getPrimitiveById(id, type);
+            if (p == null || p.isDeleted()) {
+                missingCount++;
+                return null;
+            }
+            if (p.getVersion() != version) {
+                changedCount++;
+            }
+            return p;
+        }
+
+        /**
+         * @return the restored matches
+         */
+        public SimpleMatchList getMatches() {
+            return matches;
+        }
+
+        /**
+         * @return the unmatched reference objects
+         */
+        public List<OsmPrimitive> getReferenceOnly() {
+            return referenceOnly;
+        }
+
+        /**
+         * @return the unmatched subject objects
+         */
+        public List<OsmPrimitive> getSubjectOnly() {
+            return subjectOnly;
+        }
+
+        /**
+         * @return all the restored reference objects, matched or not
+         */
+        public List<OsmPrimitive> getReferenceObjects() {
+            return collect(referenceOnly, true);
+        }
+
+        /**
+         * @return all the restored subject objects, matched or not
+         */
+        public List<OsmPrimitive> getSubjectObjects() {
+            return collect(subjectOnly, false);
+        }
+
+        private List<OsmPrimitive> collect(Collection<OsmPrimitive> unmatched, boolean reference) {
+            List<OsmPrimitive> objects = new ArrayList<>();
+            for (SimpleMatch m : matches) {
+                objects.add(reference ? m.getReferenceObject() : m.getSubjectObject());
+            }
+            objects.addAll(unmatched);
+            return objects;
+        }
+
+        /**
+         * @return the fingerprint of the settings of the match finder which computed the results
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * @return the number of objects not found in the data sets
+         */
+        public int getMissingCount() {
+            return missingCount;
+        }
+
+        /**
+         * @return the number of objects whose version changed since the results were saved
+         */
+        public int getChangedCount() {
+            return changedCount;
+        }
+    }
+}
@@ -5,60 +5,126 @@ package org.openstreetmap.josm.plugins.conflation;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.plugins.jts.JTSConverter;
 
+import com.vividsolutions.jcs.conflate.polygonmatch.AreaFilterFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.CombinatorialFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationEngine;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationJob;
+import com.vividsolutions.jcs.conflate.polygonmatch.ConflationResult;
+import com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder;
 import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.MatchingMetrics;
 import com.vividsolutions.jcs.conflate.polygonmatch.Matches;
+import com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TargetUnioningFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TiledConflation;
+import com.vividsolutions.jcs.conflate.polygonmatch.TopMatchDisambiguatingFCMatchFinder;
 import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.DynamicIndexedFeatureCollection;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.feature.FeatureDataset;
 import com.vividsolutions.jump.feature.FeatureSchema;
 import com.vividsolutions.jump.feature.IndexedFeatureCollection;
-import com.vividsolutions.jump.task.TaskMonitor;
+import com.vividsolutions.jump.geom.HilbertOrder;
+import com.vividsolutions.jump.index.SpatialIndexType;
 
 public final class MatchesComputation {
 
+    private static volatile MatchingMetrics lastRunMetrics;
+
+    static {
+        ConflationJfrEvents jfrEvents = ConflationJfrEvents.create();
+        if (jfrEvents != null) {
+            MatchingMetrics.addListener(jfrEvents);
+        }
+    }
+
     private MatchesComputation() {}
 
     /**
      * Generates a list of matches from the given user settings.
+     * The time spent in each stage is written to the log.
      * @param settings the setting to use: list of objects to match, the match finder to use...
      * @param monitor progress monitor for report
      * @return the list of match found
      */
     public static Collection<SimpleMatch> generateMatches(SimpleMatchSettings settings, ProgressMonitor monitor) {
+        MatchingMetrics metrics = new MatchingMetrics();
+        MatchingMetrics previousMetrics = metrics.install();
+        try {
+            return doGenerateMatches(settings, monitor);
+        } finally {
+            metrics.uninstall(previousMetrics);
+            lastRunMetrics = metrics;
+            Main.info("Conflation run summary:\n" + metrics.summary());
+        }
+    }
+
+    /**
+     * @return the stages measured during the last run, null if none
+     */
+    public static MatchingMetrics getLastRunMetrics() {
+        return lastRunMetrics;
+    }
+
+    private static Collection<SimpleMatch> doGenerateMatches(SimpleMatchSettings settings, ProgressMonitor monitor) {
         monitor.subTask("Generating matches");
 
-        // create Features and collections from primitive selections
-        HashSet<OsmPrimitive> allPrimitives = new HashSet<>();
-        HashSet<OsmPrimitive> refPrimitives = new HashSet<>(settings.getReferenceSelection());
-        HashSet<OsmPrimitive> subPrimitives = new HashSet<>(settings.getSubjectSelection());
-        allPrimitives.addAll(refPrimitives);
-        allPrimitives.addAll(subPrimitives);
-        FeatureCollection allFeatures = createFeatureCollection(allPrimitives);
+        // build matcher
+        final FCMatchFinder finder = settings.getMatchFinder();
+        // a finder filtering its candidates makes an indexed copy of them, which is reused by the
+        // next runs only when filtered from a collection built for the selection, not from the layer
+        boolean useLayerIndex = settings.getSpatialIndexType() == SpatialIndexType.AUTOMATIC
+                && !filtersCandidates(finder);
 
-        FeatureCollection refColl = new FeatureDataset(allFeatures.getFeatureSchema());
-        FeatureCollection subColl = new FeatureDataset(allFeatures.getFeatureSchema());
-        for (Feature f : allFeatures.getFeatures()) {
-            OsmFeature osmFeature = (OsmFeature) f;
-            if (refPrimitives.contains(osmFeature.getPrimitive()))
-                refColl.add(osmFeature);
-            if (subPrimitives.contains(osmFeature.getPrimitive()))
-                subColl.add(osmFeature);
+        // create Features and indexed collections from primitive selections, reusing the
+        // ones of a previous run when the selection and the data are unchanged
+        FeatureIndexRegistry registry = FeatureIndexRegistry.getInstance();
+        List<Object> indexVariant = Arrays.asList(settings.getSpatialIndexType(), settings.getSpatialIndexNodeCapacity());
+        List<Object> subjectVariant = Arrays.asList(settings.getSpatialIndexType(), settings.getSpatialIndexNodeCapacity(),
+                useLayerIndex);
+        FeatureCollection refColl = registry.get(settings.getReferenceDataSet(), FeatureIndexRegistry.Role.REFERENCE,
+                settings.getReferenceSelection(), indexVariant);
+        FeatureCollection subColl = registry.get(settings.getSubjectDataSet(), FeatureIndexRegistry.Role.SUBJECT,
+                settings.getSubjectSelection(), subjectVariant);
+        // a primitive selected on both sides must be represented by a single feature
+        boolean sameDataSet = settings.getReferenceDataSet() == settings.getSubjectDataSet();
+        if (refColl == null) {
+            // Index the collection for efficient search with WindowMatcher
+            refColl = createIndexedCollection(createFeatureCollection(settings.getReferenceSelection(),
+                    sameDataSet ? sharedFeatures(subColl) : null), settings);
+            registry.put(settings.getReferenceDataSet(), FeatureIndexRegistry.Role.REFERENCE,
+                    settings.getReferenceSelection(), indexVariant, refColl);
+        }
+        if (subColl == null) {
+            Function<OsmPrimitive, OsmFeature> shared = sameDataSet ? sharedFeatures(refColl) : null;
+            if (useLayerIndex && DataSetFeatureCollection.isEfficientFor(settings.getSubjectDataSet(), settings.getSubjectSelection())) {
+                // candidates are searched directly in the layer index, no copy needed
+                subColl = new DataSetFeatureCollection(settings.getSubjectDataSet(), settings.getSubjectSelection(), shared);
+            } else {
+                subColl = createIndexedCollection(createFeatureCollection(settings.getSubjectSelection(), shared), settings);
+            }
+            registry.put(settings.getSubjectDataSet(), FeatureIndexRegistry.Role.SUBJECT,
+                    settings.getSubjectSelection(), subjectVariant, subColl);
         }
-
-        // Index the collection for efficient search with WindowMatcher
-        refColl = new IndexedFeatureCollection(refColl);
-        subColl = new IndexedFeatureCollection(subColl);
 
         //TODO: pass to MatchFinderPanel to use as hint/default for DistanceMatchers
         // get maximum possible distance so scores can be scaled (FIXME: not quite accurate)
@@ -70,18 +136,98 @@ public final class MatchesComputation {
         //     envelope.getMaxX(),
         //     envelope.getMaxY());
 
-        // build matcher
-        FCMatchFinder finder = settings.getMatchFinder();
-
         // FIXME: ignore/filter duplicate objects (i.e. same object in both sets)
         // FIXME: fix match functions to work on point/linestring features as well
-        // find matches
-        Map<Feature, Matches> map = finder.match(refColl, subColl, new TaskMonitorJosmAdapter(monitor));
+        // find matches, the subject collection being indexed already
+        ConflationJob job = new ConflationJob(refColl, subColl, () -> finder);
+        job.setSpatialIndexType(null);
+        job.setTargetTimeBudget(settings.getTargetTimeBudget());
+        job.setTimeLimit(settings.getTimeLimit());
+        double halo = settings.getTileSize() > 0 ? TiledConflation.findHalo(finder) : -1;
+        if (settings.getTileSize() > 0 && halo < 0) {
+            Main.warn(tr("Conflation: the match finder has no window limiting its candidates,"
+                    + " objects matched at once"));
+        }
+        if (halo >= 0) {
+            return generateTiledMatches(job, settings, halo, monitor);
+        }
+        ConflationResult result = ConflationEngine.run(job, new TaskMonitorJosmAdapter(monitor));
+        Map<Feature, Matches> map = result.getMatches();
+        warnIncomplete(result);
 
         monitor.subTask("Finishing");
-
-        // convert to simple one-to-one match
+        MatchingMetrics.Stage finishingStage = MatchingMetrics.begin("Finishing", map.size());
         ArrayList<SimpleMatch> list = new ArrayList<>();
+        addSimpleMatches(map, list);
+        finishingStage.end(list.size());
+        return list;
+    }
+
+    /**
+     * Matches the objects tile by tile (see {@link TiledConflation}), so that the memory
+     * used by the match finder is bounded by the size of a tile. The tiles are matched in
+     * parallel when the settings can create a finder for each, one at a time otherwise.
+     * The matches of each tile are converted as soon as they are final.
+     */
+    private static Collection<SimpleMatch> generateTiledMatches(ConflationJob job, SimpleMatchSettings settings,
+            double halo, ProgressMonitor monitor) {
+        Supplier<FCMatchFinder> factory = settings.getMatchFinderFactory();
+        int threads = factory != null ? Runtime.getRuntime().availableProcessors() : 1;
+        ConflationJob tiledJob = job;
+        if (factory != null) {
+            tiledJob = new ConflationJob(job.getTargets(), job.getCandidates(), factory);
+            tiledJob.setTargetTimeBudget(job.getTargetTimeBudget());
+            tiledJob.setTimeLimit(job.getTimeLimit());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            TiledConflation tiling = new TiledConflation(new ConflationEngine(executor), settings.getTileSize(), halo);
+            tiling.setMaxTilesInProgress(threads);
+            tiling.setUniqueCandidates(TiledConflation.hasUniqueCandidates(settings.getMatchFinder()));
+            ArrayList<SimpleMatch> list = new ArrayList<>();
+            ConflationResult result = tiling.run(tiledJob, new TaskMonitorJosmAdapter(monitor),
+                    matches -> addSimpleMatches(matches, list));
+            warnIncomplete(result);
+            return list;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tells if a match finder filters the candidate collection before matching.
+     */
+    private static boolean filtersCandidates(FCMatchFinder finder) {
+        if (finder instanceof AreaFilterFCMatchFinder) {
+            return true;
+        } else if (finder instanceof DisambiguatingFCMatchFinder) {
+            return filtersCandidates(((DisambiguatingFCMatchFinder) finder).getMatchFinder());
+        } else if (finder instanceof TopMatchDisambiguatingFCMatchFinder) {
+            return filtersCandidates(((TopMatchDisambiguatingFCMatchFinder) finder).getMatchFinder());
+        } else if (finder instanceof OneToOneFCMatchFinder) {
+            return filtersCandidates(((OneToOneFCMatchFinder) finder).getMatchFinder());
+        } else if (finder instanceof TargetUnioningFCMatchFinder) {
+            return filtersCandidates(((TargetUnioningFCMatchFinder) finder).getMatchFinder());
+        } else if (finder instanceof CombinatorialFCMatchFinder) {
+            return filtersCandidates(((CombinatorialFCMatchFinder) finder).getMatchFinder());
+        }
+        return false;
+    }
+
+    private static void warnIncomplete(ConflationResult result) {
+        if (!result.getSkippedTargets().isEmpty()) {
+            Main.warn(tr("Conflation: {0} objects exceeded the time budget and were not matched",
+                    result.getSkippedTargets().size()));
+        }
+        if (result.isDeadlineReached()) {
+            Main.warn(tr("Conflation: time limit reached, only part of the objects were matched"));
+        }
+    }
+
+    /**
+     * Converts matches to simple one-to-one matches.
+     */
+    private static void addSimpleMatches(Map<Feature, Matches> map, List<SimpleMatch> list) {
         for (Map.Entry<Feature, Matches> entry: map.entrySet()) {
             OsmFeature target = (OsmFeature) entry.getKey();
             OsmFeature subject = (OsmFeature) entry.getValue().getTopMatch();
@@ -89,13 +235,12 @@ public final class MatchesComputation {
                 list.add(new SimpleMatch(target.getPrimitive(), subject.getPrimitive(),
                         entry.getValue().getTopScore()));
         }
-        return list;
     }
 
     /**
      * Create FeatureSchema using union of all keys from all selected primitives
      */
-    private static FeatureSchema createSchema(Collection<OsmPrimitive> prims) {
+    static FeatureSchema createSchema(Collection<OsmPrimitive> prims) {
         Set<String> keys = new HashSet<>();
         for (OsmPrimitive prim : prims) {
             keys.addAll(prim.getKeys().keySet());
@@ -108,58 +253,68 @@ public final class MatchesComputation {
         return schema;
     }
 
-    private static FeatureCollection createFeatureCollection(Collection<OsmPrimitive> prims) {
-        FeatureDataset dataset = new FeatureDataset(createSchema(prims));
+    /**
+     * Create a feature for each primitive.
+     * @param prims the primitives to convert
+     * @param sharedFeatures gives the features already converted for the other side of the
+     *      matching, reused when a primitive is in both selections so identical objects are
+     *      still recognized as such, may be null
+     */
+    private static FeatureCollection createFeatureCollection(Collection<OsmPrimitive> prims,
+            Function<OsmPrimitive, OsmFeature> sharedFeatures) {
+        MatchingMetrics.Stage stage = MatchingMetrics.begin("Conversion", prims.size());
+        Set<OsmPrimitive> uniquePrims = new LinkedHashSet<>(prims);
         //TODO: use factory instead of passing converter
-        JTSConverter converter = new JTSConverter(true);
-        for (OsmPrimitive prim : prims) {
-            dataset.add(new OsmFeature(prim, converter));
+        JTSConverter converter = OsmFeature.createConverter();
+        List<Feature> features = new ArrayList<>(uniquePrims.size());
+        for (OsmPrimitive prim : uniquePrims) {
+            OsmFeature feature = sharedFeatures != null ? sharedFeatures.apply(prim) : null;
+            features.add(feature != null ? feature : new OsmFeature(prim, converter));
         }
+        // the features are kept in curve order, so that the stages going through the collection
+        // process neighbours one after the other; the quadtree and grid indexes also list the
+        // features of a node or cell in this order (the STR-trees sort them anyway)
+        FeatureDataset dataset = new FeatureDataset(createSchema(uniquePrims));
+        dataset.addAll(HilbertOrder.sort(features));
+        stage.end(0);
         return dataset;
     }
 
     /**
-     * Progress monitor for use with JCS linked to a JOSM ProgressMonitor.
+     * Gives access to the features of a collection by primitive.
+     * @param fc a collection of OsmFeature, may be null
+     * @return a function returning the feature of a primitive, or null if not in the collection
      */
-    private static class TaskMonitorJosmAdapter implements TaskMonitor {
-
-        private final ProgressMonitor josmMonitor;
-        private final HashMap<String, String> translations = new HashMap<>();
-        {
-            translations.put("Finding matches", tr("Finding matches"));
-            translations.put("Sorting scores", tr("Sorting scores"));
-            translations.put("Discarding inferior matches", tr("Discarding inferior matches"));
+    private static Function<OsmPrimitive, OsmFeature> sharedFeatures(FeatureCollection fc) {
+        if (fc == null) {
+            return null;
         }
-
-        TaskMonitorJosmAdapter(ProgressMonitor josmMonitor) {
-            this.josmMonitor = josmMonitor;
+        if (fc instanceof DataSetFeatureCollection) {
+            // do not convert the whole collection, only the requested primitives
+            return ((DataSetFeatureCollection) fc)::getFeature;
         }
-
-        @Override
-        public void report(String description) {
-            josmMonitor.subTask(translations.getOrDefault(description, description));
-        }
-
-        @Override
-        public void report(int itemsDone, int totalItems, String itemDescription) {
-            josmMonitor.setTicksCount(totalItems);
-            josmMonitor.setTicks(itemsDone);
-        }
-
-        @Override
-        public void report(Exception exception) {
-            throw new UnsupportedOperationException("Not supported yet.", exception);
+        Map<OsmPrimitive, OsmFeature> features = new HashMap<>();
+        for (Feature f : fc) {
+            features.put(((OsmFeature) f).getPrimitive(), (OsmFeature) f);
         }
+        return features::get;
+    }
 
-        @Override
-        public void allowCancellationRequests() {
+    private static FeatureCollection createIndexedCollection(FeatureCollection fc, SimpleMatchSettings settings) {
+        SpatialIndexType type = settings.getSpatialIndexType();
+        if (type == SpatialIndexType.AUTOMATIC) {
+            type = SpatialIndexType.choose(fc);
         }
-
-        @Override
-        public boolean isCancelRequested() {
-            return josmMonitor.isCanceled();
+        MatchingMetrics.Stage stage = MatchingMetrics.begin("Indexing (" + type + ")", fc.size());
+        try {
+            if (type == SpatialIndexType.STRTREE) {
+                // same packed STR-tree, but can follow the moves of the primitives
+                return new DynamicIndexedFeatureCollection(fc, settings.getSpatialIndexNodeCapacity());
+            }
+            return new IndexedFeatureCollection(fc, type.create(fc, settings.getSpatialIndexNodeCapacity()));
+        } finally {
+            stage.end(0);
         }
-
     }
 
 }
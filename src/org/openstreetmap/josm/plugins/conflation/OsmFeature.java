@@ -2,6 +2,9 @@
 // Copyright 2012 by Josh Doe and others.
 package org.openstreetmap.josm.plugins.conflation;
 
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequenceFactory;
 import com.vividsolutions.jump.feature.AbstractBasicFeature;
 import com.vividsolutions.jump.feature.AttributeType;
 import com.vividsolutions.jump.feature.FeatureSchema;
@@ -10,13 +13,20 @@ import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.plugins.jts.JTSConverter;
 
 public class OsmFeature extends AbstractBasicFeature {
+    /**
+     * Factory of the converted geometries: coordinates are stored as packed
+     * x/y doubles (16 bytes per vertex) instead of one Coordinate object per vertex.
+     */
+    public static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(
+            new PackedCoordinateSequenceFactory(PackedCoordinateSequenceFactory.DOUBLE, 2));
+
     private Object[] attributes;
     private OsmPrimitive primitive;
     private JTSConverter converter;
 
     /**
      * Create a copy of the OSM geometry
-     * TODO: update from underlying primitive
+     * (see {@link #convertGeometry()} to update it from the underlying primitive)
      */
     public OsmFeature(OsmPrimitive prim, JTSConverter jtsConverter) {
         super(new FeatureSchema());
@@ -31,10 +41,28 @@ public class OsmFeature extends AbstractBasicFeature {
         if (jtsConverter != null)
             converter = jtsConverter;
         else
-            converter = new JTSConverter(true);
+            converter = createConverter();
         setGeometry(converter.convert(prim));
     }
 
+    /**
+     * Creates a converter producing geometries with packed coordinates,
+     * see {@link #GEOMETRY_FACTORY}.
+     * @return a new converter
+     */
+    public static JTSConverter createConverter() {
+        return new JTSConverter(GEOMETRY_FACTORY, true);
+    }
+
+    /**
+     * Converts again the geometry of the underlying primitive, e.g. after its nodes moved.
+     * The geometry of this feature is not changed.
+     * @return the current geometry of the primitive
+     */
+    public Geometry convertGeometry() {
+        return converter.convert(primitive);
+    }
+
     @Override
     public void setAttributes(Object[] attributes) {
         this.attributes = attributes;
@@ -0,0 +1,345 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonString;
+import javax.json.JsonStructure;
+import javax.json.JsonValue;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.plugins.jts.JTSConverter;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jump.feature.AttributeType;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import com.vividsolutions.jump.feature.FeatureStore;
+import com.vividsolutions.jump.feature.IndexedFeatureCollection;
+import com.vividsolutions.jump.index.SpatialIndexType;
+
+/**
+ * Converts the data sent to the conflation service to plain features, each
+ * identified by a string for the responses: "type/id" for OSM objects, the id
+ * or the position in the collection for GeoJSON features.
+ * <p>
+ * Unlike {@link OsmFeature}, the features do not keep their primitive, so
+ * that the features of several requests can be matched together.
+ */
+final class ServiceFeatures {
+
+    private static final String GEOMETRY = "__GEOMETRY__";
+
+    /** The attribute keeping the identifiers of the features in feature files. */
+    static final String ID_ATTRIBUTE = "@id";
+
+    private ServiceFeatures() {
+    }
+
+    /**
+     * Converts the tagged objects of OSM data.
+     * @param dataSet the data
+     * @return the features and their identifiers, in the order of the data
+     */
+    static Map<Feature, String> fromDataSet(DataSet dataSet) {
+        List<OsmPrimitive> prims = new ArrayList<>();
+        for (OsmPrimitive p : dataSet.allNonDeletedCompletePrimitives()) {
+            if (p.isTagged()) {
+                prims.add(p);
+            }
+        }
+        FeatureSchema schema = MatchesComputation.createSchema(prims);
+        JTSConverter converter = OsmFeature.createConverter();
+        Map<Feature, String> features = new LinkedHashMap<>();
+        for (OsmPrimitive p : prims) {
+            Geometry geometry = converter.convert(p);
+            if (geometry == null) {
+                continue;
+            }
+            Feature f = new BasicFeature(schema);
+            f.setGeometry(geometry);
+            for (Map.Entry<String, String> tag : p.getKeys().entrySet()) {
+                f.setAttribute(tag.getKey(), tag.getValue());
+            }
+            features.put(f, p.getType().getAPIName() + "/" + p.getUniqueId());
+        }
+        return features;
+    }
+
+    /**
+     * Reads GeoJSON data: a FeatureCollection, a Feature or a geometry, in
+     * WGS84 coordinates. The properties become string attributes.
+     * @param in the GeoJSON data
+     * @param projection the projection of the features created
+     * @return the features and their identifiers, in the order of the data
+     * @throws IllegalArgumentException if the data are not valid GeoJSON
+     */
+    static Map<Feature, String> readGeoJson(InputStream in, Projection projection) {
+        JsonStructure json;
+        try (JsonReader reader = Json.createReader(in)) {
+            json = reader.read();
+        } catch (JsonException e) {
+            throw new IllegalArgumentException("Invalid JSON: " + e.getMessage(), e);
+        }
+        if (!(json instanceof JsonObject)) {
+            throw new IllegalArgumentException("A GeoJSON object is expected");
+        }
+        JsonObject root = (JsonObject) json;
+        List<JsonObject> items = new ArrayList<>();
+        switch (root.getString("type", "")) {
+        case "FeatureCollection":
+            for (JsonValue v : array(root.get("features"), "features")) {
+                items.add(object(v, "a feature"));
+            }
+            break;
+        case "Feature":
+            items.add(root);
+            break;
+        default:
+            items.add(Json.createObjectBuilder().add("type", "Feature").add("geometry", root).build());
+        }
+        Set<String> keys = new LinkedHashSet<>();
+        for (JsonObject item : items) {
+            JsonObject properties = getObject(item, "properties");
+            if (properties != null) {
+                keys.addAll(properties.keySet());
+            }
+        }
+        FeatureSchema schema = new FeatureSchema();
+        schema.addAttribute(GEOMETRY, AttributeType.GEOMETRY);
+        for (String key : keys) {
+            schema.addAttribute(key, AttributeType.STRING);
+        }
+        GeometryConverter converter = new GeometryConverter(projection);
+        Map<Feature, String> features = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            JsonObject item = items.get(i);
+            JsonObject geometry = getObject(item, "geometry");
+            if (geometry == null) {
+                continue;
+            }
+            Feature f = new BasicFeature(schema);
+            f.setGeometry(converter.convert(geometry));
+            JsonObject properties = getObject(item, "properties");
+            if (properties != null) {
+                for (Map.Entry<String, JsonValue> p : properties.entrySet()) {
+                    f.setAttribute(p.getKey(), toAttribute(p.getValue()));
+                }
+            }
+            JsonValue id = item.get("id");
+            features.put(f, id == null || id.getValueType() == JsonValue.ValueType.NULL ? Integer.toString(i)
+                    : id instanceof JsonString ? ((JsonString) id).getString() : id.toString());
+        }
+        return features;
+    }
+
+    /**
+     * @param features features of the same schema
+     * @return an indexed collection of the features
+     */
+    static IndexedFeatureCollection index(Iterable<Feature> features) {
+        FeatureDataset dataset = null;
+        for (Feature f : features) {
+            if (dataset == null) {
+                dataset = new FeatureDataset(f.getSchema());
+            }
+            dataset.add(f);
+        }
+        if (dataset == null) {
+            dataset = new FeatureDataset(new FeatureSchema());
+        }
+        return new IndexedFeatureCollection(dataset,
+                SpatialIndexType.choose(dataset).create(dataset, SpatialIndexType.DEFAULT_NODE_CAPACITY));
+    }
+
+    /**
+     * Writes features to a feature file (see {@link FeatureStore}), their
+     * identifiers in the {@link #ID_ATTRIBUTE} attribute.
+     * @param features features of the same schema, and their identifiers
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    static void writeFeatureFile(final Map<Feature, String> features, File file) throws IOException {
+        final FeatureSchema source = features.isEmpty() ? new FeatureSchema()
+                : features.keySet().iterator().next().getSchema();
+        final FeatureSchema schema = new FeatureSchema();
+        for (int i = 0; i < source.getAttributeCount(); i++) {
+            schema.addAttribute(source.getAttributeName(i), source.getAttributeType(i));
+        }
+        if (!schema.hasAttribute(ID_ATTRIBUTE)) {
+            schema.addAttribute(ID_ATTRIBUTE, AttributeType.STRING);
+        }
+        final int idIndex = schema.getAttributeIndex(ID_ATTRIBUTE);
+        // the copies with the identifier are created as they are written
+        FeatureStore.write(file, schema, () -> features.entrySet().stream().map(e -> {
+            Feature f = new BasicFeature(schema);
+            for (int i = 0; i < source.getAttributeCount(); i++) {
+                f.setAttribute(i, e.getKey().getAttribute(i));
+            }
+            f.setAttribute(idIndex, e.getValue());
+            return f;
+        }).iterator());
+    }
+
+    /**
+     * @param value a JSON value, may be null
+     * @param what the description of the value, for the error message
+     * @return the value as an array
+     * @throws IllegalArgumentException if the value is not an array
+     */
+    private static JsonArray array(JsonValue value, String what) {
+        if (!(value instanceof JsonArray)) {
+            throw new IllegalArgumentException("An array is expected for " + what);
+        }
+        return (JsonArray) value;
+    }
+
+    /**
+     * @param value a JSON value, may be null
+     * @param what the description of the value, for the error message
+     * @return the value as an object
+     * @throws IllegalArgumentException if the value is not an object
+     */
+    private static JsonObject object(JsonValue value, String what) {
+        if (!(value instanceof JsonObject)) {
+            throw new IllegalArgumentException("An object is expected for " + what);
+        }
+        return (JsonObject) value;
+    }
+
+    private static JsonObject getObject(JsonObject object, String name) {
+        JsonValue value = object.get(name);
+        return value instanceof JsonObject ? (JsonObject) value : null;
+    }
+
+    private static String toAttribute(JsonValue value) {
+        switch (value.getValueType()) {
+        case NULL:
+            return null;
+        case STRING:
+            return ((JsonString) value).getString();
+        default:
+            return value.toString();
+        }
+    }
+
+    /**
+     * Converts GeoJSON geometries to projected JTS geometries.
+     */
+    private static final class GeometryConverter {
+        private final Projection projection;
+        private final GeometryFactory factory = new GeometryFactory();
+
+        GeometryConverter(Projection projection) {
+            this.projection = projection;
+        }
+
+        Geometry convert(JsonObject geometry) {
+            String type = geometry.getString("type", "");
+            if ("GeometryCollection".equals(type)) {
+                JsonArray members = array(geometry.get("geometries"), "the geometries of a GeometryCollection");
+                Geometry[] geometries = new Geometry[members.size()];
+                for (int i = 0; i < geometries.length; i++) {
+                    geometries[i] = convert(object(members.get(i), "a geometry"));
+                }
+                return factory.createGeometryCollection(geometries);
+            }
+            if (geometry.get("coordinates") == null) {
+                throw new IllegalArgumentException("Missing coordinates in " + type);
+            }
+            JsonArray c = array(geometry.get("coordinates"), "the coordinates of a " + type);
+            switch (type) {
+            case "Point":
+                return point(c);
+            case "LineString":
+                return lineString(c);
+            case "Polygon":
+                return polygon(c);
+            case "MultiPoint":
+                Point[] points = new Point[c.size()];
+                for (int i = 0; i < points.length; i++) {
+                    points[i] = point(array(c.get(i), "a position"));
+                }
+                return factory.createMultiPoint(points);
+            case "MultiLineString":
+                LineString[] lines = new LineString[c.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = lineString(array(c.get(i), "the positions of a line"));
+                }
+                return factory.createMultiLineString(lines);
+            case "MultiPolygon":
+                Polygon[] polygons = new Polygon[c.size()];
+                for (int i = 0; i < polygons.length; i++) {
+                    polygons[i] = polygon(array(c.get(i), "the rings of a polygon"));
+                }
+                return factory.createMultiPolygon(polygons);
+            default:
+                throw new IllegalArgumentException("Unsupported geometry type: " + type);
+            }
+        }
+
+        private Point point(JsonArray position) {
+            return factory.createPoint(coordinate(position));
+        }
+
+        private LineString lineString(JsonArray positions) {
+            return factory.createLineString(coordinates(positions));
+        }
+
+        private Polygon polygon(JsonArray rings) {
+            if (rings.isEmpty()) {
+                throw new IllegalArgumentException("A polygon has no ring");
+            }
+            LinearRing shell = factory.createLinearRing(coordinates(array(rings.get(0), "the positions of a ring")));
+            LinearRing[] holes = new LinearRing[rings.size() - 1];
+            for (int i = 0; i < holes.length; i++) {
+                holes[i] = factory.createLinearRing(coordinates(array(rings.get(i + 1), "the positions of a ring")));
+            }
+            return factory.createPolygon(shell, holes);
+        }
+
+        private Coordinate[] coordinates(JsonArray positions) {
+            Coordinate[] coordinates = new Coordinate[positions.size()];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = coordinate(array(positions.get(i), "a position"));
+            }
+            return coordinates;
+        }
+
+        private Coordinate coordinate(JsonArray position) {
+            if (position.size() < 2 || !(position.get(0) instanceof JsonNumber)
+                    || !(position.get(1) instanceof JsonNumber)) {
+                throw new IllegalArgumentException("A position must start with two numbers: " + position);
+            }
+            EastNorth en = projection.latlon2eastNorth(new LatLon(
+                    position.getJsonNumber(1).doubleValue(), position.getJsonNumber(0).doubleValue()));
+            return new Coordinate(en.east(), en.north());
+        }
+    }
+}
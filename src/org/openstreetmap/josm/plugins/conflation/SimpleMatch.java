@@ -2,7 +2,9 @@
 // Copyright 2012 by Josh Doe and others.
 package org.openstreetmap.josm.plugins.conflation;
 
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 
 /**
@@ -18,13 +20,41 @@ public class SimpleMatch implements Comparable<SimpleMatch> {
 
     public SimpleMatch(OsmPrimitive referenceObject,
             OsmPrimitive subjectObject, double score) {
+        this(referenceObject, subjectObject, score, Main.getProjection());
+    }
+
+    /**
+     * @param referenceObject the reference primitive
+     * @param subjectObject the subject primitive
+     * @param score the score of the match
+     * @param projection the projection in which the distance between the objects is computed
+     */
+    public SimpleMatch(OsmPrimitive referenceObject,
+            OsmPrimitive subjectObject, double score, Projection projection) {
         CheckParameterUtil.ensureParameterNotNull(referenceObject, "referenceObject");
         CheckParameterUtil.ensureParameterNotNull(subjectObject, "subjectObject");
         this.referenceObject = referenceObject;
         this.subjectObject = subjectObject;
         this.score = score;
         // TODO: use distance calculated in score function, and make sure it's in meters?
-        this.distance = ConflationUtils.getCenter(referenceObject).distance(ConflationUtils.getCenter(subjectObject));
+        this.distance = ConflationUtils.getCenter(referenceObject, projection).distance(
+                ConflationUtils.getCenter(subjectObject, projection));
+    }
+
+    /**
+     * Restores a match whose distance is already known.
+     * @param referenceObject the reference primitive
+     * @param subjectObject the subject primitive
+     * @param score the score of the match
+     * @param distance the distance between the objects
+     */
+    SimpleMatch(OsmPrimitive referenceObject, OsmPrimitive subjectObject, double score, double distance) {
+        CheckParameterUtil.ensureParameterNotNull(referenceObject, "referenceObject");
+        CheckParameterUtil.ensureParameterNotNull(subjectObject, "subjectObject");
+        this.referenceObject = referenceObject;
+        this.subjectObject = subjectObject;
+        this.score = score;
+        this.distance = distance;
     }
 
     public OsmPrimitive getReferenceObject() {
@@ -3,7 +3,9 @@
 package org.openstreetmap.josm.plugins.conflation;
 
 import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jump.index.SpatialIndexType;
 import java.util.List;
+import java.util.function.Supplier;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
@@ -20,6 +22,13 @@ public class SimpleMatchSettings {
     private OsmDataLayer subjectLayer;
     private DataSet referenceDataSet;
     private FCMatchFinder matchFinder;
+    private Supplier<FCMatchFinder> matchFinderFactory;
+    private SpatialIndexType spatialIndexType = SpatialIndexType.AUTOMATIC;
+    private int spatialIndexNodeCapacity = SpatialIndexType.DEFAULT_NODE_CAPACITY;
+    private long targetTimeBudget = 0;
+    private long timeLimit = 0;
+    private double tileSize = 0;
+    private String matchFinderConfiguration;
 
     /**
      * @return the subjectSelection
@@ -118,4 +127,108 @@ public class SimpleMatchSettings {
     public void setMatchFinder(FCMatchFinder matchFinder) {
         this.matchFinder = matchFinder;
     }
+
+    /**
+     * @return the type of spatial index used to search candidates
+     */
+    public SpatialIndexType getSpatialIndexType() {
+        return spatialIndexType;
+    }
+
+    /**
+     * @param spatialIndexType the type of spatial index used to search candidates
+     */
+    public void setSpatialIndexType(SpatialIndexType spatialIndexType) {
+        this.spatialIndexType = spatialIndexType;
+    }
+
+    /**
+     * @return the node capacity of STR-tree spatial indexes
+     */
+    public int getSpatialIndexNodeCapacity() {
+        return spatialIndexNodeCapacity;
+    }
+
+    /**
+     * @param spatialIndexNodeCapacity the node capacity of STR-tree spatial indexes
+     */
+    public void setSpatialIndexNodeCapacity(int spatialIndexNodeCapacity) {
+        this.spatialIndexNodeCapacity = spatialIndexNodeCapacity;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, spent matching one object, 0 for no limit
+     */
+    public long getTargetTimeBudget() {
+        return targetTimeBudget;
+    }
+
+    /**
+     * @param targetTimeBudget the maximum time, in milliseconds, spent matching one object,
+     *      0 for no limit. Objects exceeding it are left unmatched.
+     */
+    public void setTargetTimeBudget(long targetTimeBudget) {
+        this.targetTimeBudget = targetTimeBudget;
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, of the matching, 0 for no limit
+     */
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * @param timeLimit the maximum time, in milliseconds, of the matching, 0 for no limit.
+     *      When reached, the matches found so far are returned.
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @return creates match finders equivalent to {@link #getMatchFinder()}, from any thread,
+     *      null if not available
+     */
+    public Supplier<FCMatchFinder> getMatchFinderFactory() {
+        return matchFinderFactory;
+    }
+
+    /**
+     * @param matchFinderFactory creates match finders equivalent to {@link #getMatchFinder()},
+     *      so that tiles can be matched in parallel, null if not available
+     */
+    public void setMatchFinderFactory(Supplier<FCMatchFinder> matchFinderFactory) {
+        this.matchFinderFactory = matchFinderFactory;
+    }
+
+    /**
+     * @return the size of the tiles in which the objects are matched, 0 to match them all at once
+     */
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @param tileSize the size, in projected units, of the tiles in which the objects
+     *      are matched, 0 to match them all at once
+     */
+    public void setTileSize(double tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return the description of the settings of the match finder, null if unknown
+     */
+    public String getMatchFinderConfiguration() {
+        return matchFinderConfiguration;
+    }
+
+    /**
+     * @param matchFinderConfiguration the description of the settings of the match finder,
+     *      identifying the match finder in saved results
+     */
+    public void setMatchFinderConfiguration(String matchFinderConfiguration) {
+        this.matchFinderConfiguration = matchFinderConfiguration;
+    }
 }
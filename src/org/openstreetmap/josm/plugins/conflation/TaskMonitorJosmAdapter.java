@@ -0,0 +1,193 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+import com.vividsolutions.jump.task.TaskMonitor;
+
+/**
+ * Progress monitor for use with JCS linked to a JOSM ProgressMonitor.
+ * <p>
+ * Finders report their progress once per feature, which is far more often than the
+ * progress dialog can be repainted. Progress is therefore only counted when reported,
+ * from any number of threads, and published to the JOSM monitor at most every
+ * {@link #PUBLISH_INTERVAL_MS} milliseconds, with the throughput and the estimated
+ * remaining time. Cancellation is polled at the same rate.
+ * <p>
+ * Each thread reports the progress of its own stage (e.g. the tiles matched in parallel),
+ * the progress published is the sum of the stages in progress.
+ */
+public final class TaskMonitorJosmAdapter implements TaskMonitor {
+
+    /** Minimum time between two updates of the JOSM progress monitor. */
+    public static final long PUBLISH_INTERVAL_MS = 100;
+    private static final long PUBLISH_INTERVAL_NANOS = PUBLISH_INTERVAL_MS * 1000000L;
+
+    private static final Map<String, String> TRANSLATIONS = new HashMap<>();
+    static {
+        TRANSLATIONS.put("Finding matches", tr("Finding matches"));
+        TRANSLATIONS.put("Sorting scores", tr("Sorting scores"));
+        TRANSLATIONS.put("Discarding inferior matches", tr("Discarding inferior matches"));
+    }
+
+    private final ProgressMonitor josmMonitor;
+
+    /** The current stage of each reporting thread. */
+    private final Map<Thread, Stage> stages = new ConcurrentHashMap<>();
+    private final AtomicLong lastPublish = new AtomicLong(System.nanoTime() - PUBLISH_INTERVAL_NANOS);
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    /** Set when a publication must not be skipped, e.g. the one of a finished stage. */
+    private final AtomicBoolean publishPending = new AtomicBoolean();
+    private final AtomicLong lastCancelCheck = new AtomicLong(System.nanoTime() - PUBLISH_INTERVAL_NANOS);
+    private volatile boolean canceled;
+
+    /**
+     * The progress of a stage, reported by a single thread.
+     */
+    private static final class Stage {
+        private final long start = System.nanoTime();
+        /** Items done reported as a total by {@link TaskMonitorJosmAdapter#report(int, int, String)}. */
+        private volatile long itemsDone;
+        /** Items done reported one by one by {@link TaskMonitorJosmAdapter#increment()}. */
+        private final LongAdder itemsIncrement = new LongAdder();
+        private volatile int totalItems;
+        private volatile String itemDescription = "";
+
+        private long done() {
+            return Math.min(itemsDone + itemsIncrement.sum(), totalItems);
+        }
+    }
+
+    /**
+     * @param josmMonitor the monitor to which progress is published
+     */
+    public TaskMonitorJosmAdapter(ProgressMonitor josmMonitor) {
+        this.josmMonitor = josmMonitor;
+    }
+
+    @Override
+    public void report(String description) {
+        // a new stage of this thread: its progress and throughput start from zero
+        stages.put(Thread.currentThread(), new Stage());
+        josmMonitor.subTask(TRANSLATIONS.getOrDefault(description, description));
+        josmMonitor.setCustomText("");
+    }
+
+    @Override
+    public void report(int itemsDone, int totalItems, String itemDescription) {
+        Stage stage = currentStage();
+        stage.itemsDone = itemsDone;
+        stage.totalItems = totalItems;
+        stage.itemDescription = itemDescription;
+        publishIfDue(itemsDone == totalItems);
+    }
+
+    /**
+     * Counts one more item done in the stage of the current thread.
+     */
+    public void increment() {
+        currentStage().itemsIncrement.increment();
+        publishIfDue(false);
+    }
+
+    /**
+     * @param totalItems the number of items of the stage of the current thread, for {@link #increment()}
+     * @param itemDescription the kind of items
+     */
+    public void setTotal(int totalItems, String itemDescription) {
+        Stage stage = currentStage();
+        stage.totalItems = totalItems;
+        stage.itemDescription = itemDescription;
+    }
+
+    private Stage currentStage() {
+        return stages.computeIfAbsent(Thread.currentThread(), t -> new Stage());
+    }
+
+    private void publishIfDue(boolean force) {
+        if (!force && System.nanoTime() - lastPublish.get() < PUBLISH_INTERVAL_NANOS) {
+            return;
+        }
+        if (force) {
+            // published by the thread currently publishing, if any, once it is done
+            publishPending.set(true);
+        }
+        // a single thread publishes, the others keep on working
+        while (publishing.compareAndSet(false, true)) {
+            try {
+                publishPending.set(false);
+                publish();
+            } finally {
+                publishing.set(false);
+            }
+            if (!publishPending.get()) {
+                break;
+            }
+        }
+    }
+
+    private void publish() {
+        long now = System.nanoTime();
+        lastPublish.set(now);
+        long done = 0;
+        long total = 0;
+        long start = now;
+        String itemDescription = "";
+        for (Stage stage : stages.values()) {
+            done += stage.done();
+            total += stage.totalItems;
+            start = Math.min(start, stage.start);
+            if (!stage.itemDescription.isEmpty()) {
+                itemDescription = stage.itemDescription;
+            }
+        }
+        int ticks = (int) Math.min(total, Integer.MAX_VALUE);
+        josmMonitor.setTicksCount(ticks);
+        josmMonitor.setTicks((int) Math.min(done, ticks));
+        double seconds = (now - start) / 1e9;
+        if (seconds > 0.5 && done > 0) {
+            double rate = done / seconds;
+            long remaining = Math.round(Math.max(0, total - done) / rate);
+            josmMonitor.setCustomText(tr("{0}/s, {1} remaining",
+                    Math.round(rate) + " " + itemDescription, formatDuration(remaining)));
+        }
+    }
+
+    private static String formatDuration(long seconds) {
+        if (seconds >= 3600) {
+            return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+        }
+        return String.format("%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    @Override
+    public void report(Exception exception) {
+        throw new UnsupportedOperationException("Not supported yet.", exception);
+    }
+
+    @Override
+    public void allowCancellationRequests() {
+    }
+
+    @Override
+    public boolean isCancelRequested() {
+        // polled by the matchers between comparisons, so only ask JOSM now and then
+        if (!canceled) {
+            long now = System.nanoTime();
+            long last = lastCancelCheck.get();
+            if (now - last >= PUBLISH_INTERVAL_NANOS && lastCancelCheck.compareAndSet(last, now)) {
+                canceled = josmMonitor.isCanceled();
+            }
+        }
+        return canceled;
+    }
+}
@@ -13,7 +13,9 @@ import java.awt.Insets;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Supplier;
 
 import javax.swing.BoxLayout;
 //import javax.swing.JButton;
@@ -32,7 +34,6 @@ import org.openstreetmap.josm.plugins.conflation.matcher.OsmNormalizeRule;
 
 import com.vividsolutions.jcs.conflate.polygonmatch.AngleHistogramMatcher;
 import com.vividsolutions.jcs.conflate.polygonmatch.AreaFilterFCMatchFinder;
-import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
 import com.vividsolutions.jcs.conflate.polygonmatch.CentroidAligner;
 import com.vividsolutions.jcs.conflate.polygonmatch.CentroidDistanceMatcher;
 import com.vividsolutions.jcs.conflate.polygonmatch.ChainMatcher;
@@ -519,76 +520,141 @@ public class AdvancedMatchFinderPanel extends MatchFinderPanel {
     }
 
     public FeatureMatcher createFeatureMatcher() {
-        ArrayList<FeatureMatcher> chainArgs = new ArrayList<>();
-        ArrayList<Object> weightedArgs = new ArrayList<>();
-        if (getFilterByWindowCheckBox().isSelected()) {
-            chainArgs.add(new WindowFilter(filterByWindowField.getDouble()));
-        }
-        if (getCentroidCheckBox().isSelected()) {
-            double max = centroidThresholdField.getDouble();
-            FeatureMatcher matcher = new CentroidDistanceMatcher(max);
-            if (max > 0) {
-                chainArgs.add(matcher);
-            }
-            weightedArgs.add(new Double(getCentroidDistanceWeightField().getDouble()));
-            weightedArgs.add(matcher);
-        }
-        if (getHausdorffCheckBox().isSelected()) {
-            weightedArgs.add(new Double(getHausdorffDistanceWeightField().getDouble()));
-            weightedArgs.add(new CentroidAligner(new HausdorffDistanceMatcher()));
-        }
-        if (getSymDiffCheckBox().isSelected()) {
-            weightedArgs.add(new Double(getSymDiffWeightField().getDouble()));
-            weightedArgs.add(new SymDiffMatcher());
-        }
-        if (getSymDiffCentroidsAlignedCheckBox().isSelected()) {
-            weightedArgs.add(new Double(getSymDiffCentroidsAlignedWeightField().getDouble()));
-            weightedArgs.add(new CentroidAligner(new SymDiffMatcher()));
-        }
-        if (getCompactnessCheckBox().isSelected()) {
-            weightedArgs.add(new Double(getCompactnessWeightField().getDouble()));
-            weightedArgs.add(new CompactnessMatcher());
-        }
-        if (getAngleCheckBox().isSelected()) {
-            weightedArgs.add(new Double(getAngleWeightField().getDouble()));
-            weightedArgs.add(new AngleHistogramMatcher(getAngleBinField().getInteger()));
-        }
-        if (levenshteinTagsCheckBox.isSelected()) {
-            double weight = levenshteinTagsWeightField.getDouble();
-            List<String> tags = SimpleMatchFinderPanel.splitBySpaceComaOrSemicolon(levenshteinTagsField.getText());
-            for (String tag: tags) {
-                weightedArgs.add(new Double(weight / tags.size()));
-                weightedArgs.add(new AttributeMatcher(tag,
-                        LevenshteinDistanceValueMatcher.INSTANCE, OsmNormalizeRule.get(tag)));
-            }
-        }
-        List<String> exactTags = SimpleMatchFinderPanel.splitBySpaceComaOrSemicolon(exactTagsField.getText());
-        for (String tag: exactTags) {
-            chainArgs.add(new AttributeMatcher(tag, ExactValueMatcher.INSTANCE));
-        }
-        chainArgs.add(new WeightedMatcher(weightedArgs.toArray()));
-        return new ChainMatcher(chainArgs.toArray(new FeatureMatcher[chainArgs.size()]));
+        return new Settings(this).createFeatureMatcher();
     }
 
     @Override
     public FCMatchFinder getMatchFinder() {
-        FCMatchFinder matchFinder = new BasicFCMatchFinder(createFeatureMatcher());
-        //We definitely want to one-to-one before union (combinatorial) -- if after, we'll
-        //wipe out some union members! [Jon Aquino]
-        matchFinder = new DisambiguatingFCMatchFinder(matchFinder);
-        TargetUnioningFCMatchFinder targetUnioningFCMatchFinder = null;
-        if (getUnionCheckBox().isSelected()) {
-            int maxUnionMembers = Integer.parseInt(getUnionTextField().getText());
-            targetUnioningFCMatchFinder = new TargetUnioningFCMatchFinder(maxUnionMembers, matchFinder);
-            matchFinder = targetUnioningFCMatchFinder;
+        return new Settings(this).createMatchFinder();
+    }
+
+    @Override
+    public Supplier<FCMatchFinder> getMatchFinderFactory() {
+        return new Settings(this)::createMatchFinder;
+    }
+
+    /**
+     * The values of the widgets determining the match finder, read in the user interface
+     * thread, from which match finders can be created in any thread.
+     */
+    private static final class Settings {
+        private final boolean filterByWindow;
+        private final double filterByWindowBuffer;
+        private final boolean centroid;
+        private final double centroidWeight;
+        private final double centroidThreshold;
+        private final boolean hausdorff;
+        private final double hausdorffWeight;
+        private final boolean symDiff;
+        private final double symDiffWeight;
+        private final boolean symDiffCentroidsAligned;
+        private final double symDiffCentroidsAlignedWeight;
+        private final boolean compactness;
+        private final double compactnessWeight;
+        private final boolean angle;
+        private final double angleWeight;
+        private final int angleBins;
+        private final boolean levenshteinTags;
+        private final double levenshteinTagsWeight;
+        private final List<String> levenshteinTagList;
+        private final List<String> exactTagList;
+        private final boolean union;
+        private final int maxUnionMembers;
+        private final boolean filterByArea;
+        private final double filterByAreaMin;
+        private final double filterByAreaMax;
+        private final int maxMatchesPerTarget;
+
+        Settings(AdvancedMatchFinderPanel panel) {
+            filterByWindow = panel.getFilterByWindowCheckBox().isSelected();
+            filterByWindowBuffer = panel.filterByWindowField.getDouble();
+            centroid = panel.getCentroidCheckBox().isSelected();
+            centroidWeight = panel.getCentroidDistanceWeightField().getDouble();
+            centroidThreshold = panel.centroidThresholdField.getDouble();
+            hausdorff = panel.getHausdorffCheckBox().isSelected();
+            hausdorffWeight = panel.getHausdorffDistanceWeightField().getDouble();
+            symDiff = panel.getSymDiffCheckBox().isSelected();
+            symDiffWeight = panel.getSymDiffWeightField().getDouble();
+            symDiffCentroidsAligned = panel.getSymDiffCentroidsAlignedCheckBox().isSelected();
+            symDiffCentroidsAlignedWeight = panel.getSymDiffCentroidsAlignedWeightField().getDouble();
+            compactness = panel.getCompactnessCheckBox().isSelected();
+            compactnessWeight = panel.getCompactnessWeightField().getDouble();
+            angle = panel.getAngleCheckBox().isSelected();
+            angleWeight = panel.getAngleWeightField().getDouble();
+            angleBins = panel.getAngleBinField().getInteger();
+            levenshteinTags = panel.levenshteinTagsCheckBox.isSelected();
+            levenshteinTagsWeight = panel.levenshteinTagsWeightField.getDouble();
+            levenshteinTagList = SimpleMatchFinderPanel.splitBySpaceComaOrSemicolon(panel.levenshteinTagsField.getText());
+            exactTagList = SimpleMatchFinderPanel.splitBySpaceComaOrSemicolon(panel.exactTagsField.getText());
+            union = panel.getUnionCheckBox().isSelected();
+            maxUnionMembers = union ? Integer.parseInt(panel.getUnionTextField().getText()) : 0;
+            filterByArea = panel.getFilterByAreaCheckBox().isSelected();
+            filterByAreaMin = panel.getFilterByAreaMinField().getDouble();
+            filterByAreaMax = panel.getFilterByAreaMaxField().getDouble();
+            maxMatchesPerTarget = panel.getMaxMatchesPerTarget();
         }
-        if (getFilterByAreaCheckBox().isSelected()) {
-            matchFinder = new AreaFilterFCMatchFinder(
-                    getFilterByAreaMinField().getDouble(),
-                    getFilterByAreaMaxField().getDouble(),
-                    matchFinder);
+
+        FeatureMatcher createFeatureMatcher() {
+            ArrayList<FeatureMatcher> chainArgs = new ArrayList<>();
+            ArrayList<Object> weightedArgs = new ArrayList<>();
+            if (filterByWindow) {
+                chainArgs.add(new WindowFilter(filterByWindowBuffer));
+            }
+            if (centroid) {
+                FeatureMatcher matcher = new CentroidDistanceMatcher(centroidThreshold);
+                if (centroidThreshold > 0) {
+                    chainArgs.add(matcher);
+                }
+                weightedArgs.add(new Double(centroidWeight));
+                weightedArgs.add(matcher);
+            }
+            if (hausdorff) {
+                weightedArgs.add(new Double(hausdorffWeight));
+                weightedArgs.add(new CentroidAligner(new HausdorffDistanceMatcher()));
+            }
+            if (symDiff) {
+                weightedArgs.add(new Double(symDiffWeight));
+                weightedArgs.add(new SymDiffMatcher());
+            }
+            if (symDiffCentroidsAligned) {
+                weightedArgs.add(new Double(symDiffCentroidsAlignedWeight));
+                weightedArgs.add(new CentroidAligner(new SymDiffMatcher()));
+            }
+            if (compactness) {
+                weightedArgs.add(new Double(compactnessWeight));
+                weightedArgs.add(new CompactnessMatcher());
+            }
+            if (angle) {
+                weightedArgs.add(new Double(angleWeight));
+                weightedArgs.add(new AngleHistogramMatcher(angleBins));
+            }
+            if (levenshteinTags) {
+                for (String tag: levenshteinTagList) {
+                    weightedArgs.add(new Double(levenshteinTagsWeight / levenshteinTagList.size()));
+                    weightedArgs.add(new AttributeMatcher(tag,
+                            LevenshteinDistanceValueMatcher.INSTANCE, OsmNormalizeRule.get(tag)));
+                }
+            }
+            for (String tag: exactTagList) {
+                chainArgs.add(new AttributeMatcher(tag, ExactValueMatcher.INSTANCE));
+            }
+            chainArgs.add(new WeightedMatcher(weightedArgs.toArray()));
+            return new ChainMatcher(chainArgs.toArray(new FeatureMatcher[chainArgs.size()]));
+        }
+
+        FCMatchFinder createMatchFinder() {
+            FCMatchFinder matchFinder = createBasicFCMatchFinder(createFeatureMatcher(), maxMatchesPerTarget);
+            //We definitely want to one-to-one before union (combinatorial) -- if after, we'll
+            //wipe out some union members! [Jon Aquino]
+            matchFinder = new DisambiguatingFCMatchFinder(matchFinder);
+            if (union) {
+                matchFinder = new TargetUnioningFCMatchFinder(maxUnionMembers, matchFinder);
+            }
+            if (filterByArea) {
+                matchFinder = new AreaFilterFCMatchFinder(filterByAreaMin, filterByAreaMax, matchFinder);
+            }
+            return matchFinder;
         }
-        return matchFinder;
     }
 
     @Override
@@ -620,6 +686,36 @@ public class AdvancedMatchFinderPanel extends MatchFinderPanel {
         Main.pref.put(getClass().getName() + ".levenshteinTagsField", levenshteinTagsField.getText());
     }
 
+    @Override
+    public String getConfiguration() {
+        return Arrays.asList(
+                filterByAreaCheckBox.isSelected(),
+                filterByWindowCheckBox.isSelected(),
+                unionCheckBox.isSelected(),
+                centroidCheckBox.isSelected(),
+                hausdorffCheckBox.isSelected(),
+                symDiffCheckBox.isSelected(),
+                symDiffCentroidsAlignedCheckBox.isSelected(),
+                compactnessCheckBox.isSelected(),
+                angleCheckBox.isSelected(),
+                levenshteinTagsCheckBox.isSelected(),
+                unionTextField.getInteger(),
+                angleBinField.getInteger(),
+                filterByAreaMinField.getDouble(),
+                filterByAreaMaxField.getDouble(),
+                filterByWindowField.getDouble(),
+                centroidDistanceWeightField.getDouble(),
+                centroidThresholdField.getDouble(),
+                hausdorffDistanceWeightField.getDouble(),
+                symDiffWeightField.getDouble(),
+                symDiffCentroidsAlignedWeightField.getDouble(),
+                compactnessWeightField.getDouble(),
+                angleWeightField.getDouble(),
+                levenshteinTagsWeightField.getDouble(),
+                exactTagsField.getText(),
+                levenshteinTagsField.getText()).toString();
+    }
+
     public void restoreFromPreferences() {
         filterByAreaCheckBox.setSelected(Main.pref.getBoolean(getClass().getName() + ".filterByAreaCheckBox", true));
         filterByWindowCheckBox.setSelected(Main.pref.getBoolean(getClass().getName() + ".filterByWindowCheckBox", true));
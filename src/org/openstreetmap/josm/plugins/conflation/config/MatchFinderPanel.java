@@ -1,14 +1,64 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.conflation.config;
 
+import java.util.function.Supplier;
+
 import javax.swing.JPanel;
 
+import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
 import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
 
 public abstract class MatchFinderPanel extends JPanel {
 
+    private int maxMatchesPerTarget = 0;
+
     public abstract FCMatchFinder getMatchFinder();
 
+    /**
+     * Gives a factory of match finders equivalent to {@link #getMatchFinder()}, usable from
+     * any thread, so that parts of the objects can be matched in parallel.
+     * @return the factory, null if the finders can only be created from the user interface
+     */
+    public Supplier<FCMatchFinder> getMatchFinderFactory() {
+        return null;
+    }
+
+    /**
+     * Sets the maximum number of candidates kept for each object by the match finders
+     * created afterwards.
+     * @param maxMatchesPerTarget the maximum number of candidates, 0 for no limit
+     */
+    public void setMaxMatchesPerTarget(int maxMatchesPerTarget) {
+        this.maxMatchesPerTarget = maxMatchesPerTarget;
+    }
+
+    /**
+     * @return the maximum number of candidates kept for each object, 0 for no limit
+     */
+    protected int getMaxMatchesPerTarget() {
+        return maxMatchesPerTarget;
+    }
+
+    /**
+     * Creates the finder applying the matcher to each object.
+     * @param matcher the matcher
+     * @param maxMatchesPerTarget the maximum number of candidates kept for each object, 0 for no limit
+     * @return the match finder
+     */
+    protected static BasicFCMatchFinder createBasicFCMatchFinder(FeatureMatcher matcher, int maxMatchesPerTarget) {
+        BasicFCMatchFinder finder = new BasicFCMatchFinder(matcher);
+        finder.setMaxMatchesPerTarget(maxMatchesPerTarget);
+        return finder;
+    }
+
     public abstract void savePreferences();
 
+    /**
+     * Describes the settings of the panel determining the match finder, so that
+     * results computed with other settings can be recognized.
+     * @return the settings of the panel, as a string
+     */
+    public abstract String getConfiguration();
+
 }
@@ -3,19 +3,41 @@ package org.openstreetmap.josm.plugins.conflation.config;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
+import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
 
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.event.AncestorEvent;
+import javax.swing.event.AncestorListener;
+import javax.swing.table.AbstractTableModel;
 
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.plugins.conflation.config.parser.InstanceConstructor;
+import org.openstreetmap.josm.plugins.conflation.config.parser.InstanceDecorator;
 import org.openstreetmap.josm.plugins.conflation.config.parser.InstanceEditor;
+import org.openstreetmap.josm.plugins.conflation.config.parser.InstanceParser;
 
+import com.vividsolutions.jcs.conflate.polygonmatch.AreaFilterFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.BasicFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.CombinatorialFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.DisambiguatingFCMatchFinder;
 import com.vividsolutions.jcs.conflate.polygonmatch.FCMatchFinder;
 import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.ProfilingMatcher;
+import com.vividsolutions.jcs.conflate.polygonmatch.TargetUnioningFCMatchFinder;
+import com.vividsolutions.jcs.conflate.polygonmatch.TopMatchDisambiguatingFCMatchFinder;
 
 
 /**
@@ -25,6 +47,9 @@ import com.vividsolutions.jcs.conflate.polygonmatch.FeatureMatcher;
 public final class ProgrammingMatchFinderPanel extends MatchFinderPanel {
 
     private final InstanceEditor<FCMatchFinder> editorPanel;
+    private final JCheckBox profileCheckBox = new JCheckBox(tr("Profile matchers"));
+    private final ProfileTableModel profileTableModel = new ProfileTableModel();
+    private final JPanel profilePanel = new JPanel(new BorderLayout());
 
     private static final String SIMPLE_EXAMPLE =
             "Disambiguating(\n" +
@@ -58,18 +83,68 @@ public final class ProgrammingMatchFinderPanel extends MatchFinderPanel {
         setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
 
         editorPanel = new InstanceEditor<>(FCMatchFinder.class, "Match Finder", jcsConstructors, 8, 70);
-        this.add(editorPanel);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, editorPanel, createProfilePanel());
+        splitPane.setResizeWeight(0.6);
+        this.add(splitPane);
 
         this.add(createExampleButtonPanel());
         restoreFromPreferences();
     }
 
+    private JPanel createProfilePanel() {
+        JTable table = new JTable(profileTableModel);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.getColumnModel().getColumn(0).setPreferredWidth(180);
+        profilePanel.add(new JScrollPane(table), BorderLayout.CENTER);
+        JButton refreshButton = new JButton(tr("Refresh"));
+        JButton resetButton = new JButton(tr("Reset"));
+        JPanel buttonsPanel = new JPanel();
+        buttonsPanel.add(refreshButton);
+        buttonsPanel.add(resetButton);
+        profilePanel.add(buttonsPanel, BorderLayout.SOUTH);
+        profilePanel.setToolTipText(tr("Times include the matchers called by a matcher, self times exclude them."));
+        refreshButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                profileTableModel.fireTableDataChanged();
+            }
+        });
+        resetButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                profileTableModel.reset();
+            }
+        });
+        profileCheckBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                profilePanel.setVisible(profileCheckBox.isSelected());
+                revalidate();
+            }
+        });
+        // the results of the last matching are shown when the settings are opened again
+        profilePanel.addAncestorListener(new AncestorListener() {
+            @Override
+            public void ancestorAdded(AncestorEvent event) {
+                profileTableModel.fireTableDataChanged();
+            }
+
+            @Override
+            public void ancestorRemoved(AncestorEvent event) {}
+
+            @Override
+            public void ancestorMoved(AncestorEvent event) {}
+        });
+        return profilePanel;
+    }
+
     private JPanel createExampleButtonPanel() {
         JPanel buttonsPanel = new JPanel();
         JButton simpleButton = new JButton(tr("Simple Example"));
         JButton advancedButton = new JButton(tr("Advanced Example"));
         buttonsPanel.add(simpleButton);
         buttonsPanel.add(advancedButton);
+        buttonsPanel.add(profileCheckBox);
         simpleButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -87,15 +162,197 @@ public final class ProgrammingMatchFinderPanel extends MatchFinderPanel {
 
     @Override
     public FCMatchFinder getMatchFinder() {
-        return editorPanel.getEditedInstance();
+        if (!profileCheckBox.isSelected()) {
+            return limitMatchesPerTarget(editorPanel.getEditedInstance(), getMaxMatchesPerTarget());
+        }
+        final List<ProfileRow> rows = new ArrayList<>();
+        FCMatchFinder finder = editorPanel.getEditedInstance(new InstanceDecorator() {
+            @Override
+            public Object decorate(Object instance, InstanceConstructor constructor, String expression, int start) {
+                if (!(instance instanceof FeatureMatcher)) {
+                    return instance;
+                }
+                ProfilingMatcher.Stats stats = new ProfilingMatcher.Stats(constructor.name);
+                rows.add(new ProfileRow(stats, start, start + expression.length()));
+                return ProfilingMatcher.decorate((FeatureMatcher) instance, stats);
+            }
+        });
+        profileTableModel.setRows(rows);
+        return limitMatchesPerTarget(finder, getMaxMatchesPerTarget());
+    }
+
+    @Override
+    public Supplier<FCMatchFinder> getMatchFinderFactory() {
+        if (profileCheckBox.isSelected()) {
+            // the profiled matchers share the statistics shown in the panel
+            return null;
+        }
+        String expression = editorPanel.getTextArea().getText();
+        int maxMatchesPerTarget = getMaxMatchesPerTarget();
+        return () -> parseMatchFinder(expression, maxMatchesPerTarget);
+    }
+
+    /**
+     * Create the match finder described by an expression, as typed in this panel,
+     * without any user interface.
+     * @param expression the expression, e.g. "Disambiguating(Basic(Chain(Window(20), HausdorffDistance(20))))"
+     * @return the match finder
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static FCMatchFinder parseMatchFinder(String expression) {
+        return parseMatchFinder(expression, 0);
+    }
+
+    /**
+     * Create the match finder described by an expression, keeping at most a number
+     * of candidates for each object (see {@link #limitMatchesPerTarget}).
+     * @param expression the expression
+     * @param maxMatchesPerTarget the maximum number of candidates, 0 for no limit
+     * @return the match finder
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static FCMatchFinder parseMatchFinder(String expression, int maxMatchesPerTarget) {
+        InstanceParser<FCMatchFinder> parser = new InstanceParser<>(FCMatchFinder.class, "Match Finder", jcsConstructors);
+        if (!parser.parse(expression)) {
+            throw new IllegalArgumentException(
+                    "At position " + parser.getLastTokenIndex() + ": " + parser.getErrorMessage());
+        }
+        return limitMatchesPerTarget(parser.parse(expression, true), maxMatchesPerTarget);
+    }
+
+    /**
+     * Sets the maximum number of candidates kept for each object on the basic finders
+     * of a match finder, the expressions having no argument for it.
+     * @param finder the match finder
+     * @param maxMatchesPerTarget the maximum number of candidates, 0 for no limit
+     * @return the match finder
+     */
+    public static FCMatchFinder limitMatchesPerTarget(FCMatchFinder finder, int maxMatchesPerTarget) {
+        if (finder instanceof BasicFCMatchFinder) {
+            ((BasicFCMatchFinder) finder).setMaxMatchesPerTarget(maxMatchesPerTarget);
+        } else if (finder instanceof AreaFilterFCMatchFinder) {
+            limitMatchesPerTarget(((AreaFilterFCMatchFinder) finder).getMatchFinder(), maxMatchesPerTarget);
+        } else if (finder instanceof CombinatorialFCMatchFinder) {
+            limitMatchesPerTarget(((CombinatorialFCMatchFinder) finder).getMatchFinder(), maxMatchesPerTarget);
+        } else if (finder instanceof DisambiguatingFCMatchFinder) {
+            limitMatchesPerTarget(((DisambiguatingFCMatchFinder) finder).getMatchFinder(), maxMatchesPerTarget);
+        } else if (finder instanceof OneToOneFCMatchFinder) {
+            limitMatchesPerTarget(((OneToOneFCMatchFinder) finder).getMatchFinder(), maxMatchesPerTarget);
+        } else if (finder instanceof TargetUnioningFCMatchFinder) {
+            limitMatchesPerTarget(((TargetUnioningFCMatchFinder) finder).getMatchFinder(), maxMatchesPerTarget);
+        } else if (finder instanceof TopMatchDisambiguatingFCMatchFinder) {
+            limitMatchesPerTarget(((TopMatchDisambiguatingFCMatchFinder) finder).getMatchFinder(),
+                    maxMatchesPerTarget);
+        }
+        return finder;
     }
 
     public void restoreFromPreferences() {
         editorPanel.getTextArea().setText(Main.pref.get(getClass().getName() + ".expression", SIMPLE_EXAMPLE));
+        profileCheckBox.setSelected(Main.pref.getBoolean(getClass().getName() + ".profile", false));
+        profilePanel.setVisible(profileCheckBox.isSelected());
     }
 
     public void savePreferences() {
         Main.pref.put(getClass().getName() + ".expression", editorPanel.getTextArea().getText());
+        Main.pref.put(getClass().getName() + ".profile", profileCheckBox.isSelected());
+    }
+
+    @Override
+    public String getConfiguration() {
+        return editorPanel.getTextArea().getText();
+    }
+
+    /**
+     * A decorated matcher and its place in the expression.
+     */
+    private static final class ProfileRow {
+        final ProfilingMatcher.Stats stats;
+        final int start;
+        final int end;
+        int depth;
+
+        ProfileRow(ProfilingMatcher.Stats stats, int start, int end) {
+            this.stats = stats;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * The measures of the matchers, in the order of the expression.
+     */
+    private static final class ProfileTableModel extends AbstractTableModel {
+        private final String[] columnNames = {
+                tr("Matcher"), tr("Calls"), tr("Total (ms)"), tr("Self (ms)"),
+                tr("p50 (\u00b5s)"), tr("p95 (\u00b5s)"), tr("p99 (\u00b5s)"),
+                tr("Candidates in"), tr("Candidates out"), tr("Allocated (MB)")};
+        private List<ProfileRow> rows = new ArrayList<>();
+
+        void setRows(List<ProfileRow> newRows) {
+            // matchers are created after the matchers they contain
+            newRows.sort(Comparator.comparingInt(r -> r.start));
+            for (ProfileRow row : newRows) {
+                for (ProfileRow other : newRows) {
+                    if (other != row && other.start <= row.start && other.end >= row.end) {
+                        row.depth++;
+                    }
+                }
+            }
+            rows = newRows;
+            fireTableDataChanged();
+        }
+
+        void reset() {
+            for (ProfileRow row : rows) {
+                row.stats.reset();
+            }
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columnNames[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Number.class;
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex) {
+            ProfileRow row = rows.get(rowIndex);
+            ProfilingMatcher.Stats stats = row.stats;
+            switch (columnIndex) {
+            case 0:
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < row.depth; i++) {
+                    sb.append("    ");
+                }
+                return sb.append(stats.getName()).toString();
+            case 1: return stats.getCalls();
+            case 2: return Math.round(stats.getTotalNanos() / 1e6);
+            case 3: return Math.round(stats.getSelfNanos() / 1e6);
+            case 4: return Math.round(stats.getPercentileNanos(0.50) / 1e3);
+            case 5: return Math.round(stats.getPercentileNanos(0.95) / 1e3);
+            case 6: return Math.round(stats.getPercentileNanos(0.99) / 1e3);
+            case 7: return stats.getCandidatesIn();
+            case 8: return stats.getCandidatesOut();
+            case 9: return stats.getAllocatedBytes() < 0 ? null : Math.round(stats.getAllocatedBytes() / 1e6);
+            default: return null;
+            }
+        }
     }
 
 
@@ -202,6 +459,15 @@ public final class ProgrammingMatchFinderPanel extends MatchFinderPanel {
                     "MinScore",
                     "Filters out shapes with a score below a given value.",
                     new String[] {"minimun score"}),
+            new InstanceConstructor(
+                    com.vividsolutions.jcs.conflate.polygonmatch.NearestCandidatesMatcher.class,
+                    "NearestCandidates",
+                    "Like Window, quickly filters out shapes far from the feature, but keeps only "
+                    + "the nearest ones. The search window starts proportional to the feature size "
+                    + "and grows where the data is sparse, so the number of candidates stays bounded.",
+                    new String[] {"maximum number of candidates kept for each feature",
+                            "maximum distance between the feature's envelope and a candidate's envelope",
+                            "initial search distance, as a fraction of the feature's envelope size"}),
             new InstanceConstructor(
                     com.vividsolutions.jcs.conflate.polygonmatch.OneToOneFCMatchFinder.class,
                     "OneToOne",
@@ -20,6 +20,7 @@ import javax.swing.ButtonGroup;
 import javax.swing.GroupLayout;
 import javax.swing.Icon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -42,6 +43,9 @@ import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
 import org.openstreetmap.josm.plugins.conflation.SimpleMatchSettings;
 import org.openstreetmap.josm.tools.ImageProvider;
 
+import com.vividsolutions.jcs.plugin.conflate.polygonmatch.MyValidatingTextField;
+import com.vividsolutions.jump.index.SpatialIndexType;
+
 /**
  * Dialog for selecting objects and configuring conflation settings
  */
@@ -63,6 +67,12 @@ public class SettingsDialog extends ExtendedDialog {
     private AdvancedMatchFinderPanel advancedMatchFinderPanel;
     private ProgrammingMatchFinderPanel programmingMatchFinderPanel;
     private Box selectedMatchFinderBox;
+    private JComboBox<String> spatialIndexComboBox;
+    private MyValidatingTextField nodeCapacityField;
+    private MyValidatingTextField maxCandidatesField;
+    private MyValidatingTextField targetTimeBudgetField;
+    private MyValidatingTextField timeLimitField;
+    private MyValidatingTextField tileSizeField;
 
     List<OsmPrimitive> subjectSelection = null;
     List<OsmPrimitive> referenceSelection = null;
@@ -93,6 +103,9 @@ public class SettingsDialog extends ExtendedDialog {
         pnl.setAlignmentX(LEFT_ALIGNMENT);
         pnl.add(createLayersPanel());
         pnl.add(createMatchFinderBox());
+        pnl.add(createSpatialIndexBox());
+        pnl.add(createTimeLimitBox());
+        pnl.add(createTilingBox());
         setContent(pnl);
         setupDialog();
     }
@@ -267,6 +280,97 @@ public class SettingsDialog extends ExtendedDialog {
     }
 
 
+    private Box createSpatialIndexBox() {
+        JLabel indexLabel = new JLabel(tr("Spatial index"));
+        spatialIndexComboBox = new JComboBox<>(new String[] {
+                tr("Automatic"), tr("STR-tree"), tr("Quadtree"), tr("Uniform grid")});
+        spatialIndexComboBox.setToolTipText(tr("Structure used to search candidates around each object"));
+        JLabel nodeCapacityLabel = new JLabel(tr("STR-tree node capacity"));
+        nodeCapacityField = new MyValidatingTextField("" + SpatialIndexType.DEFAULT_NODE_CAPACITY, 3,
+                MyValidatingTextField.NON_NEGATIVE_INTEGER_VALIDATOR, "" + SpatialIndexType.DEFAULT_NODE_CAPACITY);
+        Font light = new Font(indexLabel.getFont().getName(), Font.PLAIN, indexLabel.getFont().getSize());
+        indexLabel.setFont(light);
+        nodeCapacityLabel.setFont(light);
+        nodeCapacityField.setMaximumSize(nodeCapacityField.getPreferredSize());
+        spatialIndexComboBox.setMaximumSize(spatialIndexComboBox.getPreferredSize());
+        spatialIndexComboBox.setSelectedIndex(Integer.max(0, Integer.min(spatialIndexComboBox.getItemCount()-1,
+                Main.pref.getInteger(getClass().getName() + ".spatialIndexType", 0))));
+        nodeCapacityField.setText("" + Integer.max(2,
+                Main.pref.getInteger(getClass().getName() + ".nodeCapacity", SpatialIndexType.DEFAULT_NODE_CAPACITY)));
+        JLabel maxCandidatesLabel = new JLabel(tr("Max. candidates per object"));
+        maxCandidatesLabel.setFont(light);
+        maxCandidatesField = new MyValidatingTextField("0", 3, MyValidatingTextField.NON_NEGATIVE_INTEGER_VALIDATOR, "0");
+        maxCandidatesField.setToolTipText(tr("Only the best candidates are kept for each object, 0 for no limit"));
+        maxCandidatesField.setMaximumSize(maxCandidatesField.getPreferredSize());
+        maxCandidatesField.setText("" + Integer.max(0,
+                Main.pref.getInteger(getClass().getName() + ".maxCandidates", 0)));
+
+        Box box = Box.createHorizontalBox();
+        box.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+        box.add(indexLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(spatialIndexComboBox);
+        box.add(Box.createRigidArea(new Dimension(20, 1)));
+        box.add(nodeCapacityLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(nodeCapacityField);
+        box.add(Box.createRigidArea(new Dimension(20, 1)));
+        box.add(maxCandidatesLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(maxCandidatesField);
+        box.add(Box.createHorizontalGlue());
+        return box;
+    }
+
+    private Box createTimeLimitBox() {
+        JLabel targetTimeBudgetLabel = new JLabel(tr("Time limit per object (ms)"));
+        JLabel timeLimitLabel = new JLabel(tr("Total time limit (s)"));
+        Font light = new Font(targetTimeBudgetLabel.getFont().getName(), Font.PLAIN, targetTimeBudgetLabel.getFont().getSize());
+        targetTimeBudgetLabel.setFont(light);
+        timeLimitLabel.setFont(light);
+        targetTimeBudgetField = new MyValidatingTextField("0", 5, MyValidatingTextField.NON_NEGATIVE_INTEGER_VALIDATOR, "0");
+        targetTimeBudgetField.setToolTipText(tr("Objects taking longer to match are left unmatched, 0 for no limit"));
+        targetTimeBudgetField.setMaximumSize(targetTimeBudgetField.getPreferredSize());
+        targetTimeBudgetField.setText("" + Integer.max(0,
+                Main.pref.getInteger(getClass().getName() + ".targetTimeBudget", 0)));
+        timeLimitField = new MyValidatingTextField("0", 5, MyValidatingTextField.NON_NEGATIVE_INTEGER_VALIDATOR, "0");
+        timeLimitField.setToolTipText(tr("When reached, the matches found so far are kept, 0 for no limit"));
+        timeLimitField.setMaximumSize(timeLimitField.getPreferredSize());
+        timeLimitField.setText("" + Integer.max(0,
+                Main.pref.getInteger(getClass().getName() + ".timeLimit", 0)));
+
+        Box box = Box.createHorizontalBox();
+        box.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+        box.add(targetTimeBudgetLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(targetTimeBudgetField);
+        box.add(Box.createRigidArea(new Dimension(20, 1)));
+        box.add(timeLimitLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(timeLimitField);
+        box.add(Box.createHorizontalGlue());
+        return box;
+    }
+
+    private Box createTilingBox() {
+        JLabel tileSizeLabel = new JLabel(tr("Tile size"));
+        tileSizeLabel.setFont(new Font(tileSizeLabel.getFont().getName(), Font.PLAIN, tileSizeLabel.getFont().getSize()));
+        tileSizeField = new MyValidatingTextField("0", 6, MyValidatingTextField.NON_NEGATIVE_INTEGER_VALIDATOR, "0");
+        tileSizeField.setToolTipText(tr("Large selections are matched by tiles of this size, in projected units, "
+                + "to bound the memory used, 0 to match all objects at once"));
+        tileSizeField.setMaximumSize(tileSizeField.getPreferredSize());
+        tileSizeField.setText("" + Integer.max(0,
+                Main.pref.getInteger(getClass().getName() + ".tileSize", 0)));
+
+        Box box = Box.createHorizontalBox();
+        box.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+        box.add(tileSizeLabel);
+        box.add(Box.createRigidArea(new Dimension(10, 1)));
+        box.add(tileSizeField);
+        box.add(Box.createHorizontalGlue());
+        return box;
+    }
+
     /**
      * Matches are actually generated in windowClosed event in ConflationToggleDialog
      */
@@ -295,7 +399,17 @@ public class SettingsDialog extends ExtendedDialog {
         settings.setSubjectDataSet(subjectDataSet);
         settings.setSubjectLayer(subjectLayer);
         settings.setSubjectSelection(subjectSelection);
-        settings.setMatchFinder(getSelectedMatchFinderPanel().getMatchFinder());
+        MatchFinderPanel matchFinderPanel = getSelectedMatchFinderPanel();
+        matchFinderPanel.setMaxMatchesPerTarget(maxCandidatesField.getInteger());
+        settings.setMatchFinder(matchFinderPanel.getMatchFinder());
+        settings.setMatchFinderFactory(matchFinderPanel.getMatchFinderFactory());
+        settings.setMatchFinderConfiguration(matchFinderPanel.getClass().getSimpleName() + ";"
+                + maxCandidatesField.getInteger() + ";" + matchFinderPanel.getConfiguration());
+        settings.setSpatialIndexType(SpatialIndexType.values()[spatialIndexComboBox.getSelectedIndex()]);
+        settings.setSpatialIndexNodeCapacity(Integer.max(2, nodeCapacityField.getInteger()));
+        settings.setTargetTimeBudget(targetTimeBudgetField.getInteger());
+        settings.setTimeLimit(timeLimitField.getInteger() * 1000L);
+        settings.setTileSize(tileSizeField.getInteger());
         System.out.println(settings.getMatchFinder());
         return settings;
     }
@@ -319,6 +433,12 @@ public class SettingsDialog extends ExtendedDialog {
     }
 
     public void savePreferences() {
+        Main.pref.putInteger(getClass().getName() + ".spatialIndexType", spatialIndexComboBox.getSelectedIndex());
+        Main.pref.putInteger(getClass().getName() + ".nodeCapacity", nodeCapacityField.getInteger());
+        Main.pref.putInteger(getClass().getName() + ".maxCandidates", maxCandidatesField.getInteger());
+        Main.pref.putInteger(getClass().getName() + ".targetTimeBudget", targetTimeBudgetField.getInteger());
+        Main.pref.putInteger(getClass().getName() + ".timeLimit", timeLimitField.getInteger());
+        Main.pref.putInteger(getClass().getName() + ".tileSize", tileSizeField.getInteger());
         simpleMatchFinderPanel.savePreferences();
         //advancedMatchFinderPanel.savePreferences();
         if (programmingMatchFinderPanel != null) {
@@ -5,6 +5,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -91,17 +92,32 @@ public class SimpleMatchFinderPanel extends MatchFinderPanel {
         restoreFromPreferences();
     }
 
+    @Override
     public FCMatchFinder getMatchFinder() {
+        return getMatchFinderFactory().get();
+    }
+
+    @Override
+    public Supplier<FCMatchFinder> getMatchFinderFactory() {
+        int methodIndex = methodCombeBox.getSelectedIndex();
+        int distanceIndex = distanceComboBox.getSelectedIndex();
+        double threshDistance = threshDistanceField.getDouble();
+        List<String> tags = splitBySpaceComaOrSemicolon(tagsField.getText());
+        int maxMatchesPerTarget = getMaxMatchesPerTarget();
+        return () -> createMatchFinder(methodIndex, distanceIndex, threshDistance, tags, maxMatchesPerTarget);
+    }
+
+    private static FCMatchFinder createMatchFinder(int methodIndex, int distanceIndex, double threshDistance,
+            List<String> tags, int maxMatchesPerTarget) {
         ArrayList<FeatureMatcher> matchers = new ArrayList<>();
-        if (threshDistanceField.getDouble() > 0) {
+        if (threshDistance > 0) {
             // Use a WindowMatcher limit the search area and speed up execution time.
-            matchers.add(new WindowMatcher(threshDistanceField.getDouble()));
+            matchers.add(new WindowMatcher(threshDistance));
         }
-        AbstractDistanceMatcher distanceMatcher = (distanceComboBox.getSelectedIndex() == 0) ?
+        AbstractDistanceMatcher distanceMatcher = (distanceIndex == 0) ?
                 new CentroidDistanceMatcher() : new HausdorffDistanceMatcher();
-        distanceMatcher.setMaxDistance(threshDistanceField.getDouble());
+        distanceMatcher.setMaxDistance(threshDistance);
         matchers.add(distanceMatcher);
-        List<String> tags = splitBySpaceComaOrSemicolon(tagsField.getText());
         if (tags.size() > 0) {
             ArrayList<Object> weightedArgs = new ArrayList<>();
             weightedArgs.add(1.0); weightedArgs.add(distanceMatcher);
@@ -114,8 +130,8 @@ public class SimpleMatchFinderPanel extends MatchFinderPanel {
         }
         matchers.add(new IdenticalFeatureFilter());
         ChainMatcher chain = new ChainMatcher(matchers.toArray(new FeatureMatcher[matchers.size()]));
-        BasicFCMatchFinder basicFinder = new BasicFCMatchFinder(chain);
-        FCMatchFinder finder = (methodCombeBox.getSelectedIndex() == 0) ?
+        BasicFCMatchFinder basicFinder = createBasicFCMatchFinder(chain, maxMatchesPerTarget);
+        FCMatchFinder finder = (methodIndex == 0) ?
                 new DisambiguatingFCMatchFinder(basicFinder) : new OneToOneFCMatchFinder(basicFinder);
         return finder;
     }
@@ -141,4 +157,10 @@ public class SimpleMatchFinderPanel extends MatchFinderPanel {
         Main.pref.put(getClass().getName() + ".tags", tagsField.getText());
     }
 
+    @Override
+    public String getConfiguration() {
+        return methodCombeBox.getSelectedIndex() + ";" + distanceComboBox.getSelectedIndex() + ";"
+                + threshDistanceField.getDouble() + ";" + tagsField.getText();
+    }
+
 }
@@ -0,0 +1,19 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.conflation.config.parser;
+
+/**
+ * Called on each instance created while parsing an expression,
+ * e.g. to wrap it into a decorator.
+ */
+public interface InstanceDecorator {
+    /**
+     * Return the object to use in place of the given instance.
+     * It is used only if it has the type expected at this place of the expression.
+     * @param instance the newly created instance
+     * @param constructor the constructor used
+     * @param expression the text of the expression creating the instance
+     * @param start the index of the expression in the parsed text
+     * @return the decorated instance, or the instance itself
+     */
+    Object decorate(Object instance, InstanceConstructor constructor, String expression, int start);
+}
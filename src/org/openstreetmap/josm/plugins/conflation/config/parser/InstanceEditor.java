@@ -155,6 +155,15 @@ public class InstanceEditor<T> extends JPanel {
         return parser.parse(finderExpressionTextArea.getText(), true);
     }
 
+    /**
+     * Create the edited instance, passing each object created on the way to the given decorator.
+     * @param decorator the decorator
+     * @return the edited instance
+     */
+    public T getEditedInstance(InstanceDecorator decorator) {
+        return parser.parse(finderExpressionTextArea.getText(), true, decorator);
+    }
+
     public boolean isEditionValid() {
         return parser.parse(finderExpressionTextArea.getText());
     }
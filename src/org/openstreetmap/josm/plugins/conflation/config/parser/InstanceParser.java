@@ -12,7 +12,7 @@ import java.util.regex.Pattern;
  * Parse a String representing the instantiation of an object using
  * a given potential list of constructors.
  */
-class InstanceParser<M> implements IParser {
+public class InstanceParser<M> implements IParser {
 
     private final Class<M> mainType;
     private final String mainDescription;
@@ -20,6 +20,7 @@ class InstanceParser<M> implements IParser {
     private int pos;
     private int tokenPos;
     private boolean instantiate;
+    private InstanceDecorator decorator;
     private String description;
     private String error;
     private boolean valid;
@@ -34,7 +35,7 @@ class InstanceParser<M> implements IParser {
     static final Pattern IDENTIFIER_PATTERN = Pattern.compile("^([a-zA-Z][a-zA-Z0-9_]*)?");
     static final Pattern STRING_PATTERN = Pattern.compile("(\"(?:[^\"\\\\]|\\\\.)*\")|('(?:[^'\\\\]|\\\\.)*')");
 
-    InstanceParser(Class<M> mainType, String mainDescription, InstanceConstructor[] constructors) {
+    public InstanceParser(Class<M> mainType, String mainDescription, InstanceConstructor[] constructors) {
         this.mainType = mainType;
         this.mainDescription = mainDescription;
         this.constructors = constructors;
@@ -68,6 +69,11 @@ class InstanceParser<M> implements IParser {
     }
 
     public M parse(String text, boolean instantiate) {
+        return parse(text, instantiate, null);
+    }
+
+    public M parse(String text, boolean instantiate, InstanceDecorator decorator) {
+        this.decorator = decorator;
         this.text = text;
         this.pos = 0;
         this.tokenPos = 0;
@@ -181,6 +187,7 @@ class InstanceParser<M> implements IParser {
     @SuppressWarnings(value = "unchecked")
     private <T> T parseConstructor(Class<T> type, String description) {
         String identifier = findToken(IDENTIFIER_PATTERN, description, getName(type));
+        int start = tokenPos;
         if (isFullyParsed()) {
             for (InstanceConstructor cnstr: constructorNameMap.values()) {
                 if (cnstr.name.toLowerCase().startsWith(identifier.toLowerCase())
@@ -216,7 +223,14 @@ class InstanceParser<M> implements IParser {
         }
         try {
             if (instantiate) {
-                return (T) (cnstr.constructor.newInstance(params));
+                T instance = (T) (cnstr.constructor.newInstance(params));
+                if (decorator != null) {
+                    Object decorated = decorator.decorate(instance, cnstr, text.substring(start, pos), start);
+                    if (type.isInstance(decorated)) {
+                        instance = (T) decorated;
+                    }
+                }
+                return instance;
             } else {
                 return null;
             }